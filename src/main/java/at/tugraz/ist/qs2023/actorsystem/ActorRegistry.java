@@ -0,0 +1,219 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Actors of a {@link SimulatedActorSystem} in the order they were added, with constant time
+ * insertion and removal.
+ * <p>
+ * Every actor occupies a slot, whose index is stored in {@link SimulatedActor#registrySlot}.
+ * Removing an actor only marks its slot with the generation of the current tick, the slots are
+ * compacted once at least half of them are unused and no tick is in progress. A tick iterates over
+ * the slots in place: actors added during the tick are after its end and actors removed during the
+ * tick still carry the current generation, so the tick sees exactly the actors present when it
+ * started, like an iteration over a copy of the list would.
+ * <p>
+ * The registry itself is the list returned by {@link SimulatedActorSystem#getActors()}, which only
+ * contains actors that have not been removed. Iterating over it takes constant time per actor, but
+ * {@link ActorRegistry#get(int)} has to count the actors before the index as long as removed slots
+ * have not been compacted, which takes time linear in the number of slots.
+ */
+final class ActorRegistry extends AbstractList<SimulatedActor> {
+    /**
+     * Value of <c>removedIn</c> for slots of actors, which have not been removed.
+     */
+    private static final long ALIVE = -1;
+
+    /**
+     * Value of <c>removedIn</c> for slots of actors, which have been removed outside a tick.
+     */
+    private static final long REMOVED = -2;
+
+    /**
+     * Value of {@link SimulatedActor#registrySlot} for actors, which are not in a registry.
+     */
+    static final int NO_SLOT = -1;
+
+    private SimulatedActor[] slots = new SimulatedActor[16];
+
+    /**
+     * For every slot the generation of the tick, in which its actor was removed, or <c>ALIVE</c>.
+     */
+    private long[] removedIn = new long[16];
+
+    /**
+     * Number of used slots, including removed ones.
+     */
+    private int end = 0;
+
+    private int removedCount = 0;
+
+    /**
+     * Incremented whenever a tick starts. It is a long, so it never wraps around and a slot removed in
+     * an earlier tick, which has not been compacted yet, never matches the generation of a later tick.
+     */
+    private long generation = 0;
+
+    private boolean iterating = false;
+
+    @Override
+    public boolean add(SimulatedActor actor) {
+        if (actor.registrySlot != NO_SLOT) {
+            throw new IllegalStateException("Actor " + actor.getId() + " has already been added");
+        }
+        if (end == slots.length) {
+            slots = Arrays.copyOf(slots, end * 2);
+            removedIn = Arrays.copyOf(removedIn, end * 2);
+        }
+        slots[end] = actor;
+        removedIn[end] = ALIVE;
+        actor.registrySlot = end++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        SimulatedActor actor = (SimulatedActor) o;
+        removedIn[actor.registrySlot] = iterating ? generation : REMOVED;
+        actor.registrySlot = NO_SLOT;
+        removedCount++;
+        modCount++;
+        compactIfSparse();
+        return true;
+    }
+
+    @Override
+    public SimulatedActor remove(int index) {
+        SimulatedActor actor = get(index);
+        remove(actor);
+        return actor;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof SimulatedActor)) {
+            return false;
+        }
+        int slot = ((SimulatedActor) o).registrySlot;
+        return slot != NO_SLOT && slot < end && slots[slot] == o;
+    }
+
+    @Override
+    public int size() {
+        return end - removedCount;
+    }
+
+    /**
+     * Takes constant time if no actor has been removed since the slots were compacted,
+     * otherwise time linear in the number of slots.
+     */
+    @Override
+    public SimulatedActor get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (removedCount == 0) {
+            return slots[index];
+        }
+        for (int slot = 0; ; slot++) {
+            if (removedIn[slot] == ALIVE && index-- == 0) {
+                return slots[slot];
+            }
+        }
+    }
+
+    @Override
+    public Iterator<SimulatedActor> iterator() {
+        return new Iterator<SimulatedActor>() {
+            private int slot = nextAlive(0);
+            private int lastReturned = -1;
+
+            @Override
+            public boolean hasNext() {
+                return slot < end;
+            }
+
+            @Override
+            public SimulatedActor next() {
+                if (slot >= end) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = slot;
+                slot = nextAlive(slot + 1);
+                return slots[lastReturned];
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                // removal outside a tick might compact, so continue at the same actor
+                SimulatedActor next = slot < end ? slots[slot] : null;
+                ActorRegistry.this.remove(slots[lastReturned]);
+                slot = next == null ? end : next.registrySlot;
+                lastReturned = -1;
+            }
+        };
+    }
+
+    private int nextAlive(int slot) {
+        while (slot < end && removedIn[slot] != ALIVE) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Starts a tick, during which slots are not moved.
+     *
+     * @return The number of slots to visit with {@link ActorRegistry#tickable(int)}.
+     */
+    int beginTick() {
+        generation++;
+        iterating = true;
+        return end;
+    }
+
+    /**
+     * @param slot Index of a slot below the value returned by {@link ActorRegistry#beginTick()}.
+     * @return The actor in the slot if it has to be ticked in the current tick, otherwise null.
+     */
+    SimulatedActor tickable(int slot) {
+        long removed = removedIn[slot];
+        return removed == ALIVE || removed == generation ? slots[slot] : null;
+    }
+
+    /**
+     * Ends the current tick and compacts the slots if necessary.
+     */
+    void endTick() {
+        iterating = false;
+        compactIfSparse();
+    }
+
+    private void compactIfSparse() {
+        if (iterating || removedCount * 2 < end) {
+            return;
+        }
+        int alive = 0;
+        for (int slot = 0; slot < end; slot++) {
+            if (removedIn[slot] == ALIVE) {
+                SimulatedActor actor = slots[slot];
+                slots[alive] = actor;
+                removedIn[alive] = ALIVE;
+                actor.registrySlot = alive++;
+            }
+        }
+        Arrays.fill(slots, alive, end, null);
+        end = alive;
+        removedCount = 0;
+    }
+}
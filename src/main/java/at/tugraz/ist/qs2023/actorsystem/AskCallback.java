@@ -0,0 +1,19 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+/**
+ * Completes a request sent with {@link SimulatedActor#ask(SimulatedActor, Message, int, int, AskCallback)}.
+ * Exactly one of the two methods is called, by the asking actor while it is ticked.
+ */
+public interface AskCallback {
+    /**
+     * Called with the first reply to the request, further replies to resends are dropped.
+     *
+     * @param reply Non-null reply of the target.
+     */
+    void onReply(Message reply);
+
+    /**
+     * Called if no reply has arrived in time after the last resend.
+     */
+    void onTimeout();
+}
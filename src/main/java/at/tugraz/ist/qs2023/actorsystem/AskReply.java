@@ -0,0 +1,27 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+/**
+ * Envelope of a reply sent with {@link SimulatedActor#answer(Message)}, which the asking actor
+ * passes to the callback of the request with the same correlation id.
+ */
+public final class AskReply implements Message {
+    /**
+     * Id of the answered request
+     */
+    public final long correlationId;
+
+    /**
+     * The enclosed reply
+     */
+    public final Message message;
+
+    public AskReply(long correlationId, Message message) {
+        this.correlationId = correlationId;
+        this.message = message;
+    }
+
+    @Override
+    public int getDuration() {
+        return message.getDuration();
+    }
+}
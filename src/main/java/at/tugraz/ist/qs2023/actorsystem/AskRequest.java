@@ -0,0 +1,34 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+/**
+ * Envelope of a message sent with {@link SimulatedActor#ask(SimulatedActor, Message, int, int, AskCallback)}.
+ * The target receives the enclosed message and replies to it with {@link SimulatedActor#answer(Message)}.
+ * Resends of a request use the same envelope.
+ */
+public final class AskRequest implements Message {
+    /**
+     * The asking actor, which receives the replies
+     */
+    public final SimulatedActor sender;
+
+    /**
+     * Id of the request, unique among the requests of the sender
+     */
+    public final long correlationId;
+
+    /**
+     * The enclosed message
+     */
+    public final Message message;
+
+    public AskRequest(SimulatedActor sender, long correlationId, Message message) {
+        this.sender = sender;
+        this.correlationId = correlationId;
+        this.message = message;
+    }
+
+    @Override
+    public int getDuration() {
+        return message.getDuration();
+    }
+}
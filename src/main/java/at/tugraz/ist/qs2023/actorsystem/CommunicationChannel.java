@@ -6,10 +6,38 @@ import java.util.List;
 /**
  * Abstract CommunicationChannel class implementing the Tick method,
  * which is common to all concrete implementations of communication channels.
+ * <p>
+ * Messages in transit are stored in a ring buffer as a pair of parallel arrays holding the
+ * messages and their arrival ticks, so no wrapper object is needed per message and a tick does not
+ * modify the messages, which do not arrive. As long as the arrival ticks do not decrease in the
+ * order the messages were sent, which always holds for a fixed delay, a tick only removes the
+ * arrived messages from the head of the ring. Otherwise it scans the ring and compacts it.
  */
 public abstract class CommunicationChannel implements ICommunicationChannel {
 
-    private List<MessageInDelivery> messagesInDelivery = new ArrayList<>();
+    private Message[] messages = new Message[4];
+
+    /**
+     * Arrival tick of the message at the same index in <c>messages</c>.
+     */
+    private long[] arrivals = new long[4];
+
+    /**
+     * Index of the message sent first.
+     */
+    private int head = 0;
+
+    private int size = 0;
+
+    /**
+     * Number of ticks so far.
+     */
+    private long now = 0;
+
+    /**
+     * Set if the arrival ticks in the ring do not decrease from head to tail.
+     */
+    private boolean ordered = true;
 
     /**
      * Adds the given message to the list.
@@ -17,25 +45,108 @@ public abstract class CommunicationChannel implements ICommunicationChannel {
      * @param messageInDelivery The object to add to the list.
      */
     protected void addMessageInDelivery(MessageInDelivery messageInDelivery) {
-        this.messagesInDelivery.add(messageInDelivery);
+        addMessageInDelivery(messageInDelivery.getMessage(), messageInDelivery.getRemainingTicks());
+    }
+
+    /**
+     * Adds the given message to the messages in transit without creating a {@link MessageInDelivery}.
+     *
+     * @param message The message.
+     * @param delay   Number of ticks, which do not deliver the message.
+     */
+    protected void addMessageInDelivery(Message message, int delay) {
+        if (size == messages.length) {
+            grow();
+        }
+        long arrival = now + delay + 1;
+        int mask = messages.length - 1;
+        if (size > 0 && arrival < arrivals[(head + size - 1) & mask]) {
+            ordered = false;
+        }
+        int tail = (head + size) & mask;
+        messages[tail] = message;
+        arrivals[tail] = arrival;
+        size++;
     }
 
     @Override
     public List<Message> tick() {
-        List<Message> messagesDelivered = new ArrayList<>();
-        List<MessageInDelivery> newMessagesInDelivery = new ArrayList<>();
+        Mailbox delivered = new Mailbox();
+        tick(delivered);
+        List<Message> messagesDelivered = new ArrayList<>(delivered.size());
+        while (!delivered.isEmpty()) {
+            messagesDelivered.add(delivered.poll());
+        }
+        return messagesDelivered;
+    }
 
-        for (MessageInDelivery messageInDelivery : messagesInDelivery) {
-            if (messageInDelivery.tick()) {
+    @Override
+    public void tick(Mailbox mailbox) {
+        now++;
+        int mask = messages.length - 1;
+        if (ordered) {
+            while (size > 0 && arrivals[head] <= now) {
                 // message arrived at destination
-                messagesDelivered.add(messageInDelivery.getMessage());
+                mailbox.add(messages[head]);
+                messages[head] = null;
+                head = (head + 1) & mask;
+                size--;
+            }
+            return;
+        }
+        // deliver arrived messages in the order they were sent and compact the others
+        int remaining = 0;
+        boolean remainingOrdered = true;
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) & mask;
+            Message message = messages[index];
+            long arrival = arrivals[index];
+            messages[index] = null;
+            if (arrival <= now) {
+                mailbox.add(message);
             } else {
-                // add message with decremented remainingTicks again
-                newMessagesInDelivery.add(messageInDelivery);
+                int target = (head + remaining) & mask;
+                if (remaining > 0 && arrival < arrivals[(target - 1) & mask]) {
+                    remainingOrdered = false;
+                }
+                messages[target] = message;
+                arrivals[target] = arrival;
+                remaining++;
             }
         }
+        size = remaining;
+        ordered = remainingOrdered;
+    }
 
-        this.messagesInDelivery = newMessagesInDelivery;
-        return messagesDelivered;
+    @Override
+    public int ticksUntilNextDelivery() {
+        if (size == 0) {
+            return Integer.MAX_VALUE;
+        }
+        long arrival = arrivals[head];
+        if (!ordered) {
+            for (int i = 1; i < size; i++) {
+                arrival = Math.min(arrival, arrivals[(head + i) & (messages.length - 1)]);
+            }
+        }
+        return (int) (arrival - now - 1);
+    }
+
+    @Override
+    public void skip(int ticks) {
+        now += ticks;
+    }
+
+    private void grow() {
+        int firstPart = messages.length - head;
+        Message[] grownMessages = new Message[messages.length * 2];
+        System.arraycopy(messages, head, grownMessages, 0, firstPart);
+        System.arraycopy(messages, 0, grownMessages, firstPart, head);
+        long[] grownArrivals = new long[arrivals.length * 2];
+        System.arraycopy(arrivals, head, grownArrivals, 0, firstPart);
+        System.arraycopy(arrivals, 0, grownArrivals, firstPart, head);
+        messages = grownMessages;
+        arrivals = grownArrivals;
+        head = 0;
     }
 }
@@ -0,0 +1,173 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.PriorityQueue;
+
+/**
+ * Outstanding requests of an actor, which have been sent with
+ * {@link SimulatedActor#ask(SimulatedActor, Message, int, int, AskCallback)}.
+ * <p>
+ * Correlation ids are assigned in ascending order, so the request with id <c>i</c> is kept in slot
+ * <c>i mod capacity</c> of a power-of-two array, which only grows if the ids of the outstanding requests
+ * span more than its capacity. Reply lookups thus take one array access without boxing the id.
+ * Deadlines are kept in a priority queue, from which completed requests are removed lazily.
+ */
+final class CorrelationTable {
+    /**
+     * An outstanding request.
+     */
+    static final class Pending {
+        final AskRequest request;
+        final SimulatedActor target;
+        final int timeoutTicks;
+        final AskCallback callback;
+        int retriesLeft;
+
+        /**
+         * Tick at which the request is resent or times out if no reply has arrived before.
+         */
+        int deadline;
+
+        /**
+         * Set when the request is removed from the table, its entry in the deadline queue is skipped then.
+         */
+        boolean done = false;
+
+        Pending(AskRequest request, SimulatedActor target, int timeoutTicks, int retries, AskCallback callback, int deadline) {
+            this.request = request;
+            this.target = target;
+            this.timeoutTicks = timeoutTicks;
+            this.retriesLeft = retries;
+            this.callback = callback;
+            this.deadline = deadline;
+        }
+    }
+
+    private Pending[] slots = new Pending[16];
+
+    private int size = 0;
+
+    private long nextCorrelationId = 0;
+
+    /**
+     * Outstanding requests by deadline and correlation id, which keeps the order of timeouts deterministic.
+     */
+    private final PriorityQueue<Pending> deadlines = new PriorityQueue<>((a, b) -> a.deadline != b.deadline
+            ? Integer.compare(a.deadline, b.deadline)
+            : Long.compare(a.request.correlationId, b.request.correlationId));
+
+    private long resends = 0;
+
+    private long timeouts = 0;
+
+    /**
+     * Sends a new request and adds it to the table.
+     *
+     * @param sender       The asking actor.
+     * @param target       The actor receiving the request.
+     * @param message      The message to send.
+     * @param timeoutTicks Number of ticks after sending, after which the request is resent or times out.
+     * @param retries      Maximum number of resends.
+     * @param callback     Completes the request.
+     * @param now          Current time of the asking actor.
+     * @return The correlation id of the request.
+     */
+    long ask(SimulatedActor sender, SimulatedActor target, Message message, int timeoutTicks, int retries,
+             AskCallback callback, int now) {
+        long correlationId = nextCorrelationId++;
+        Pending pending = new Pending(new AskRequest(sender, correlationId, message), target, timeoutTicks, retries,
+                callback, now + timeoutTicks + 1);
+        while (slots[slot(correlationId)] != null) {
+            grow();
+        }
+        slots[slot(correlationId)] = pending;
+        size++;
+        deadlines.add(pending);
+        target.tell(pending.request);
+        return correlationId;
+    }
+
+    /**
+     * Removes the request answered by a reply.
+     *
+     * @param correlationId Id of the answered request.
+     * @return The request, null if it has already been completed.
+     */
+    Pending remove(long correlationId) {
+        int slot = slot(correlationId);
+        Pending pending = slots[slot];
+        if (pending == null || pending.request.correlationId != correlationId) {
+            return null;
+        }
+        slots[slot] = null;
+        size--;
+        pending.done = true;
+        return pending;
+    }
+
+    /**
+     * Resends the requests, whose deadline has passed, or completes them with a timeout if they
+     * have no retries left.
+     *
+     * @param now Current time of the asking actor.
+     */
+    void expire(int now) {
+        Pending pending;
+        while ((pending = deadlines.peek()) != null && (pending.done || pending.deadline <= now)) {
+            deadlines.poll();
+            if (pending.done) {
+                continue;
+            }
+            if (pending.retriesLeft > 0) {
+                pending.retriesLeft--;
+                pending.deadline = now + pending.timeoutTicks + 1;
+                deadlines.add(pending);
+                resends++;
+                pending.target.tell(pending.request);
+            } else {
+                remove(pending.request.correlationId);
+                timeouts++;
+                pending.callback.onTimeout();
+            }
+        }
+    }
+
+    /**
+     * @param now Current time of the asking actor.
+     * @return Number of ticks before the next resend or timeout, <c>Integer.MAX_VALUE</c> if there is none.
+     */
+    int ticksUntilNextDeadline(int now) {
+        while (!deadlines.isEmpty() && deadlines.peek().done) {
+            deadlines.poll();
+        }
+        if (deadlines.isEmpty()) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(0, deadlines.peek().deadline - now - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getResends() {
+        return resends;
+    }
+
+    long getTimeouts() {
+        return timeouts;
+    }
+
+    private int slot(long correlationId) {
+        return (int) correlationId & (slots.length - 1);
+    }
+
+    private void grow() {
+        Pending[] old = slots;
+        slots = new Pending[old.length * 2];
+        for (Pending pending : old) {
+            if (pending != null) {
+                slots[slot(pending.request.correlationId)] = pending;
+            }
+        }
+    }
+}
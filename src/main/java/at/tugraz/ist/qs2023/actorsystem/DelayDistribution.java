@@ -0,0 +1,67 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distribution of the delays of messages sent via a {@link SeededChannel}.
+ * A delay is the number of ticks, which do not deliver a message (see {@link DeterministicChannel}).
+ */
+public interface DelayDistribution {
+
+    /**
+     * Draws the delay of a message.
+     *
+     * @param random The random number generator of the channel.
+     * @return A delay, which is not negative.
+     */
+    int nextDelay(SplittableRandom random);
+
+    /**
+     * @param delay The delay of every message.
+     * @return A distribution always returning the given delay.
+     */
+    static DelayDistribution fixed(int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        return random -> delay;
+    }
+
+    /**
+     * @param min Minimum delay.
+     * @param max Maximum delay.
+     * @return A distribution returning every delay between <c>min</c> and <c>max</c> (inclusive) with the same probability.
+     */
+    static DelayDistribution uniform(int min, int max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Delays must satisfy 0 <= min <= max");
+        }
+        return random -> min + random.nextInt(max - min + 1);
+    }
+
+    /**
+     * @param min  Minimum delay, added to every drawn value.
+     * @param mean Mean of the exponentially distributed part of the delay.
+     * @param max  Maximum delay, longer delays are cut off.
+     * @return A distribution returning <c>min</c> plus exponentially distributed delays rounded down.
+     */
+    static DelayDistribution exponential(int min, double mean, int max) {
+        if (min < 0 || max < min || mean <= 0) {
+            throw new IllegalArgumentException("Delays must satisfy 0 <= min <= max and mean > 0");
+        }
+        return random -> (int) Math.min(max, min - mean * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * @param min   Minimum delay and scale of the distribution, must be positive.
+     * @param shape Shape of the distribution, smaller values cause heavier tails.
+     * @param max   Maximum delay, longer delays are cut off.
+     * @return A distribution returning Pareto distributed delays rounded down.
+     */
+    static DelayDistribution pareto(int min, double shape, int max) {
+        if (min <= 0 || max < min || shape <= 0) {
+            throw new IllegalArgumentException("Delays must satisfy 0 < min <= max and shape > 0");
+        }
+        return random -> (int) Math.min(max, min / Math.pow(1 - random.nextDouble(), 1 / shape));
+    }
+}
@@ -0,0 +1,127 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.Arrays;
+
+/**
+ * Calendar queue of the messages in transit to all actors of a {@link SimulatedActorSystem},
+ * which uses calendar delivery. It has one bucket per tick, indexed by the arrival tick modulo
+ * the number of buckets, and always more buckets than the longest delay in transit, so a bucket
+ * only holds deliveries of a single tick, in the order they were scheduled. The number of buckets
+ * is doubled when a longer delay is scheduled.
+ */
+final class DeliveryCalendar {
+    private SimulatedActor[][] targets = new SimulatedActor[16][];
+    private Message[][] messages = new Message[16][];
+    private int[] sizes = new int[16];
+
+    /**
+     * Index of the earliest tick, which can still have deliveries.
+     */
+    private long first = 0;
+
+    private int scheduled = 0;
+
+    boolean isEmpty() {
+        return scheduled == 0;
+    }
+
+    /**
+     * Schedules a delivery.
+     *
+     * @param arrival Index of the tick delivering the message, not before the earliest tick.
+     * @param target  The receiving actor.
+     * @param message The message.
+     */
+    void add(long arrival, SimulatedActor target, Message message) {
+        if (arrival - first >= sizes.length) {
+            grow(arrival - first + 1);
+        }
+        int bucket = (int) (arrival & (sizes.length - 1));
+        int size = sizes[bucket];
+        if (targets[bucket] == null) {
+            targets[bucket] = new SimulatedActor[4];
+            messages[bucket] = new Message[4];
+        } else if (size == targets[bucket].length) {
+            targets[bucket] = Arrays.copyOf(targets[bucket], size * 2);
+            messages[bucket] = Arrays.copyOf(messages[bucket], size * 2);
+        }
+        targets[bucket][size] = target;
+        messages[bucket][size] = message;
+        sizes[bucket] = size + 1;
+        scheduled++;
+    }
+
+    /**
+     * Removes all deliveries of a tick and passes them to the system. Afterwards, the following
+     * tick is the earliest one, which can have deliveries.
+     *
+     * @param tick   Index of the tick, which must be the earliest tick.
+     * @param system The system delivering the messages.
+     */
+    void deliver(long tick, SimulatedActorSystem system) {
+        first = tick + 1;
+        int bucket = (int) (tick & (sizes.length - 1));
+        int size = sizes[bucket];
+        if (size == 0) {
+            return;
+        }
+        SimulatedActor[] bucketTargets = targets[bucket];
+        Message[] bucketMessages = messages[bucket];
+        sizes[bucket] = 0;
+        scheduled -= size;
+        for (int i = 0; i < size; i++) {
+            SimulatedActor target = bucketTargets[i];
+            Message message = bucketMessages[i];
+            bucketTargets[i] = null;
+            bucketMessages[i] = null;
+            system.deliver(target, message);
+        }
+    }
+
+    /**
+     * @return Index of the earliest tick with deliveries, <c>Long.MAX_VALUE</c> if nothing is scheduled.
+     */
+    long nextArrival() {
+        if (scheduled == 0) {
+            return Long.MAX_VALUE;
+        }
+        long tick = first;
+        while (sizes[(int) (tick & (sizes.length - 1))] == 0) {
+            tick++;
+        }
+        return tick;
+    }
+
+    /**
+     * Advances the earliest tick without deliveries in between.
+     *
+     * @param ticks Number of skipped ticks, at most the distance to {@link DeliveryCalendar#nextArrival()}.
+     */
+    void skip(int ticks) {
+        first += ticks;
+    }
+
+    private void grow(long minimumSize) {
+        int size = sizes.length;
+        while (size < minimumSize) {
+            size *= 2;
+        }
+        SimulatedActor[][] grownTargets = new SimulatedActor[size][];
+        Message[][] grownMessages = new Message[size][];
+        int[] grownSizes = new int[size];
+        // bucket i holds the deliveries of the unique tick t in [first, first + old size) with t = i (mod old size)
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] == 0) {
+                continue;
+            }
+            long tick = first + ((i - first) & (sizes.length - 1));
+            int bucket = (int) (tick & (size - 1));
+            grownTargets[bucket] = targets[i];
+            grownMessages[bucket] = messages[i];
+            grownSizes[bucket] = sizes[i];
+        }
+        targets = grownTargets;
+        messages = grownMessages;
+        sizes = grownSizes;
+    }
+}
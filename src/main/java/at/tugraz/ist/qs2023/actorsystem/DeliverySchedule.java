@@ -0,0 +1,17 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+/**
+ * Schedule of the deliveries to one actor, used by channels acting as delay policies for the
+ * calendar delivery of {@link SimulatedActorSystem} (see {@link ICommunicationChannel#schedule(Message, SimulatedActor, DeliverySchedule)}).
+ */
+public interface DeliverySchedule {
+
+    /**
+     * Schedules the delivery of a message to the actor.
+     *
+     * @param delay   Number of ticks of the actor, which do not deliver the message,
+     *                with the same meaning as for {@link DeterministicChannel}.
+     * @param message The message to deliver.
+     */
+    void deliverAfter(int delay, Message message);
+}
@@ -20,6 +20,12 @@ public class DeterministicChannel extends CommunicationChannel {
 
     @Override
     public void send(Message message) {
-        addMessageInDelivery(new MessageInDelivery(delay, message));
+        addMessageInDelivery(message, delay);
+    }
+
+    @Override
+    public boolean schedule(Message message, SimulatedActor sender, DeliverySchedule schedule) {
+        schedule.deliverAfter(delay, message);
+        return true;
     }
 }
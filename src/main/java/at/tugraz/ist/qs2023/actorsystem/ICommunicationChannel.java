@@ -21,6 +21,37 @@ public interface ICommunicationChannel {
      */
     void send(Message message);
 
+    /**
+     * Sends a message like {@link ICommunicationChannel#send(Message)}, but also passes the sending actor.
+     * {@link SimulatedActor#tell(Message)} uses this method, so channels can treat senders differently.
+     *
+     * @param message The message to send.
+     * @param sender  The actor sending the message, null if it is not sent by an actor
+     *                or the receiver has not been spawned by a {@link SimulatedActorSystem}.
+     */
+    default void send(Message message, SimulatedActor sender) {
+        send(message);
+    }
+
+    /**
+     * Lets the channel act as a delay policy for the calendar delivery of {@link SimulatedActorSystem}:
+     * instead of keeping a message in transit, the channel passes every copy of the message, which should
+     * arrive, together with its delay to the given schedule, and the system delivers it.
+     * Channels, which return false, are used like without calendar delivery.
+     * <p>
+     * Subclasses overriding {@link ICommunicationChannel#send(Message)} of a channel supporting
+     * calendar delivery must also override this method.
+     *
+     * @param message  The message to send.
+     * @param sender   The actor sending the message, null if it is not sent by an actor.
+     * @param schedule The schedule of deliveries to the receiving actor.
+     * @return True if the message has been passed to the schedule (or dropped), false if the channel
+     * does not support calendar delivery and the message has not been handled.
+     */
+    default boolean schedule(Message message, SimulatedActor sender, DeliverySchedule schedule) {
+        return false;
+    }
+
     /**
      * This method is used to signal to the channel object that one time unit has passed.
      * The ticks left for all messages in transit should be decremented,
@@ -30,4 +61,43 @@ public interface ICommunicationChannel {
      * @return All messages having zero ticks left (upon entering the method).
      */
     List<Message> tick();
+
+    /**
+     * Signals that one time unit has passed like {@link ICommunicationChannel#tick()}, but
+     * adds the arriving messages to the given mailbox instead of returning them.
+     * Implementations should override it to avoid allocating a list on every tick.
+     *
+     * @param mailbox The mailbox of the receiving actor.
+     */
+    default void tick(Mailbox mailbox) {
+        for (Message message : tick()) {
+            mailbox.add(message);
+        }
+    }
+
+    /**
+     * Returns the number of upcoming calls to {@link ICommunicationChannel#tick()}, which
+     * will not deliver any message. It is used to skip idle time in discrete-event mode.
+     * The default implementation returns zero, so channels, which do not know their next
+     * delivery, are ticked every time unit and never skipped.
+     *
+     * @return Number of ticks until the next message arrives,
+     * <c>Integer.MAX_VALUE</c> if no message is in transit.
+     */
+    default int ticksUntilNextDelivery() {
+        return 0;
+    }
+
+    /**
+     * Advances the channel by the given number of time units at once.
+     * The number of ticks must not exceed {@link ICommunicationChannel#ticksUntilNextDelivery()},
+     * so no message can arrive while skipping.
+     *
+     * The default implementation does nothing, as it is never called with more than
+     * zero ticks if {@link ICommunicationChannel#ticksUntilNextDelivery()} is not overridden.
+     *
+     * @param ticks Number of ticks to skip.
+     */
+    default void skip(int ticks) {
+    }
 }
@@ -0,0 +1,64 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.SplittableRandom;
+
+/**
+ * Decides which messages sent via a {@link SeededChannel} are lost.
+ * Models may keep state between messages, so every channel needs its own instance.
+ */
+public interface LossModel {
+
+    /**
+     * Decides whether the next message is lost.
+     *
+     * @param random The random number generator of the channel.
+     * @return True if the message is lost.
+     */
+    boolean isLost(SplittableRandom random);
+
+    /**
+     * @return A model losing no message.
+     */
+    static LossModel none() {
+        return random -> false;
+    }
+
+    /**
+     * @param probability Probability of losing a message.
+     * @return A model losing every message independently with the given probability.
+     */
+    static LossModel bernoulli(double probability) {
+        if (probability < 0 || probability > 1) {
+            throw new IllegalArgumentException("Probability must be between 0 and 1");
+        }
+        return random -> random.nextDouble() < probability;
+    }
+
+    /**
+     * Creates a Gilbert-Elliott model, which causes bursts of lost messages. The model is either in
+     * the good or in the bad state, has a separate loss probability for each of them and changes its
+     * state before each message with the given transition probabilities. It starts in the good state.
+     *
+     * @param goodToBad Probability of changing from the good to the bad state.
+     * @param badToGood Probability of changing from the bad to the good state.
+     * @param lossGood  Probability of losing a message in the good state.
+     * @param lossBad   Probability of losing a message in the bad state.
+     * @return A new model in the good state.
+     */
+    static LossModel gilbertElliott(double goodToBad, double badToGood, double lossGood, double lossBad) {
+        for (double probability : new double[]{goodToBad, badToGood, lossGood, lossBad}) {
+            if (probability < 0 || probability > 1) {
+                throw new IllegalArgumentException("Probabilities must be between 0 and 1");
+            }
+        }
+        return new LossModel() {
+            private boolean bad = false;
+
+            @Override
+            public boolean isLost(SplittableRandom random) {
+                bad = random.nextDouble() < (bad ? 1 - badToGood : goodToBad);
+                return random.nextDouble() < (bad ? lossBad : lossGood);
+            }
+        };
+    }
+}
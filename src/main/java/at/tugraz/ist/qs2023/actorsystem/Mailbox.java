@@ -0,0 +1,75 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.Arrays;
+
+/**
+ * FIFO queue of the messages, which have been delivered to an actor but have not been
+ * processed yet. It is a ring buffer with a power-of-two capacity, which grows when it is full
+ * and never shrinks, so adding and removing messages does not allocate in steady state.
+ * Channels deliver messages directly into it via {@link ICommunicationChannel#tick(Mailbox)}.
+ */
+public final class Mailbox {
+    private Message[] elements = new Message[8];
+
+    /**
+     * Index of the oldest message.
+     */
+    private int head = 0;
+
+    private int size = 0;
+
+    /**
+     * Appends a message.
+     *
+     * @param message Non-null message delivered to the actor.
+     */
+    public void add(Message message) {
+        if (size == elements.length) {
+            grow();
+        }
+        elements[(head + size) & (elements.length - 1)] = message;
+        size++;
+    }
+
+    /**
+     * Removes the oldest message.
+     *
+     * @return The oldest message, null if the mailbox is empty.
+     */
+    public Message poll() {
+        if (size == 0) {
+            return null;
+        }
+        Message message = elements[head];
+        elements[head] = null;
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return message;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        Message[] grown = new Message[elements.length * 2];
+        int firstPart = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, head);
+        elements = grown;
+        head = 0;
+    }
+
+    @Override
+    public String toString() {
+        Message[] messages = new Message[size];
+        for (int i = 0; i < size; i++) {
+            messages[i] = elements[(head + i) & (elements.length - 1)];
+        }
+        return Arrays.toString(messages);
+    }
+}
@@ -0,0 +1,22 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import at.tugraz.ist.qs2023.messageboard.UnknownClientException;
+import at.tugraz.ist.qs2023.messageboard.UnknownMessageException;
+
+/**
+ * Handles the messages of one type received by an actor, which registers it with
+ * {@link SimulatedActor#registerHandler(Class, MessageHandler)}.
+ *
+ * @param <M> Type of the handled messages.
+ */
+@FunctionalInterface
+public interface MessageHandler<M extends Message> {
+    /**
+     * Processes a received message.
+     *
+     * @param message Non-null message received by the actor.
+     * @throws UnknownClientException  if the message refers to an unknown client
+     * @throws UnknownMessageException if the message cannot be handled
+     */
+    void handle(M message) throws UnknownClientException, UnknownMessageException;
+}
@@ -1,7 +1,7 @@
 package at.tugraz.ist.qs2023.actorsystem;
 
 public class MessageInDelivery {
-    private int remainingTicks;
+    private final int remainingTicks;
     private final Message message;
 
     /**
@@ -19,18 +19,7 @@ public class MessageInDelivery {
         return message;
     }
 
-    /**
-     * Check if message already arrived at its destination.
-     * If not, reduce number of remaining ticks.
-     *
-     * @return True if message arrived at its destination, false if not.
-     */
-    boolean tick() {
-        if (this.remainingTicks == 0) {
-            return true;
-        } else {
-            this.remainingTicks--;
-            return false;
-        }
+    int getRemainingTicks() {
+        return remainingTicks;
     }
 }
@@ -0,0 +1,252 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which messages sent to an actor are kept in its message log
+ * (see {@link ISimulatedActor#getMessageLog()}). A policy is set with
+ * {@link SimulatedActorSystem#setMessageLogPolicy(MessageLogPolicy)} and applies to all
+ * actors spawned afterwards.
+ * <p>
+ * The message log returned by {@link ISimulatedActor#getMessageLog()} always lists the retained
+ * messages in the order they were sent, but only the unbounded policy retains all of them.
+ */
+public abstract class MessageLogPolicy implements Closeable {
+
+    private static final MessageLogPolicy UNBOUNDED = new MessageLogPolicy() {
+        @Override
+        List<Message> createLog(SimulatedActor actor) {
+            return new ArrayList<>();
+        }
+    };
+
+    private static final MessageLogPolicy OFF = new MessageLogPolicy() {
+        @Override
+        List<Message> createLog(SimulatedActor actor) {
+            return new SampledLog(0);
+        }
+    };
+
+    /**
+     * @return The default policy, which keeps every message.
+     */
+    public static MessageLogPolicy unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * @return A policy, which keeps no message at all.
+     */
+    public static MessageLogPolicy off() {
+        return OFF;
+    }
+
+    /**
+     * @param capacity Number of messages to keep per actor.
+     * @return A policy, which keeps the last <c>capacity</c> messages sent to each actor.
+     */
+    public static MessageLogPolicy lastN(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        return new MessageLogPolicy() {
+            @Override
+            List<Message> createLog(SimulatedActor actor) {
+                return new RingLog(capacity);
+            }
+        };
+    }
+
+    /**
+     * @param interval Distance between two kept messages.
+     * @return A policy, which keeps the first message sent to each actor and then every
+     * <c>interval</c>-th message.
+     */
+    public static MessageLogPolicy sampled(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        return new MessageLogPolicy() {
+            @Override
+            List<Message> createLog(SimulatedActor actor) {
+                return new SampledLog(interval);
+            }
+        };
+    }
+
+    /**
+     * Creates a policy, which keeps no message in memory, but appends a line for every message
+     * to a memory-mapped file shared by all actors. A line consists of the time of the receiving
+     * actor, its ID and the class name of the message, separated by spaces. The file is truncated
+     * to its content by {@link MessageLogPolicy#close()}, which has to be called after the run.
+     *
+     * @param file The file to write, an existing file is overwritten.
+     * @return A policy, which spills all messages to the file.
+     * @throws IOException if the file cannot be opened
+     */
+    public static MessageLogPolicy spillTo(Path file) throws IOException {
+        return new SpillPolicy(file);
+    }
+
+    /**
+     * Creates the message log for an actor, which is about to be spawned.
+     *
+     * @param actor The actor receiving the logged messages.
+     * @return An empty message log.
+     */
+    abstract List<Message> createLog(SimulatedActor actor);
+
+    /**
+     * Releases the resources held by the policy, does nothing for policies retaining messages in memory.
+     */
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Keeps the last messages in a ring buffer.
+     */
+    private static final class RingLog extends AbstractList<Message> {
+        private final Message[] messages;
+        private int next = 0;
+        private int size = 0;
+
+        RingLog(int capacity) {
+            this.messages = new Message[capacity];
+        }
+
+        @Override
+        public boolean add(Message message) {
+            messages[next] = message;
+            next = (next + 1) % messages.length;
+            size = Math.min(size + 1, messages.length);
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public Message get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return messages[(next - size + index + messages.length) % messages.length];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Keeps every <c>interval</c>-th message, no message at all if <c>interval</c> is zero.
+     */
+    private static final class SampledLog extends AbstractList<Message> {
+        private final int interval;
+        private final List<Message> messages = new ArrayList<>();
+        private long sent = 0;
+
+        SampledLog(int interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        public boolean add(Message message) {
+            if (interval > 0 && sent++ % interval == 0) {
+                messages.add(message);
+            }
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public Message get(int index) {
+            return messages.get(index);
+        }
+
+        @Override
+        public int size() {
+            return messages.size();
+        }
+    }
+
+    /**
+     * Appends the log lines of all actors to a file, which is mapped into memory in chunks.
+     */
+    private static final class SpillPolicy extends MessageLogPolicy {
+        private static final int CHUNK_SIZE = 1 << 20;
+
+        private final FileChannel file;
+        private MappedByteBuffer chunk;
+
+        /**
+         * File position of the start of <c>chunk</c>.
+         */
+        private long chunkStart = 0;
+
+        SpillPolicy(Path path) throws IOException {
+            this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.chunk = file.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+        }
+
+        @Override
+        List<Message> createLog(SimulatedActor actor) {
+            return new AbstractList<Message>() {
+                @Override
+                public boolean add(Message message) {
+                    append(actor.getTimeSinceSystemStart() + " " + actor.getId() + " "
+                            + message.getClass().getName() + "\n");
+                    return true;
+                }
+
+                @Override
+                public Message get(int index) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: 0");
+                }
+
+                @Override
+                public int size() {
+                    return 0;
+                }
+            };
+        }
+
+        private synchronized void append(String line) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if (chunk == null) {
+                throw new IllegalStateException("Message log has been closed");
+            }
+            try {
+                if (chunk.remaining() < bytes.length) {
+                    chunkStart += chunk.position();
+                    chunk = file.map(FileChannel.MapMode.READ_WRITE, chunkStart, Math.max(CHUNK_SIZE, bytes.length));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            chunk.put(bytes);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (chunk == null) {
+                return;
+            }
+            chunk.force();
+            file.truncate(chunkStart + chunk.position());
+            chunk = null;
+            file.close();
+        }
+    }
+}
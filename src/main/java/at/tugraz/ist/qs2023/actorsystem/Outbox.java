@@ -0,0 +1,104 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.Arrays;
+
+/**
+ * Buffer for the effects an actor has on the rest of the system while it is processed
+ * during a phased tick, i.e. messages sent to other actors, actors spawned or stopped and timers
+ * scheduled or cancelled.
+ * The effects are applied in the order they were issued once all actors have been
+ * processed, so the outcome does not depend on the order in which actors are processed.
+ */
+final class Outbox {
+    private static final byte TELL = 0;
+    private static final byte SPAWN = 1;
+    private static final byte STOP = 2;
+    private static final byte SCHEDULE = 3;
+    private static final byte CANCEL = 4;
+
+    private byte[] kinds = new byte[4];
+    private SimulatedActor[] actors = new SimulatedActor[4];
+    private Message[] messages = new Message[4];
+
+    /**
+     * Timers of the effects, created on first use.
+     */
+    private TimerHandle[] timers = null;
+
+    private int size = 0;
+
+    /**
+     * Exception thrown while the owning actor was processed, null if there was none.
+     */
+    Exception failure = null;
+
+    void tell(SimulatedActor target, Message message) {
+        add(TELL, target, message);
+    }
+
+    void spawn(SimulatedActor actor) {
+        add(SPAWN, actor, null);
+    }
+
+    void stop(SimulatedActor actor) {
+        add(STOP, actor, null);
+    }
+
+    void schedule(TimerHandle timer) {
+        addTimer(SCHEDULE, timer);
+    }
+
+    void cancel(TimerHandle timer) {
+        addTimer(CANCEL, timer);
+    }
+
+    /**
+     * Applies all buffered effects in the order they were issued and clears the buffer.
+     *
+     * @param system The system used to spawn and stop actors.
+     */
+    void deliver(SimulatedActorSystem system) {
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == TELL) {
+                actors[i].tell(messages[i]);
+            } else if (kinds[i] == SPAWN) {
+                system.spawn(actors[i]);
+            } else if (kinds[i] == STOP) {
+                system.stop(actors[i]);
+            } else if (kinds[i] == SCHEDULE) {
+                system.arm(timers[i]);
+            } else {
+                system.disarm(timers[i]);
+            }
+            actors[i] = null;
+            messages[i] = null;
+            if (timers != null) {
+                timers[i] = null;
+            }
+        }
+        size = 0;
+    }
+
+    private void addTimer(byte kind, TimerHandle timer) {
+        if (timers == null) {
+            timers = new TimerHandle[kinds.length];
+        }
+        add(kind, null, null);
+        timers[size - 1] = timer;
+    }
+
+    private void add(byte kind, SimulatedActor actor, Message message) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            actors = Arrays.copyOf(actors, size * 2);
+            messages = Arrays.copyOf(messages, size * 2);
+            if (timers != null) {
+                timers = Arrays.copyOf(timers, size * 2);
+            }
+        }
+        kinds[size] = kind;
+        actors[size] = actor;
+        messages[size] = message;
+        size++;
+    }
+}
@@ -0,0 +1,203 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToIntFunction;
+
+/**
+ * Communication channel with one link per sending actor, modelling a connection between each
+ * pair of actors instead of a single connection per receiver.
+ * <p>
+ * Every link has its own delay, which is determined per message from the sender, and delivers its
+ * messages in the order they were sent, even if a later message has a shorter delay. When messages
+ * of several links arrive at the same tick, they are merged round-robin, one message per link at a time.
+ * Messages told from outside of actors use a link of their own.
+ * <p>
+ * Links only exist while they have messages in transit, so the memory and time spent on bookkeeping
+ * depend on the number of active senders, not on the number of actors which could send.
+ */
+public class PerSenderChannel implements ICommunicationChannel {
+    /**
+     * Delay of each link, null is passed for messages sent from outside of actors.
+     */
+    private final ToIntFunction<SimulatedActor> delayOfSender;
+
+    /**
+     * Links with messages in transit by their senders.
+     */
+    private final Map<SimulatedActor, Link> links = new HashMap<>();
+
+    /**
+     * Links with messages in transit ordered by the arrival of their first message
+     * and then by the time they were opened.
+     */
+    private final PriorityQueue<Link> pending = new PriorityQueue<>(
+            Comparator.comparingLong(Link::headArrival).thenComparingLong(link -> link.opened));
+
+    /**
+     * Links with messages arriving at the current tick in round-robin order, only used during a tick.
+     */
+    private final ArrayDeque<Link> ready = new ArrayDeque<>();
+
+    /**
+     * Number of ticks so far.
+     */
+    private long now = 0;
+
+    /**
+     * Number of links opened so far.
+     */
+    private long openedLinks = 0;
+
+    /**
+     * Constructs a channel with the same delay for all senders.
+     *
+     * @param delay Fixed delay for each message, zero for arrival at the next tick.
+     */
+    public PerSenderChannel(int delay) {
+        this(sender -> delay);
+    }
+
+    /**
+     * Constructs a channel with delays depending on the sender.
+     *
+     * @param delayOfSender Returns the delay of a message sent by the given actor,
+     *                      which is null for messages not sent by an actor.
+     */
+    public PerSenderChannel(ToIntFunction<SimulatedActor> delayOfSender) {
+        this.delayOfSender = delayOfSender;
+    }
+
+    @Override
+    public void send(Message message) {
+        send(message, null);
+    }
+
+    @Override
+    public void send(Message message, SimulatedActor sender) {
+        int delay = delayOfSender.applyAsInt(sender);
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        Link link = links.get(sender);
+        boolean opened = link == null;
+        if (opened) {
+            link = new Link(sender, openedLinks++);
+            links.put(sender, link);
+        }
+        // messages must not overtake earlier messages of the same link
+        link.add(message, Math.max(now + delay + 1, link.lastArrival));
+        if (opened) {
+            pending.add(link);
+        }
+    }
+
+    @Override
+    public List<Message> tick() {
+        Mailbox delivered = new Mailbox();
+        tick(delivered);
+        List<Message> messagesDelivered = new ArrayList<>(delivered.size());
+        while (!delivered.isEmpty()) {
+            messagesDelivered.add(delivered.poll());
+        }
+        return messagesDelivered;
+    }
+
+    @Override
+    public void tick(Mailbox mailbox) {
+        now++;
+        while (!pending.isEmpty() && pending.peek().headArrival() <= now) {
+            ready.add(pending.poll());
+        }
+        while (!ready.isEmpty()) {
+            Link link = ready.poll();
+            mailbox.add(link.poll());
+            if (link.size == 0) {
+                links.remove(link.sender);
+            } else if (link.headArrival() <= now) {
+                ready.add(link);
+            } else {
+                pending.add(link);
+            }
+        }
+    }
+
+    @Override
+    public int ticksUntilNextDelivery() {
+        if (pending.isEmpty()) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE - 1, pending.peek().headArrival() - now - 1);
+    }
+
+    @Override
+    public void skip(int ticks) {
+        now += ticks;
+    }
+
+    /**
+     * @return Number of senders with messages in transit.
+     */
+    public int getActiveLinks() {
+        return links.size();
+    }
+
+    /**
+     * Messages in transit from one sender in a ring buffer, together with their arrival ticks.
+     */
+    private static final class Link {
+        private final SimulatedActor sender;
+        private final long opened;
+        private Message[] messages = new Message[2];
+        private long[] arrivals = new long[2];
+        private int head = 0;
+        private int size = 0;
+        private long lastArrival = 0;
+
+        Link(SimulatedActor sender, long opened) {
+            this.sender = sender;
+            this.opened = opened;
+        }
+
+        void add(Message message, long arrival) {
+            if (size == messages.length) {
+                grow();
+            }
+            int tail = (head + size) & (messages.length - 1);
+            messages[tail] = message;
+            arrivals[tail] = arrival;
+            lastArrival = arrival;
+            size++;
+        }
+
+        long headArrival() {
+            return arrivals[head];
+        }
+
+        Message poll() {
+            Message message = messages[head];
+            messages[head] = null;
+            head = (head + 1) & (messages.length - 1);
+            size--;
+            return message;
+        }
+
+        private void grow() {
+            int firstPart = messages.length - head;
+            Message[] grownMessages = new Message[messages.length * 2];
+            System.arraycopy(messages, head, grownMessages, 0, firstPart);
+            System.arraycopy(messages, 0, grownMessages, firstPart, head);
+            long[] grownArrivals = new long[arrivals.length * 2];
+            System.arraycopy(arrivals, head, grownArrivals, 0, firstPart);
+            System.arraycopy(arrivals, 0, grownArrivals, firstPart, head);
+            messages = grownMessages;
+            arrivals = grownArrivals;
+            head = 0;
+        }
+    }
+}
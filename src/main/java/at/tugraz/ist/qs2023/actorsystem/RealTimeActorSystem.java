@@ -0,0 +1,378 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import at.tugraz.ist.qs2023.messageboard.UnknownClientException;
+import at.tugraz.ist.qs2023.messageboard.UnknownMessageException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Actor system running actors live instead of simulating them.
+ * <p>
+ * Each spawned actor gets a concurrent mailbox, which replaces its channel, and a thread
+ * draining it, which processes a message as soon as it arrives, including replies and requests
+ * of {@link SimulatedActor#ask(SimulatedActor, Message, int, int, AskCallback)}.
+ * Messages of one actor are processed one after another, so actors need no synchronization
+ * as long as they only interact via messages. If the JVM supports virtual threads, every actor
+ * runs on its own virtual thread, otherwise on a thread of a cached pool.
+ * <p>
+ * Time is wall-clock time measured in ticks of a configurable length. The thread of an actor
+ * also ticks it, like the discrete-event mode of {@link SimulatedActorSystem} does: ticks
+ * before the next event reported by {@link SimulatedActor#ticksUntilNextEvent()} are skipped,
+ * and the actor is only ticked when an event like a resend is due, so idle actors do not wake up
+ * every tick. Ticks are late if the actor is busy, and the order of messages and ticks of different
+ * actors depends on the scheduling of their threads, so runs are not reproducible. Timers of
+ * {@link SimulatedActorSystem#scheduleOnce(SimulatedActor, int, Message)} are not available, so
+ * worker helpers count ticks instead. If service time emulation is enabled, an actor sleeps
+ * {@link Message#getDuration()} ticks before it processes a message, which corresponds to
+ * <c>busyFor</c> in the simulation.
+ */
+public class RealTimeActorSystem implements ISimulatedActorSystem {
+
+    /**
+     * Message used to wake up the thread of a stopped actor.
+     */
+    private static final Message POISON = () -> 0;
+
+    /**
+     * All running actors, the key is the actor ID.
+     */
+    private final Map<Long, SimulatedActor> actors = new ConcurrentHashMap<>();
+
+    /**
+     * Integral number used for creating actor IDs.
+     */
+    private final AtomicLong currentActorId = new AtomicLong();
+
+    /**
+     * Number of messages sent to running actors, which have not been processed completely.
+     */
+    private final AtomicLong pendingMessages = new AtomicLong();
+
+    /**
+     * First exception thrown by an actor, which has not yet been rethrown by
+     * {@link RealTimeActorSystem#runFor(int)} or {@link RealTimeActorSystem#runUntil(int)}.
+     */
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    /**
+     * Executes the mailbox loops of all actors.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Length of one tick in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * If set, actors sleep for the duration of every message before processing it.
+     */
+    private final boolean emulateServiceTime;
+
+    private final long startNanos;
+
+    /**
+     * Constructs a system with ticks of one millisecond and without service time emulation.
+     */
+    public RealTimeActorSystem() {
+        this(TimeUnit.MILLISECONDS.toNanos(1), false);
+    }
+
+    /**
+     * Constructs a new RealTimeActorSystem object.
+     *
+     * @param tickNanos          Length of one tick in nanoseconds.
+     * @param emulateServiceTime Whether processing a message should take {@link Message#getDuration()} ticks.
+     */
+    public RealTimeActorSystem(long tickNanos, boolean emulateServiceTime) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("Ticks must have a positive length");
+        }
+        this.tickNanos = tickNanos;
+        this.emulateServiceTime = emulateServiceTime;
+        this.executor = newActorExecutor();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return A sorted snapshot of all running actors.
+     */
+    @Override
+    public List<SimulatedActor> getActors() {
+        List<SimulatedActor> snapshot = new ArrayList<>(actors.values());
+        snapshot.sort(Comparator.comparingLong(SimulatedActor::getId));
+        return snapshot;
+    }
+
+    @Override
+    public int getCurrentTime() {
+        return (int) ((System.nanoTime() - startNanos) / tickNanos);
+    }
+
+    /**
+     * Starts an actor: replaces its channel by a mailbox, calls {@link ISimulatedActor#atStartUp()}
+     * and starts the thread processing its messages.
+     *
+     * @param actor Actor to be started.
+     */
+    @Override
+    public void spawn(SimulatedActor actor) {
+        LiveChannel liveChannel = new LiveChannel(actor);
+        actor.setId(currentActorId.getAndIncrement());
+        actor.messageLog = Collections.synchronizedList(actor.messageLog);
+        actor.channel = liveChannel;
+        actors.put(actor.getId(), actor);
+        actor.atStartUp();
+        actor.setTimeSinceSystemStart(getCurrentTime());
+        executor.execute(liveChannel);
+    }
+
+    /**
+     * Lets the actors run for the given number of ticks.
+     *
+     * @param numberOfTicks Number of ticks to wait.
+     * @throws UnknownClientException  if an actor threw it since the last call
+     * @throws UnknownMessageException if an actor threw it since the last call
+     */
+    @Override
+    public void runFor(int numberOfTicks) throws UnknownClientException, UnknownMessageException {
+        sleepNanos(numberOfTicks * tickNanos);
+        rethrowFailure();
+    }
+
+    /**
+     * Lets the actors run until the current time is greater than the given time.
+     *
+     * @param endTime the target time until which the system should be run
+     * @throws UnknownClientException  if an actor threw it since the last call
+     * @throws UnknownMessageException if an actor threw it since the last call
+     */
+    @Override
+    public void runUntil(int endTime) throws UnknownClientException, UnknownMessageException {
+        sleepNanos(startNanos + (endTime + 1) * tickNanos - System.nanoTime());
+        rethrowFailure();
+    }
+
+    /**
+     * Stops the actor. Messages which have not been processed yet are discarded.
+     *
+     * @param actor The actor to be stopped.
+     */
+    @Override
+    public void stop(SimulatedActor actor) {
+        if (actors.remove(actor.getId(), actor) && actor.channel instanceof LiveChannel) {
+            ((LiveChannel) actor.channel).stop();
+        }
+    }
+
+    /**
+     * Actors are ticked by their own threads in real time, so this just waits for one tick.
+     */
+    @Override
+    public void tick() throws UnknownClientException, UnknownMessageException {
+        runFor(1);
+    }
+
+    /**
+     * Waits until all messages sent to running actors have been processed.
+     *
+     * @param timeout Maximum time to wait.
+     * @param unit    Unit of the timeout.
+     * @return True if all messages have been processed, false if the timeout elapsed.
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pendingMessages.get() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Stops all actors and their threads.
+     */
+    public void shutdown() {
+        for (SimulatedActor actor : getActors()) {
+            stop(actor);
+        }
+        executor.shutdown();
+    }
+
+    private void rethrowFailure() throws UnknownClientException, UnknownMessageException {
+        Exception e = failure.getAndSet(null);
+        if (e instanceof UnknownClientException) {
+            throw (UnknownClientException) e;
+        } else if (e instanceof UnknownMessageException) {
+            throw (UnknownMessageException) e;
+        } else if (e != null) {
+            throw (RuntimeException) e;
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates an executor starting one virtual thread per actor if the JVM supports it
+     * (Java 21 or newer), otherwise a pool of daemon threads. Reflection is used, because
+     * the code base is compiled for Java 8.
+     *
+     * @return The executor for the mailbox loops.
+     */
+    private static ExecutorService newActorExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "actor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Concurrent mailbox replacing the channel of a running actor, together with the
+     * loop processing its messages.
+     */
+    private final class LiveChannel implements ICommunicationChannel, Runnable {
+        private final SimulatedActor actor;
+        private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+
+        /**
+         * Set when the actor is stopped, guarded by this channel like adding to the <c>queue</c>, so
+         * no message is added and counted as pending after the remaining messages have been discarded.
+         */
+        private volatile boolean stopped = false;
+
+        LiveChannel(SimulatedActor actor) {
+            this.actor = actor;
+        }
+
+        @Override
+        public synchronized void send(Message message) {
+            if (stopped) {
+                return;
+            }
+            pendingMessages.incrementAndGet();
+            queue.add(message);
+        }
+
+        /**
+         * Messages are not delivered by ticks in real time.
+         *
+         * @return An empty list.
+         */
+        @Override
+        public List<Message> tick() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public int ticksUntilNextDelivery() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void skip(int ticks) {
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            queue.add(POISON);
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                Message message;
+                try {
+                    message = nextMessage();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (message == POISON) {
+                    break;
+                }
+                try {
+                    if (message != null && emulateServiceTime) {
+                        sleepNanos(message.getDuration() * tickNanos);
+                    }
+                    if (!stopped) {
+                        catchUp();
+                        if (message != null) {
+                            actor.process(message);
+                        }
+                    }
+                } catch (UnknownClientException | UnknownMessageException | RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    if (message != null) {
+                        pendingMessages.decrementAndGet();
+                    }
+                }
+            }
+            // discard what is left, so quiescence can be reached
+            synchronized (this) {
+                stopped = true;
+                for (Message message = queue.poll(); message != null; message = queue.poll()) {
+                    if (message != POISON) {
+                        pendingMessages.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for the next message, but not beyond the tick of the next event of the actor.
+         *
+         * @return The next message, null if the actor has to be ticked first.
+         */
+        private Message nextMessage() throws InterruptedException {
+            int idleTicks = actor.ticksUntilNextEvent();
+            if (idleTicks == Integer.MAX_VALUE) {
+                return queue.take();
+            }
+            long eventTick = (long) actor.timeSinceSystemStart + idleTicks + 1;
+            return queue.poll(startNanos + eventTick * tickNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Ticks the actor up to the current time, skipping ticks without events.
+         */
+        private void catchUp() throws UnknownClientException, UnknownMessageException {
+            int now = getCurrentTime();
+            while (actor.timeSinceSystemStart < now) {
+                int idleTicks = Math.min(actor.ticksUntilNextEvent(), now - actor.timeSinceSystemStart);
+                if (idleTicks > 0) {
+                    actor.skipTicks(idleTicks);
+                } else {
+                    actor.tick();
+                }
+            }
+        }
+    }
+}
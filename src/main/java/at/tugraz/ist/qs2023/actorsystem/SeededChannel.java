@@ -0,0 +1,87 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.SplittableRandom;
+
+/**
+ * Communication channel with random delays, loss and duplication, which is reproducible
+ * for a given seed. Messages with different delays may overtake each other.
+ * <p>
+ * It is built on {@link TimingWheelChannel}, so sending and delivering a message takes constant time.
+ * Lost messages are never delivered, a duplicated message is delivered twice with
+ * independently drawn delays.
+ */
+public class SeededChannel extends TimingWheelChannel {
+    private final SplittableRandom random;
+    private final DelayDistribution delays;
+    private final LossModel loss;
+    private final double duplicationProbability;
+
+    /**
+     * Schedules deliveries on the timing wheel of this channel.
+     */
+    private final DeliverySchedule ownWheel = (delay, message) -> send(message, delay);
+
+    private long sent = 0;
+    private long lost = 0;
+    private long duplicated = 0;
+
+    /**
+     * Constructs a new SeededChannel object.
+     *
+     * @param seed                   Seed of the random number generator.
+     * @param delays                 Distribution of the message delays.
+     * @param loss                   Model deciding which messages are lost, not shared with other channels.
+     * @param duplicationProbability Probability of delivering a message, which is not lost, twice.
+     */
+    public SeededChannel(long seed, DelayDistribution delays, LossModel loss, double duplicationProbability) {
+        super(0);
+        if (duplicationProbability < 0 || duplicationProbability > 1) {
+            throw new IllegalArgumentException("Probability must be between 0 and 1");
+        }
+        this.random = new SplittableRandom(seed);
+        this.delays = delays;
+        this.loss = loss;
+        this.duplicationProbability = duplicationProbability;
+    }
+
+    @Override
+    public void send(Message message) {
+        schedule(message, null, ownWheel);
+    }
+
+    @Override
+    public boolean schedule(Message message, SimulatedActor sender, DeliverySchedule schedule) {
+        sent++;
+        if (loss.isLost(random)) {
+            lost++;
+            return true;
+        }
+        schedule.deliverAfter(delays.nextDelay(random), message);
+        if (duplicationProbability > 0 && random.nextDouble() < duplicationProbability) {
+            duplicated++;
+            schedule.deliverAfter(delays.nextDelay(random), message);
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of messages sent via this channel.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return Number of messages, which have been lost.
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return Number of messages, which have been duplicated.
+     */
+    public long getDuplicated() {
+        return duplicated;
+    }
+}
@@ -4,9 +4,9 @@ import at.tugraz.ist.qs2023.messageboard.UnknownClientException;
 import at.tugraz.ist.qs2023.messageboard.UnknownMessageException;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 
 public abstract class SimulatedActor implements ISimulatedActor {
 
@@ -16,7 +16,7 @@ public abstract class SimulatedActor implements ISimulatedActor {
      * of the real world would include one channel per communication/pair
      * of actors, but for the sake of simplicity we use only one per actor.
      */
-    protected CommunicationChannel channel = new DeterministicChannel(1);
+    protected ICommunicationChannel channel = new DeterministicChannel(1);
 
     /**
      * Unique id assigned to each actor
@@ -38,14 +38,20 @@ public abstract class SimulatedActor implements ISimulatedActor {
      * All messages, that have already been sent via <c>channel</c>,
      * but have not been processed yet.
      */
-    private final Queue<Message> messageBox = new LinkedList<>();
+    private final Mailbox messageBox = new Mailbox();
+
+    /**
+     * Messages of timers, which have expired in the current tick and are appended to the <c>messageBox</c>
+     * after the messages arriving via the <c>channel</c>, created on first use.
+     */
+    private Mailbox timerArrivals = null;
 
     /**
      * All messages sent to this actor, this includes messages in transit,
      * already processed messages and messages in the <c>messageBox</c>.
      * It is used to alleviate debugging and testing.
      */
-    private final List<Message> messageLog = new ArrayList<>();
+    List<Message> messageLog = new ArrayList<>();
 
     /**
      * Time since the system was started.
@@ -57,6 +63,197 @@ public abstract class SimulatedActor implements ISimulatedActor {
      */
     int timeSinceSystemStart = -1;
 
+    /**
+     * Value of <c>parkedAt</c> for actors, which are not parked.
+     */
+    static final int NOT_PARKED = -1;
+
+    /**
+     * The system which spawned this actor, null if the actor has not
+     * been spawned or has already been stopped.
+     */
+    SimulatedActorSystem actorSystem = null;
+
+    /**
+     * Set if the actor is in the run queue of its system, i.e. it is ticked in active scheduling mode.
+     */
+    boolean scheduled = false;
+
+    /**
+     * Index of the first system tick, which was not applied to <c>timeSinceSystemStart</c>
+     * since the actor left the run queue, or <c>NOT_PARKED</c>. Parked actors are not ticked,
+     * their time is caught up when they are woken up or their time is read.
+     */
+    int parkedAt = NOT_PARKED;
+
+    /**
+     * Index of the slot of this actor in the {@link ActorRegistry} of its system.
+     */
+    int registrySlot = ActorRegistry.NO_SLOT;
+
+    /**
+     * Buffer for the effects of this actor during phased ticks, created on first use.
+     */
+    Outbox outbox = null;
+
+    /**
+     * Value of <c>resolvedHandlers</c> for message classes without handler.
+     */
+    private static final MessageHandler<Message> NO_HANDLER = message -> {
+    };
+
+    /**
+     * Handlers registered with {@link SimulatedActor#registerHandler(Class, MessageHandler)}
+     * by message class, null if no handler has been registered.
+     */
+    private Map<Class<?>, MessageHandler<?>> registeredHandlers = null;
+
+    /**
+     * Handler of each message class received so far, i.e. the handler registered for the class
+     * or else for its closest superclass or interface, <c>NO_HANDLER</c> if there is none.
+     */
+    private Map<Class<?>, MessageHandler<?>> resolvedHandlers = null;
+
+    /**
+     * Requests of this actor, which have been sent with
+     * {@link SimulatedActor#ask(SimulatedActor, Message, int, int, AskCallback)} and have not been completed yet,
+     * created on first use.
+     */
+    private CorrelationTable asks = null;
+
+    /**
+     * The request, whose message is being received, null if the received message has not been sent with ask.
+     */
+    private AskRequest answering = null;
+
+    /**
+     * Sends a message to another actor and completes the callback with the first reply, which the target sends
+     * with {@link SimulatedActor#answer(Message)}. The request is tracked in a correlation table of this actor,
+     * so no helper actor is needed: if no reply has arrived after the given number of ticks, the message is
+     * resent, and after the last resend the callback is completed with a timeout. Callbacks are called while
+     * this actor is ticked. Replies and timeouts do not go through {@link SimulatedActor#receive(Message)}.
+     *
+     * @param target       The actor receiving the message.
+     * @param message      The message.
+     * @param timeoutTicks Number of ticks after sending, after which the message is resent or the request times out.
+     * @param retries      Maximum number of resends.
+     * @param callback     Completes the request.
+     * @return Correlation id of the request, unique among the requests of this actor.
+     */
+    protected final long ask(SimulatedActor target, Message message, int timeoutTicks, int retries, AskCallback callback) {
+        if (timeoutTicks < 0 || retries < 0) {
+            throw new IllegalArgumentException("Timeout and retries must not be negative");
+        }
+        if (asks == null) {
+            asks = new CorrelationTable();
+        }
+        return asks.ask(this, target, message, timeoutTicks, retries, callback, getTimeSinceSystemStart());
+    }
+
+    /**
+     * Replies to the message being received, if it has been sent with
+     * {@link SimulatedActor#ask(SimulatedActor, Message, int, int, AskCallback)}.
+     *
+     * @param reply The reply.
+     * @return Whether the reply has been sent, false if the message being received has not been sent with ask.
+     */
+    protected final boolean answer(Message reply) {
+        if (answering == null) {
+            return false;
+        }
+        answering.sender.tell(new AskReply(answering.correlationId, reply));
+        return true;
+    }
+
+    /**
+     * @return Number of requests sent with ask, which have neither been answered nor timed out yet.
+     */
+    public int getOutstandingAsks() {
+        return asks == null ? 0 : asks.size();
+    }
+
+    /**
+     * @return Number of times a request sent with ask was resent, as no reply arrived in time.
+     */
+    public long getAskResends() {
+        return asks == null ? 0 : asks.getResends();
+    }
+
+    /**
+     * @return Number of requests sent with ask, which timed out after their last resend.
+     */
+    public long getAskTimeouts() {
+        return asks == null ? 0 : asks.getTimeouts();
+    }
+
+    /**
+     * Registers the handler of a message type, which is used by
+     * {@link SimulatedActor#dispatch(Message)} for messages of the type and its subtypes,
+     * unless a handler is registered for a more specific type. Actors usually register
+     * their handlers in the constructor.
+     *
+     * @param type    Class of the handled messages.
+     * @param handler The handler, replacing any handler registered for the same class.
+     * @param <M>     Type of the handled messages.
+     */
+    protected final <M extends Message> void registerHandler(Class<M> type, MessageHandler<? super M> handler) {
+        if (registeredHandlers == null) {
+            registeredHandlers = new HashMap<>();
+            resolvedHandlers = new HashMap<>();
+        }
+        registeredHandlers.put(type, handler);
+        resolvedHandlers.clear();
+    }
+
+    /**
+     * Passes a message to the handler registered for its class. The handler of each class is
+     * resolved once and then found with a single hash lookup, independent of the number of handlers.
+     *
+     * @param message Message received by the actor.
+     * @return Whether there is a handler for the message, false for null.
+     * @throws UnknownClientException  if the handler throws it
+     * @throws UnknownMessageException if the handler throws it
+     */
+    @SuppressWarnings("unchecked")
+    protected final boolean dispatch(Message message) throws UnknownClientException, UnknownMessageException {
+        if (message == null || registeredHandlers == null) {
+            return false;
+        }
+        Class<?> type = message.getClass();
+        MessageHandler<?> handler = resolvedHandlers.get(type);
+        if (handler == null) {
+            handler = resolveHandler(type);
+            resolvedHandlers.put(type, handler);
+        }
+        if (handler == NO_HANDLER) {
+            return false;
+        }
+        ((MessageHandler<Message>) handler).handle(message);
+        return true;
+    }
+
+    /**
+     * @return The handler registered for the class, its closest superclass or else one of their interfaces,
+     * <c>NO_HANDLER</c> if there is none.
+     */
+    private MessageHandler<?> resolveHandler(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            MessageHandler<?> handler = registeredHandlers.get(c);
+            if (handler != null) {
+                return handler;
+            }
+        }
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Class<?> implemented : c.getInterfaces()) {
+                MessageHandler<?> handler = resolveHandler(implemented);
+                if (handler != NO_HANDLER) {
+                    return handler;
+                }
+            }
+        }
+        return NO_HANDLER;
+    }
+
     @Override
     public long getId() {
         return this.id;
@@ -74,28 +271,61 @@ public abstract class SimulatedActor implements ISimulatedActor {
 
     @Override
     public int getTimeSinceSystemStart() {
+        if (parkedAt != NOT_PARKED) {
+            return this.timeSinceSystemStart + actorSystem.nextTickIndex(this) - parkedAt;
+        }
         return this.timeSinceSystemStart;
     }
 
+    /**
+     * @return Number of messages, which have been delivered to the actor but have not been
+     * taken for processing yet.
+     */
+    public int getMailboxDepth() {
+        return messageBox.size();
+    }
+
     @Override
     public void setTimeSinceSystemStart(int timeSinceSystemStart) {
         this.timeSinceSystemStart = timeSinceSystemStart;
+        if (parkedAt != NOT_PARKED) {
+            parkedAt = actorSystem.nextTickIndex(this);
+        }
     }
 
     @Override
     public void tell(Message message) {
-        channel.send(message);
-        messageLog.add(message);
+        Outbox deferred = SimulatedActorSystem.deferredEffects();
+        if (deferred != null) {
+            // sent while actors are processed in parallel, delivered after all of them are done
+            deferred.tell(this, message);
+            return;
+        }
+        if (actorSystem == null) {
+            channel.send(message, null);
+            messageLog.add(message);
+        } else if (actorSystem.tellViaCalendar(this, message)) {
+            messageLog.add(message);
+        } else {
+            channel.send(message, actorSystem.activeActor());
+            messageLog.add(message);
+            actorSystem.wake(this);
+        }
     }
 
     @Override
     public void tick() throws UnknownClientException, UnknownMessageException {
         timeSinceSystemStart++;
-        List<Message> newlyDelivered = channel.tick();
-        messageBox.addAll(newlyDelivered);
+        channel.tick(messageBox);
+        if (timerArrivals != null) {
+            while (!timerArrivals.isEmpty()) {
+                messageBox.add(timerArrivals.poll());
+            }
+        }
 
         if (busyFor > 0) {
             busyFor--;
+            expireAsks();
             return;
         }
 
@@ -108,14 +338,113 @@ public abstract class SimulatedActor implements ISimulatedActor {
             messageToProcess = activeMessage;
             activeMessage = null;
         } else if (!messageBox.isEmpty()) {
-            activeMessage = messageBox.remove();
+            activeMessage = messageBox.poll();
             busyFor = activeMessage.getDuration();
         }
         // might throw an exception, but all the other code should still be executed,
         // but not in a "finally" block,
         // so we use this variable for intermediately storing the message
         if (messageToProcess != null) {
-            receive(messageToProcess);
+            process(messageToProcess);
+        }
+        expireAsks();
+    }
+
+    /**
+     * Completes the request answered by an AskReply message, passes the message of an AskRequest message
+     * to {@link SimulatedActor#receive(Message)} and any other message as it is.
+     *
+     * @param message The processed message.
+     */
+    void process(Message message) throws UnknownClientException, UnknownMessageException {
+        if (message instanceof AskReply) {
+            AskReply reply = (AskReply) message;
+            CorrelationTable.Pending pending = asks == null ? null : asks.remove(reply.correlationId);
+            // a reply to a resend after the request has been completed is dropped
+            if (pending != null) {
+                pending.callback.onReply(reply.message);
+            }
+        } else if (message instanceof AskRequest) {
+            answering = (AskRequest) message;
+            try {
+                receive(answering.message);
+            } finally {
+                answering = null;
+            }
+        } else {
+            receive(message);
+        }
+    }
+
+    /**
+     * Resends or times out the requests sent with ask, whose deadline has passed.
+     */
+    private void expireAsks() {
+        if (asks != null) {
+            asks.expire(timeSinceSystemStart);
+        }
+    }
+
+    /**
+     * Puts a message delivered via the calendar of the actor system into the <c>messageBox</c>.
+     *
+     * @param message The arriving message.
+     */
+    void deliver(Message message) {
+        messageBox.add(message);
+    }
+
+    /**
+     * Puts the message of a timer expiring in the current tick into the <c>messageBox</c>, after the messages
+     * arriving via the channel in the same tick. An actor waiting for a reply or a timeout thus takes the reply
+     * first if both arrive at once.
+     *
+     * @param message The message of the timer.
+     */
+    void deliverTimer(Message message) {
+        if (timerArrivals == null) {
+            timerArrivals = new Mailbox();
+        }
+        timerArrivals.add(message);
+    }
+
+    /**
+     * Returns the number of upcoming calls to {@link ISimulatedActor#tick()}, which would
+     * only advance time, i.e. neither take a message from the <c>messageBox</c> nor
+     * call {@link SimulatedActor#receive(Message)}. It is used by the discrete-event mode
+     * of {@link SimulatedActorSystem} to skip idle time.
+     * <p>
+     * Subclasses overriding {@link ISimulatedActor#tick()} with time-dependent logic
+     * must also override this method and {@link SimulatedActor#skipTicks(int)}.
+     *
+     * @return Number of idle ticks, <c>Integer.MAX_VALUE</c> if the actor is idle
+     * until a message is sent to it.
+     */
+    protected int ticksUntilNextEvent() {
+        int ticks = channel.ticksUntilNextDelivery();
+        if (asks != null) {
+            ticks = Math.min(ticks, asks.ticksUntilNextDeadline(timeSinceSystemStart));
+        }
+        if (busyFor > 0) {
+            return Math.min(ticks, busyFor);
+        }
+        if (activeMessage != null || !messageBox.isEmpty() || (timerArrivals != null && !timerArrivals.isEmpty())) {
+            return 0;
+        }
+        return ticks;
+    }
+
+    /**
+     * Has the same effect as calling {@link ISimulatedActor#tick()} the given number
+     * of times, as long as this number does not exceed {@link SimulatedActor#ticksUntilNextEvent()}.
+     *
+     * @param ticks Number of ticks to skip.
+     */
+    protected void skipTicks(int ticks) {
+        timeSinceSystemStart += ticks;
+        channel.skip(ticks);
+        if (busyFor > 0) {
+            busyFor -= ticks;
         }
     }
 
@@ -4,10 +4,29 @@ import at.tugraz.ist.qs2023.messageboard.UnknownClientException;
 import at.tugraz.ist.qs2023.messageboard.UnknownMessageException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
 
 public class SimulatedActorSystem implements ISimulatedActorSystem {
-    private final List<SimulatedActor> actors = new ArrayList<>();
+    /**
+     * Holds the buffer for the effects of the actor processed by the current thread during a phased tick.
+     */
+    private static final ThreadLocal<Outbox[]> DEFERRED_EFFECTS = new ThreadLocal<>();
+
+    /**
+     * Minimum number of actors processed by one task in a parallel tick.
+     */
+    private static final int MIN_ACTORS_PER_TASK = 16;
+
+    /**
+     * All actors of the system in the order they were spawned, also returned by {@link SimulatedActorSystem#getActors()}.
+     */
+    private final ActorRegistry actors = new ActorRegistry();
     private int currentTime = 0;
 
     /**
@@ -15,6 +34,121 @@ public class SimulatedActorSystem implements ISimulatedActorSystem {
      */
     private long currentActorId = 0;
 
+    /**
+     * Flag enabling the discrete-event mode, in which {@link SimulatedActorSystem#runFor(int)}
+     * and {@link SimulatedActorSystem#runUntil(int)} jump over ticks, in which no actor
+     * would do anything except advancing its time. The observable behaviour is the same
+     * as in the tick-by-tick mode.
+     */
+    private boolean timeSkipping = false;
+
+    /**
+     * Flag enabling active scheduling, in which only actors in the run queue are ticked.
+     * An actor enters the run queue when it is spawned or a message is sent to it and
+     * leaves it as soon as it is idle, i.e. it has no message in transit, in its
+     * <c>messageBox</c> or in processing. The observable behaviour is the same as if
+     * all actors were ticked. Actors added to {@link SimulatedActorSystem#getActors()}
+     * without {@link SimulatedActorSystem#spawn(SimulatedActor)} are not ticked in this mode.
+     */
+    private boolean activeScheduling = false;
+
+    /**
+     * Flag enabling calendar delivery, in which messages told to actors spawned by this system are not kept
+     * in transit by their channels, but in one calendar queue of the system. The channels only decide about
+     * the delays (see {@link ICommunicationChannel#schedule(Message, SimulatedActor, DeliverySchedule)}),
+     * and every tick only takes the messages arriving in it from the calendar and puts them into the
+     * <c>messageBox</c> of their receivers. Channels not supporting it are used as before.
+     * The observable behaviour is the same as without calendar delivery.
+     */
+    private boolean calendarDelivery = false;
+
+    /**
+     * Messages in transit with calendar delivery.
+     */
+    private final DeliveryCalendar calendar = new DeliveryCalendar();
+
+    /**
+     * Schedule passed to channels for messages told with calendar delivery.
+     */
+    private final CalendarSchedule calendarSchedule = new CalendarSchedule();
+
+    /**
+     * Messages scheduled with {@link SimulatedActorSystem#scheduleOnce(SimulatedActor, int, Message)}.
+     */
+    private final TimerWheel timers = new TimerWheel();
+
+    /**
+     * Actors to tick during the current tick, ordered by their IDs, i.e. in the same
+     * order as in the <c>actors</c>-list.
+     */
+    private final PriorityQueue<SimulatedActor> runQueue =
+            new PriorityQueue<>(Comparator.comparingLong(SimulatedActor::getId));
+
+    /**
+     * Actors to tick from the next tick on.
+     */
+    private final List<SimulatedActor> nextRunQueue = new ArrayList<>();
+
+    /**
+     * Number of ticks started so far, including skipped ticks and ticks aborted by an exception.
+     * Parked actors use it to catch up their time.
+     */
+    private int tickCount = 0;
+
+    /**
+     * Set while the actors are ticked.
+     */
+    private boolean ticking = false;
+
+    /**
+     * ID of the actor ticked at the moment.
+     */
+    private long tickedActorId = NEW_ACTOR;
+
+    /**
+     * Value of <c>currentActorId</c> when the current tick started. Actors with
+     * higher IDs have been spawned during the tick and are not ticked before the next one.
+     */
+    private long firstIdSpawnedInTick = 0;
+
+    /**
+     * Number of threads processing actors in a phased tick, 0 for the default sequential tick.
+     * <p>
+     * A phased tick consists of a processing phase, in which all actors are ticked and all
+     * messages sent, actors spawned and actors stopped are buffered per actor, and a delivery
+     * phase, which starts when all actors have been processed and applies these effects in the
+     * order of the actor IDs. Thus, a message sent during a phased tick always reaches the channel
+     * of its receiver after the receiver was ticked, and the result is the same for every number of
+     * threads. Actors must only interact via messages and the actor system in this mode.
+     */
+    private int parallelism = 0;
+
+    /**
+     * Pool processing the actors if parallelism is greater than one.
+     */
+    private ForkJoinPool pool = null;
+
+    /**
+     * Actors processed in the current phased tick, ordered by their IDs.
+     */
+    private SimulatedActor[] phaseActors = new SimulatedActor[16];
+
+    /**
+     * Actor whose code is executed at the moment, i.e. the sender of messages told now,
+     * null if messages are told from outside of actors.
+     */
+    private SimulatedActor activeActor = null;
+
+    /**
+     * Policy creating the message logs of spawned actors.
+     */
+    private MessageLogPolicy messageLogPolicy = MessageLogPolicy.unbounded();
+
+    /**
+     * Creates the channels of spawned actors, null if actors keep their own channels.
+     */
+    private Function<SimulatedActor, ICommunicationChannel> channelFactory = null;
+
     @Override
     public List<SimulatedActor> getActors() {
         return this.actors;
@@ -25,41 +159,671 @@ public class SimulatedActorSystem implements ISimulatedActorSystem {
         return this.currentTime;
     }
 
+    public boolean isTimeSkipping() {
+        return timeSkipping;
+    }
+
+    public void setTimeSkipping(boolean timeSkipping) {
+        this.timeSkipping = timeSkipping;
+    }
+
+    public boolean isActiveScheduling() {
+        return activeScheduling;
+    }
+
+    /**
+     * Switches active scheduling on or off. When switched on, all spawned actors
+     * enter the run queue and leave it after their next tick if they are idle.
+     *
+     * @param activeScheduling true to tick only actors in the run queue
+     */
+    public void setActiveScheduling(boolean activeScheduling) {
+        if (this.activeScheduling == activeScheduling) {
+            return;
+        }
+        for (SimulatedActor actor : actors) {
+            if (actor.actorSystem != this) {
+                continue;
+            }
+            if (actor.parkedAt != SimulatedActor.NOT_PARKED) {
+                actor.timeSinceSystemStart += tickCount - actor.parkedAt;
+                actor.parkedAt = SimulatedActor.NOT_PARKED;
+            }
+            actor.scheduled = activeScheduling;
+        }
+        nextRunQueue.clear();
+        if (activeScheduling) {
+            for (SimulatedActor actor : actors) {
+                if (actor.scheduled) {
+                    nextRunQueue.add(actor);
+                }
+            }
+        }
+        this.activeScheduling = activeScheduling;
+    }
+
+    public boolean isCalendarDelivery() {
+        return calendarDelivery;
+    }
+
+    /**
+     * Switches calendar delivery on or off. Messages already in transit are delivered as they were sent.
+     *
+     * @param calendarDelivery true to deliver messages via the calendar of the system
+     * @see SimulatedActorSystem#calendarDelivery
+     */
+    public void setCalendarDelivery(boolean calendarDelivery) {
+        this.calendarDelivery = calendarDelivery;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to process actors in phased ticks.
+     *
+     * @param parallelism 0 for the sequential tick, 1 for a phased tick on the calling thread
+     *                    or the number of threads in the pool processing the actors
+     * @see SimulatedActorSystem#parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Parallelism must not be negative");
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public MessageLogPolicy getMessageLogPolicy() {
+        return messageLogPolicy;
+    }
+
+    /**
+     * Sets the policy deciding which messages are kept in the message logs of actors spawned from now on.
+     * Messages already logged by such an actor before it is spawned are passed to its new log.
+     *
+     * @param messageLogPolicy The policy, {@link MessageLogPolicy#unbounded()} by default.
+     */
+    public void setMessageLogPolicy(MessageLogPolicy messageLogPolicy) {
+        if (messageLogPolicy == null) {
+            throw new IllegalArgumentException("Message log policy must not be null");
+        }
+        this.messageLogPolicy = messageLogPolicy;
+    }
+
+    public Function<SimulatedActor, ICommunicationChannel> getChannelFactory() {
+        return channelFactory;
+    }
+
+    /**
+     * Sets a factory replacing the channels of actors spawned from now on, e.g. to simulate lossy connections
+     * with {@link SeededChannel}. The channel of an actor is only replaced if no message is in transit via it.
+     * The factory is called after the actor got its ID, so it can e.g. derive a seed from it.
+     *
+     * @param channelFactory Creates the channel of an actor, null to keep the channels of the actors.
+     */
+    public void setChannelFactory(Function<SimulatedActor, ICommunicationChannel> channelFactory) {
+        this.channelFactory = channelFactory;
+    }
+
+    /**
+     * @return Buffer for the effects of the actor processed by the current thread,
+     * null if the thread is not processing an actor in a phased tick.
+     */
+    static Outbox deferredEffects() {
+        Outbox[] holder = DEFERRED_EFFECTS.get();
+        return holder == null ? null : holder[0];
+    }
+
     @Override
     public void spawn(SimulatedActor actor) {
+        Outbox deferred = deferredEffects();
+        if (deferred != null) {
+            deferred.spawn(actor);
+            return;
+        }
         actors.add(actor);
         actor.setId(currentActorId++);
-        actor.atStartUp();
+        actor.actorSystem = this;
+        if (messageLogPolicy != MessageLogPolicy.unbounded()) {
+            List<Message> messageLog = messageLogPolicy.createLog(actor);
+            messageLog.addAll(actor.messageLog);
+            actor.messageLog = messageLog;
+        }
+        if (channelFactory != null && actor.channel.ticksUntilNextDelivery() == Integer.MAX_VALUE) {
+            actor.channel = channelFactory.apply(actor);
+        }
+        if (activeScheduling) {
+            actor.scheduled = true;
+            nextRunQueue.add(actor);
+        }
+        SimulatedActor spawningActor = activeActor;
+        activeActor = actor;
+        try {
+            actor.atStartUp();
+        } finally {
+            activeActor = spawningActor;
+        }
         actor.setTimeSinceSystemStart(currentTime);
     }
 
+    /**
+     * Schedules a message, which is put into the <c>messageBox</c> of an actor after the given number of ticks,
+     * bypassing its channel. Like a message sent with delay <c>d</c> via a {@link DeterministicChannel}, it is
+     * delivered at the <c>(d + 1)</c>-th tick of the actor. Arming and cancelling a timer take constant time and
+     * waiting timers cost nothing, so an actor, which only waits for a timeout, can be parked by active scheduling
+     * and is skipped over by time skipping. Worker helpers schedule their resends and workers the expiry of idle
+     * sessions with it if configured so.
+     *
+     * @param actor      The receiver, an actor spawned by this system.
+     * @param delayTicks Number of ticks before the delivery.
+     * @param message    The message.
+     * @return Handle to cancel the delivery.
+     */
+    public TimerHandle scheduleOnce(SimulatedActor actor, int delayTicks, Message message) {
+        if (delayTicks < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        TimerHandle timer = new TimerHandle(actor, delayTicks, message);
+        Outbox deferred = deferredEffects();
+        if (deferred != null) {
+            deferred.schedule(timer);
+        } else {
+            arm(timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Cancels a message scheduled with {@link SimulatedActorSystem#scheduleOnce(SimulatedActor, int, Message)}.
+     *
+     * @param timer Handle of the scheduled message.
+     * @return Whether the message was still pending, false if it has been delivered or cancelled before.
+     */
+    public boolean cancel(TimerHandle timer) {
+        if (!timer.pending) {
+            return false;
+        }
+        timer.pending = false;
+        Outbox deferred = deferredEffects();
+        if (deferred != null) {
+            deferred.cancel(timer);
+        } else {
+            timers.remove(timer);
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of scheduled messages, which have neither been delivered nor cancelled yet.
+     */
+    public int getPendingTimers() {
+        return timers.size();
+    }
+
+    /**
+     * Adds a timer to the wheel, relative to the next tick of its receiver.
+     *
+     * @param timer The timer, which has not been cancelled while its scheduling was deferred.
+     */
+    void arm(TimerHandle timer) {
+        if (!timer.pending) {
+            return;
+        }
+        int nextTick = nextTickIndex(timer.target);
+        if (timer.delay == 0 && nextTick < tickCount) {
+            // the receiver is still ticked in the current tick
+            timer.pending = false;
+            if (timer.target.actorSystem == this) {
+                timer.target.messageLog.add(timer.message);
+                timer.target.deliverTimer(timer.message);
+                wake(timer.target);
+            }
+        } else {
+            timers.add(timer, (long) nextTick + timer.delay);
+        }
+    }
+
+    /**
+     * Removes a cancelled timer from the wheel.
+     *
+     * @param timer The timer.
+     */
+    void disarm(TimerHandle timer) {
+        timers.remove(timer);
+    }
+
+    /**
+     * Delivers the message of a timer expiring at the beginning of the current tick and makes sure the
+     * receiver is ticked in the current tick, see {@link SimulatedActor#deliverTimer(Message)}.
+     *
+     * @param actor   The receiver.
+     * @param message The message.
+     */
+    void deliverTimer(SimulatedActor actor, Message message) {
+        if (actor.actorSystem == this) {
+            actor.messageLog.add(message);
+            actor.deliverTimer(message);
+            scheduleArrival(actor);
+        }
+    }
+
     @Override
     public void runFor(int numberOfTicks) throws UnknownClientException, UnknownMessageException {
-        for (int i = 0; i < numberOfTicks; i++) {
-            tick();
-        }
+        runUntil(currentTime + numberOfTicks - 1);
     }
 
     @Override
     public void runUntil(int endTime) throws UnknownClientException, UnknownMessageException {
         while (currentTime <= endTime) {
+            if (timeSkipping) {
+                int idleTicks = Math.min(ticksUntilNextEvent(), endTime - currentTime + 1);
+                if (idleTicks > 0) {
+                    skipTicks(idleTicks);
+                    continue;
+                }
+            }
             tick();
         }
     }
 
     @Override
     public void stop(SimulatedActor actor) {
+        Outbox deferred = deferredEffects();
+        if (deferred != null) {
+            deferred.stop(actor);
+            return;
+        }
         actors.remove(actor);
+        if (actor.actorSystem == this) {
+            if (actor.parkedAt != SimulatedActor.NOT_PARKED) {
+                // a stopped actor is still ticked until the end of the current tick
+                actor.timeSinceSystemStart += tickCount - actor.parkedAt;
+                actor.parkedAt = SimulatedActor.NOT_PARKED;
+            }
+            actor.actorSystem = null;
+        }
     }
 
     @Override
     public void tick() throws UnknownClientException, UnknownMessageException {
-        // need to copy list, because actors might be spawned or stopped
-        // during tick which modifies the actors-list
-        List<SimulatedActor> currentlyAliveActors = new ArrayList<>(actors);
-        for (SimulatedActor actor : currentlyAliveActors) {
-            actor.tick();
+        tickCount++;
+        calendar.deliver(tickCount - 1, this);
+        timers.expire(tickCount - 1, this);
+        if (parallelism > 0) {
+            tickPhased();
+        } else if (activeScheduling) {
+            tickRunQueue();
+        } else {
+            // actors might be spawned or stopped during the tick, the registry
+            // keeps its slots in place until the tick is over
+            int end = actors.beginTick();
+            firstIdSpawnedInTick = currentActorId;
+            ticking = true;
+            try {
+                for (int slot = 0; slot < end; slot++) {
+                    SimulatedActor actor = actors.tickable(slot);
+                    if (actor != null) {
+                        tickedActorId = actor.getId();
+                        activeActor = actor;
+                        actor.tick();
+                    }
+                }
+            } finally {
+                ticking = false;
+                tickedActorId = NEW_ACTOR;
+                activeActor = null;
+                actors.endTick();
+            }
         }
         currentTime++;
     }
+
+    /**
+     * Ticks all actors in the run queue in the order of their IDs. Actors which are
+     * woken up during the tick are ticked as well, if all actors would have been ticked
+     * after the current one.
+     */
+    private void tickRunQueue() throws UnknownClientException, UnknownMessageException {
+        for (SimulatedActor actor : nextRunQueue) {
+            if (actor.actorSystem == this) {
+                runQueue.add(actor);
+            } else {
+                actor.scheduled = false;
+            }
+        }
+        nextRunQueue.clear();
+        firstIdSpawnedInTick = currentActorId;
+        ticking = true;
+        try {
+            while (!runQueue.isEmpty()) {
+                SimulatedActor actor = runQueue.poll();
+                tickedActorId = actor.getId();
+                activeActor = actor;
+                try {
+                    actor.tick();
+                } finally {
+                    reschedule(actor);
+                }
+            }
+        } finally {
+            // only non-empty if an actor threw an exception
+            nextRunQueue.addAll(runQueue);
+            runQueue.clear();
+            ticking = false;
+            tickedActorId = NEW_ACTOR;
+            activeActor = null;
+        }
+    }
+
+    /**
+     * Executes a phased tick: processes all actors (or all actors in the run queue), possibly in parallel,
+     * and then applies their buffered effects in the order of their IDs.
+     * If actors throw exceptions, the effects of all actors are applied nevertheless and
+     * the exception of the actor with the lowest ID is rethrown.
+     */
+    private void tickPhased() throws UnknownClientException, UnknownMessageException {
+        int count = collectPhaseActors();
+        if (pool == null) {
+            process(phaseActors, 0, count);
+        } else {
+            pool.invoke(new ProcessingTask(0, count, Math.max(MIN_ACTORS_PER_TASK, count / (4 * parallelism))));
+        }
+
+        Exception failure = null;
+        for (int i = 0; i < count; i++) {
+            Outbox outbox = phaseActors[i].outbox;
+            if (failure == null) {
+                failure = outbox.failure;
+            }
+            outbox.failure = null;
+            activeActor = phaseActors[i];
+            outbox.deliver(this);
+        }
+        activeActor = null;
+        if (activeScheduling) {
+            for (int i = 0; i < count; i++) {
+                reschedule(phaseActors[i]);
+            }
+        }
+        Arrays.fill(phaseActors, 0, count, null);
+
+        if (failure instanceof UnknownClientException) {
+            throw (UnknownClientException) failure;
+        } else if (failure instanceof UnknownMessageException) {
+            throw (UnknownMessageException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    /**
+     * Copies the actors to process in a phased tick into <c>phaseActors</c>.
+     *
+     * @return The number of actors to process.
+     */
+    private int collectPhaseActors() {
+        int count = 0;
+        if (activeScheduling) {
+            phaseActors = ensureCapacity(phaseActors, nextRunQueue.size());
+            for (SimulatedActor actor : nextRunQueue) {
+                if (actor.actorSystem == this) {
+                    phaseActors[count++] = actor;
+                } else {
+                    actor.scheduled = false;
+                }
+            }
+            nextRunQueue.clear();
+            Arrays.sort(phaseActors, 0, count, Comparator.comparingLong(SimulatedActor::getId));
+        } else {
+            phaseActors = ensureCapacity(phaseActors, actors.size());
+            for (SimulatedActor actor : actors) {
+                phaseActors[count++] = actor;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (phaseActors[i].outbox == null) {
+                phaseActors[i].outbox = new Outbox();
+            }
+        }
+        return count;
+    }
+
+    private static SimulatedActor[] ensureCapacity(SimulatedActor[] array, int capacity) {
+        return array.length >= capacity ? array : new SimulatedActor[Math.max(capacity, array.length * 2)];
+    }
+
+    /**
+     * Ticks a range of actors during the processing phase, buffering the effects of each actor in its outbox.
+     *
+     * @param actors The actors to process.
+     * @param from   Index of the first actor to process.
+     * @param to     Index after the last actor to process.
+     */
+    private static void process(SimulatedActor[] actors, int from, int to) {
+        Outbox[] holder = new Outbox[1];
+        DEFERRED_EFFECTS.set(holder);
+        try {
+            for (int i = from; i < to; i++) {
+                SimulatedActor actor = actors[i];
+                holder[0] = actor.outbox;
+                try {
+                    actor.tick();
+                } catch (UnknownClientException | UnknownMessageException | RuntimeException e) {
+                    actor.outbox.failure = e;
+                }
+            }
+        } finally {
+            DEFERRED_EFFECTS.remove();
+        }
+    }
+
+    /**
+     * Task processing a range of <c>phaseActors</c>, split until at most <c>threshold</c> actors are left.
+     */
+    private class ProcessingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        ProcessingTask(int from, int to, int threshold) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                process(phaseActors, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ProcessingTask(from, middle, threshold), new ProcessingTask(middle, to, threshold));
+            }
+        }
+    }
+
+    /**
+     * @return The actor sending messages at the moment, null if messages are told from outside of actors.
+     */
+    SimulatedActor activeActor() {
+        return activeActor;
+    }
+
+    /**
+     * Keeps an actor, which has just been ticked, in the run queue or parks it if it is idle.
+     *
+     * @param actor The actor ticked last.
+     */
+    private void reschedule(SimulatedActor actor) {
+        if (actor.actorSystem != this) {
+            actor.scheduled = false;
+        } else if (actor.ticksUntilNextEvent() == Integer.MAX_VALUE) {
+            actor.scheduled = false;
+            actor.parkedAt = tickCount;
+        } else {
+            nextRunQueue.add(actor);
+        }
+    }
+
+    /**
+     * Tells a message via the calendar if calendar delivery is enabled and the channel of the receiver supports it.
+     * Called whenever a message is sent to an actor spawned by this system.
+     *
+     * @param actor   The receiver.
+     * @param message The message.
+     * @return True if the message is delivered via the calendar, false if it has to be sent via the channel.
+     */
+    boolean tellViaCalendar(SimulatedActor actor, Message message) {
+        if (!calendarDelivery) {
+            return false;
+        }
+        calendarSchedule.target = actor;
+        try {
+            return actor.channel.schedule(message, activeActor, calendarSchedule);
+        } finally {
+            calendarSchedule.target = null;
+        }
+    }
+
+    /**
+     * Puts a message arriving now from the calendar into the <c>messageBox</c> of its receiver
+     * and makes sure the receiver is ticked in the current tick.
+     *
+     * @param actor   The receiver.
+     * @param message The message.
+     */
+    void deliver(SimulatedActor actor, Message message) {
+        if (actor.actorSystem != this) {
+            // stopped in the meantime
+            return;
+        }
+        actor.deliver(message);
+        scheduleArrival(actor);
+    }
+
+    /**
+     * Puts an actor, which has received a message at the beginning of the current tick,
+     * into the run queue if it is parked.
+     *
+     * @param actor The receiver.
+     */
+    private void scheduleArrival(SimulatedActor actor) {
+        if (!activeScheduling || actor.scheduled) {
+            return;
+        }
+        int currentTick = tickCount - 1;
+        if (actor.parkedAt != SimulatedActor.NOT_PARKED) {
+            actor.timeSinceSystemStart += currentTick - actor.parkedAt;
+            actor.parkedAt = SimulatedActor.NOT_PARKED;
+        }
+        actor.scheduled = true;
+        nextRunQueue.add(actor);
+    }
+
+    /**
+     * Schedules the deliveries to one actor, relative to the next tick of the actor.
+     */
+    private class CalendarSchedule implements DeliverySchedule {
+        SimulatedActor target;
+
+        @Override
+        public void deliverAfter(int delay, Message message) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("Delay must not be negative");
+            }
+            int nextTick = nextTickIndex(target);
+            if (delay == 0 && nextTick < tickCount) {
+                // the receiver is still ticked in the current tick
+                target.deliver(message);
+                wake(target);
+            } else {
+                calendar.add((long) nextTick + delay, target, message);
+            }
+        }
+    }
+
+    /**
+     * Puts a parked actor back into the run queue and catches up its time.
+     * Called whenever a message is sent to an actor spawned by this system.
+     *
+     * @param actor The actor which received a message.
+     */
+    void wake(SimulatedActor actor) {
+        if (!activeScheduling || actor.scheduled) {
+            return;
+        }
+        int nextTick = nextTickIndex(actor);
+        if (actor.parkedAt != SimulatedActor.NOT_PARKED) {
+            actor.timeSinceSystemStart += nextTick - actor.parkedAt;
+            actor.parkedAt = SimulatedActor.NOT_PARKED;
+        }
+        actor.scheduled = true;
+        if (nextTick < tickCount) {
+            runQueue.add(actor);
+        } else {
+            nextRunQueue.add(actor);
+        }
+    }
+
+    /**
+     * Returns the index (counted like <c>tickCount</c>) of the next tick, which applies to
+     * the given actor. During a tick this is the current tick for actors, which
+     * would be ticked after the actor ticked at the moment, and the following tick otherwise.
+     *
+     * @param actor An actor spawned by this system.
+     * @return Index of the next tick of the actor.
+     */
+    int nextTickIndex(SimulatedActor actor) {
+        if (ticking && actor.getId() > tickedActorId && actor.getId() < firstIdSpawnedInTick) {
+            return tickCount - 1;
+        }
+        return tickCount;
+    }
+
+    /**
+     * @return Number of upcoming ticks, in which no actor does anything except advancing time.
+     */
+    private int ticksUntilNextEvent() {
+        int ticks = Integer.MAX_VALUE;
+        for (SimulatedActor actor : activeScheduling ? nextRunQueue : actors) {
+            if (activeScheduling && actor.actorSystem != this) {
+                continue;
+            }
+            ticks = Math.min(ticks, actor.ticksUntilNextEvent());
+            if (ticks == 0) {
+                return 0;
+            }
+        }
+        ticks = (int) Math.min(ticks, calendar.nextArrival() - tickCount);
+        return (int) Math.min(ticks, timers.nextDeadline() - tickCount);
+    }
+
+    /**
+     * Advances the system and all actors by the given number of idle ticks at once.
+     * Parked actors catch up their time later.
+     *
+     * @param ticks Number of ticks to skip, at most {@link SimulatedActorSystem#ticksUntilNextEvent()}.
+     */
+    private void skipTicks(int ticks) {
+        for (SimulatedActor actor : activeScheduling ? nextRunQueue : actors) {
+            if (activeScheduling && actor.actorSystem != this) {
+                continue;
+            }
+            actor.skipTicks(ticks);
+        }
+        calendar.skip(ticks);
+        timers.skip(ticks);
+        tickCount += ticks;
+        currentTime += ticks;
+    }
 }
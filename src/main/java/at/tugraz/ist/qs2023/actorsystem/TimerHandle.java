@@ -0,0 +1,59 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+/**
+ * Handle of a message scheduled with {@link SimulatedActorSystem#scheduleOnce(SimulatedActor, int, Message)},
+ * which can be passed to {@link SimulatedActorSystem#cancel(TimerHandle)}. A handle should only be used by the
+ * actor, which scheduled the message.
+ */
+public final class TimerHandle {
+    /**
+     * Value of <c>bucket</c> while the timer is not in a {@link TimerWheel}.
+     */
+    static final int NO_BUCKET = -1;
+
+    final SimulatedActor target;
+    final Message message;
+
+    /**
+     * Number of ticks between the next tick of the target and the delivery.
+     */
+    final int delay;
+
+    /**
+     * Index of the tick delivering the message, set when the timer is added to the wheel.
+     */
+    long deadline;
+
+    /**
+     * Neighbours in the bucket of the wheel.
+     */
+    TimerHandle previous = null;
+    TimerHandle next = null;
+
+    /**
+     * Bucket of the wheel holding the timer, <c>NO_BUCKET</c> if it is not in the wheel.
+     */
+    int bucket = NO_BUCKET;
+
+    /**
+     * Set until the message has been delivered or the timer has been cancelled.
+     */
+    boolean pending = true;
+
+    TimerHandle(SimulatedActor target, int delay, Message message) {
+        this.target = target;
+        this.delay = delay;
+        this.message = message;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return Whether the message has neither been delivered nor cancelled yet.
+     */
+    public boolean isPending() {
+        return pending;
+    }
+}
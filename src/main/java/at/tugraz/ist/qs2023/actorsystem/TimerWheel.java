@@ -0,0 +1,201 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+/**
+ * Hierarchical timing wheel holding the timers of a {@link SimulatedActorSystem}.
+ * <p>
+ * Level <c>l</c> has 64 buckets, each covering <c>64^l</c> ticks. A timer due in less than <c>64^(l+1)</c>
+ * ticks is kept in the bucket of its deadline on the lowest such level, so the buckets of level 0 each hold
+ * the timers of a single tick. Whenever the ticks of a bucket of a higher level begin, its timers are moved
+ * one or more levels down. Buckets are doubly linked lists, so adding and cancelling a timer take constant
+ * time, and each timer is moved at most once per level. Timers of the same bucket are kept in the order
+ * they were added or moved, which only depends on the order of the calls to the wheel.
+ */
+final class TimerWheel {
+    private static final int BITS = 6;
+    private static final int BUCKETS = 1 << BITS;
+    private static final int MASK = BUCKETS - 1;
+
+    /**
+     * Levels needed for the longest delay, which is <c>Integer.MAX_VALUE</c> ticks.
+     */
+    private static final int LEVELS = 6;
+
+    private final TimerHandle[] heads = new TimerHandle[LEVELS * BUCKETS];
+    private final TimerHandle[] tails = new TimerHandle[LEVELS * BUCKETS];
+
+    /**
+     * Number of timers on each level.
+     */
+    private final int[] levelSizes = new int[LEVELS];
+
+    private int size = 0;
+
+    /**
+     * Index of the earliest tick, which has not expired yet.
+     */
+    private long current = 0;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a timer.
+     *
+     * @param timer    The timer, which is not in the wheel.
+     * @param deadline Index of the tick delivering its message, not before the earliest tick which has not expired.
+     */
+    void add(TimerHandle timer, long deadline) {
+        timer.deadline = deadline;
+        place(timer);
+        size++;
+    }
+
+    /**
+     * Removes a timer, which has not expired yet.
+     *
+     * @param timer The timer.
+     * @return Whether the timer was in the wheel.
+     */
+    boolean remove(TimerHandle timer) {
+        if (timer.bucket == TimerHandle.NO_BUCKET) {
+            return false;
+        }
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the timers of the higher levels starting at the tick down and passes the messages
+     * of all timers of the tick to the system.
+     *
+     * @param tick   Index of the tick, which must be the earliest tick which has not expired.
+     * @param system The system delivering the messages.
+     */
+    void expire(long tick, SimulatedActorSystem system) {
+        current = tick;
+        if (size > 0) {
+            cascade(tick);
+            TimerHandle timer;
+            while ((timer = heads[(int) (tick & MASK)]) != null) {
+                unlink(timer);
+                size--;
+                timer.pending = false;
+                system.deliverTimer(timer.target, timer.message);
+            }
+        }
+        current = tick + 1;
+    }
+
+    /**
+     * @return Index of the earliest tick with a timer, <c>Long.MAX_VALUE</c> if there is none.
+     */
+    long nextDeadline() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        long next = Long.MAX_VALUE;
+        if (levelSizes[0] > 0) {
+            for (long tick = current; tick < current + BUCKETS; tick++) {
+                if (heads[(int) (tick & MASK)] != null) {
+                    next = tick;
+                    break;
+                }
+            }
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            if (levelSizes[level] == 0) {
+                continue;
+            }
+            // the buckets of a level are moved down in the order of their first ticks, starting with the
+            // first tick of a bucket of the level after the earliest tick which has not expired
+            int shift = level * BITS;
+            long firstTick = ((current + (1L << shift) - 1) >>> shift) << shift;
+            for (int i = 0; i < BUCKETS && firstTick < next; i++, firstTick += 1L << shift) {
+                TimerHandle timer = heads[level * BUCKETS + (int) ((firstTick >>> shift) & MASK)];
+                if (timer != null) {
+                    for (; timer != null; timer = timer.next) {
+                        next = Math.min(next, timer.deadline);
+                    }
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Advances the earliest tick, which has not expired, moving timers down as if each tick expired.
+     *
+     * @param ticks Number of skipped ticks, at most the distance to {@link TimerWheel#nextDeadline()}.
+     */
+    void skip(int ticks) {
+        long end = current + ticks;
+        for (long tick = (current + MASK) & ~(long) MASK; tick < end && size > levelSizes[0]; tick += BUCKETS) {
+            current = tick;
+            cascade(tick);
+        }
+        current = end;
+    }
+
+    /**
+     * Moves the timers of the buckets starting at the tick down, starting with the highest level.
+     */
+    private void cascade(long tick) {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * BITS;
+            if (levelSizes[level] == 0 || (tick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            int bucket = level * BUCKETS + (int) ((tick >>> shift) & MASK);
+            TimerHandle timer = heads[bucket];
+            while (timer != null) {
+                TimerHandle next = timer.next;
+                unlink(timer);
+                place(timer);
+                timer = next;
+            }
+        }
+    }
+
+    /**
+     * Appends a timer to the bucket of its deadline on the lowest level covering it.
+     */
+    private void place(TimerHandle timer) {
+        long delta = timer.deadline - current;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * BITS)) {
+            level++;
+        }
+        int bucket = level * BUCKETS + (int) ((timer.deadline >>> (level * BITS)) & MASK);
+        timer.bucket = bucket;
+        timer.next = null;
+        timer.previous = tails[bucket];
+        if (tails[bucket] == null) {
+            heads[bucket] = timer;
+        } else {
+            tails[bucket].next = timer;
+        }
+        tails[bucket] = timer;
+        levelSizes[level]++;
+    }
+
+    private void unlink(TimerHandle timer) {
+        int bucket = timer.bucket;
+        if (timer.previous == null) {
+            heads[bucket] = timer.next;
+        } else {
+            timer.previous.next = timer.next;
+        }
+        if (timer.next == null) {
+            tails[bucket] = timer.previous;
+        } else {
+            timer.next.previous = timer.previous;
+        }
+        timer.previous = null;
+        timer.next = null;
+        timer.bucket = TimerHandle.NO_BUCKET;
+        levelSizes[bucket / BUCKETS]--;
+    }
+}
@@ -0,0 +1,271 @@
+package at.tugraz.ist.qs2023.actorsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Communication channel backed by a hashed timing wheel keyed on the arrival tick of messages.
+ * <p>
+ * Every slot of the wheel holds the messages arriving at one tick in the order they were sent.
+ * The wheel always has more slots than the longest delay of a message in it, so a slot never
+ * contains messages of different ticks and {@link ICommunicationChannel#tick()} only empties the
+ * slot of the current tick. Its cost thus depends on the number of delivered messages instead of the
+ * number of messages in transit. If a message with a longer delay is sent, the wheel is doubled, up to
+ * a span of {@link TimingWheelChannel#MAX_WHEEL_SIZE} ticks. Messages arriving later are kept in a heap
+ * ordered by arrival tick and sending order, and are moved into the wheel as soon as their arrival tick is
+ * within its span, which is before any message arriving at the same tick can be sent directly into the
+ * wheel. A few heavy-tailed delays thus neither grow the wheel nor the time to skip idle ticks, for which
+ * the occupied slots are tracked in a bitmap.
+ * <p>
+ * With a fixed delay it behaves exactly like {@link DeterministicChannel}: a message sent with delay
+ * <c>d</c> arrives at the <c>(d + 1)</c>-th call of {@link ICommunicationChannel#tick()}.
+ */
+public class TimingWheelChannel implements ICommunicationChannel {
+    /**
+     * Maximum number of slots of the wheel, a power of two and a multiple of 64.
+     */
+    static final int MAX_WHEEL_SIZE = 1024;
+
+    /**
+     * Value of <c>nextArrival</c> if it has to be recomputed.
+     */
+    private static final long UNKNOWN = -1;
+
+    /**
+     * Delay of messages sent with {@link TimingWheelChannel#send(Message)}.
+     */
+    private final int delay;
+
+    /**
+     * Messages in transit, indexed by their arrival tick modulo the number of slots.
+     */
+    private Message[][] slots;
+
+    /**
+     * Number of messages in each slot.
+     */
+    private int[] slotSizes;
+
+    /**
+     * Bit <c>i % 64</c> of word <c>i / 64</c> is set if slot <c>i</c> holds messages.
+     */
+    private long[] occupied;
+
+    /**
+     * Messages arriving after the span of the wheel, ordered by arrival tick and sending order.
+     */
+    private final PriorityQueue<Overflow> overflow = new PriorityQueue<>();
+
+    /**
+     * Number of messages added to <c>overflow</c> so far, which orders messages arriving at the same tick.
+     */
+    private long overflowSequence = 0;
+
+    /**
+     * Earliest arrival tick of the messages in transit, <c>UNKNOWN</c> if it has to be recomputed.
+     */
+    private long nextArrival = UNKNOWN;
+
+    /**
+     * Number of ticks so far.
+     */
+    private long now = 0;
+
+    /**
+     * Number of messages in transit.
+     */
+    private int inTransit = 0;
+
+    /**
+     * Constructs a new TimingWheelChannel object.
+     *
+     * @param delay Fixed delay for each message, zero for arrival at the next tick.
+     */
+    public TimingWheelChannel(int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        this.delay = delay;
+        int size = delay >= MAX_WHEEL_SIZE ? MAX_WHEEL_SIZE : Integer.highestOneBit(Math.max(delay, 1)) * 2;
+        this.slots = new Message[size][];
+        this.slotSizes = new int[size];
+        this.occupied = new long[(size + 63) / 64];
+    }
+
+    @Override
+    public void send(Message message) {
+        send(message, delay);
+    }
+
+    @Override
+    public boolean schedule(Message message, SimulatedActor sender, DeliverySchedule schedule) {
+        schedule.deliverAfter(delay, message);
+        return true;
+    }
+
+    /**
+     * Sends a message with an individual delay.
+     *
+     * @param message The message to send.
+     * @param delay   Number of ticks, which do not deliver the message.
+     */
+    protected void send(Message message, int delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        if (delay >= slots.length && slots.length < MAX_WHEEL_SIZE) {
+            grow((int) Math.min(MAX_WHEEL_SIZE, delay + 1L));
+        }
+        long arrival = now + delay + 1;
+        if (delay < slots.length) {
+            addToSlot(message, arrival);
+        } else {
+            overflow.add(new Overflow(arrival, overflowSequence++, message));
+        }
+        if (inTransit == 0) {
+            nextArrival = arrival;
+        } else if (nextArrival != UNKNOWN) {
+            nextArrival = Math.min(nextArrival, arrival);
+        }
+        inTransit++;
+    }
+
+    /**
+     * Appends a message to the slot of its arrival tick, which lies within the span of the wheel.
+     */
+    private void addToSlot(Message message, long arrival) {
+        int slot = (int) (arrival & (slots.length - 1));
+        Message[] messages = slots[slot];
+        if (messages == null) {
+            messages = slots[slot] = new Message[4];
+        } else if (slotSizes[slot] == messages.length) {
+            messages = slots[slot] = Arrays.copyOf(messages, messages.length * 2);
+        }
+        if (slotSizes[slot] == 0) {
+            occupied[slot >>> 6] |= 1L << slot;
+        }
+        messages[slotSizes[slot]++] = message;
+    }
+
+    /**
+     * Moves the messages of the heap, whose arrival tick has come within the span of the wheel, into the wheel.
+     */
+    private void drainOverflow() {
+        while (!overflow.isEmpty() && overflow.peek().arrival <= now + slots.length) {
+            Overflow entry = overflow.poll();
+            addToSlot(entry.message, entry.arrival);
+        }
+    }
+
+    @Override
+    public List<Message> tick() {
+        Mailbox delivered = new Mailbox();
+        tick(delivered);
+        List<Message> messagesDelivered = new ArrayList<>(delivered.size());
+        while (!delivered.isEmpty()) {
+            messagesDelivered.add(delivered.poll());
+        }
+        return messagesDelivered;
+    }
+
+    @Override
+    public void tick(Mailbox mailbox) {
+        now++;
+        if (nextArrival == now) {
+            nextArrival = UNKNOWN;
+        }
+        int slot = (int) (now & (slots.length - 1));
+        int size = slotSizes[slot];
+        if (size > 0) {
+            Message[] messages = slots[slot];
+            for (int i = 0; i < size; i++) {
+                mailbox.add(messages[i]);
+                messages[i] = null;
+            }
+            slotSizes[slot] = 0;
+            occupied[slot >>> 6] &= ~(1L << slot);
+            inTransit -= size;
+        }
+        drainOverflow();
+    }
+
+    @Override
+    public int ticksUntilNextDelivery() {
+        if (inTransit == 0) {
+            return Integer.MAX_VALUE;
+        }
+        if (nextArrival == UNKNOWN) {
+            nextArrival = overflow.isEmpty() ? Long.MAX_VALUE : overflow.peek().arrival;
+            // the first occupied slot after the current tick, scanning the bitmap up to the end of each word
+            int mask = slots.length - 1;
+            for (int offset = 0; offset < slots.length; ) {
+                int slot = (int) ((now + 1 + offset) & mask);
+                long bits = occupied[slot >>> 6] >>> slot;
+                if (bits != 0) {
+                    nextArrival = Math.min(nextArrival, now + 1 + offset + Long.numberOfTrailingZeros(bits));
+                    break;
+                }
+                offset += Math.min(64 - (slot & 63), slots.length - slot);
+            }
+        }
+        return (int) (nextArrival - now - 1);
+    }
+
+    @Override
+    public void skip(int ticks) {
+        now += ticks;
+        drainOverflow();
+    }
+
+    /**
+     * Rehashes all messages in transit into a wheel with at least the given number of slots.
+     *
+     * @param minimumSize Minimum number of slots.
+     */
+    private void grow(int minimumSize) {
+        int size = slots.length;
+        while (size < minimumSize) {
+            size *= 2;
+        }
+        Message[][] grownSlots = new Message[size][];
+        int[] grownSizes = new int[size];
+        long[] grownOccupied = new long[(size + 63) / 64];
+        // slot i of the old wheel holds the messages arriving at the unique tick t in (now, now + old size] with t = i (mod old size)
+        for (int i = 0; i < slots.length; i++) {
+            if (slotSizes[i] == 0) {
+                continue;
+            }
+            long arrival = now + 1 + ((i - (now + 1)) & (slots.length - 1));
+            int slot = (int) (arrival & (size - 1));
+            grownSlots[slot] = slots[i];
+            grownSizes[slot] = slotSizes[i];
+            grownOccupied[slot >>> 6] |= 1L << slot;
+        }
+        this.slots = grownSlots;
+        this.slotSizes = grownSizes;
+        this.occupied = grownOccupied;
+        drainOverflow();
+    }
+
+    /**
+     * Message arriving after the span of the wheel.
+     */
+    private static final class Overflow implements Comparable<Overflow> {
+        final long arrival;
+        final long sequence;
+        final Message message;
+
+        Overflow(long arrival, long sequence, Message message) {
+            this.arrival = arrival;
+            this.sequence = sequence;
+            this.message = message;
+        }
+
+        @Override
+        public int compareTo(Overflow other) {
+            return arrival != other.arrival ? Long.compare(arrival, other.arrival) : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Adaptive resend timeouts and retry budget of the worker helpers sending to one message store
+ * (see {@link Dispatcher#setRetryPolicy(AdaptiveRetryPolicy)}), replacing the fixed timeout and
+ * retries of {@link WorkerHelper}.
+ * <p>
+ * The round-trip time of the store is estimated like TCP does (Jacobson/Karels): a smoothed RTT
+ * and its mean deviation are updated with gains 1/8 and 1/4, and the timeout is the smoothed RTT plus
+ * four deviations. Following Karn, only operations sent once are measured, and every tick with a timeout
+ * doubles the timeout until the next measurement. Each further timeout of an operation doubles its
+ * timeout again, and a jitter of up to a quarter of it, derived from the helper and operation,
+ * keeps the resends of operations sent together apart without making the simulation random.
+ * <p>
+ * Resends are limited by a budget: every operation sent for the first time adds a fraction of a
+ * resend to it, up to the reserve, which is also the initial budget, and every resend takes one from it.
+ * A helper requests a resend when it times out and learns in the next tick whether it may resend. If the
+ * budget is empty, it does not resend, but keeps waiting for the reply to its earlier sends.
+ * <p>
+ * A policy may be shared by helpers running concurrently. To keep the simulation deterministic, the
+ * measurements, timeouts, sends and resend requests of a tick are only taken into account from the next
+ * tick on, measurements and requests of the same tick in the order of the IDs of the helpers. Thus, no more
+ * resends are granted than the budget holds, however many operations time out in the same tick.
+ */
+public class AdaptiveRetryPolicy {
+    private static final double RTT_GAIN = 0.125;
+    private static final double DEVIATION_GAIN = 0.25;
+    private static final int DEVIATIONS = 4;
+
+    private int minTimeout = WorkerHelper.RESEND_TIMEOUT;
+    private int maxTimeout = 1000;
+    private int maxRetries = WorkerHelper.MAX_RETRIES;
+    private double budgetRatio = 0.1;
+    private double budgetReserve = 10;
+
+    private double smoothedRtt = 0;
+    private double rttVariance = 0;
+    private boolean measured = false;
+
+    /**
+     * Timeout of operations sent for the first time, which is doubled by timeouts.
+     */
+    private int timeout = WorkerHelper.RESEND_TIMEOUT;
+
+    /**
+     * Number of resends, which are currently allowed, never negative.
+     */
+    private double budget = budgetReserve;
+
+    /**
+     * Measurements as pairs of helper ID and RTT, timeouts, sends and IDs of the helpers requesting
+     * a resend of the tick <c>stagedTick</c>.
+     */
+    private final List<long[]> stagedSamples = new ArrayList<>();
+    private int stagedTimeouts = 0;
+    private int stagedSends = 0;
+    private final List<Long> stagedRequests = new ArrayList<>();
+    private int stagedTick = Integer.MIN_VALUE;
+
+    /**
+     * IDs of the helpers, whose requests of the tick before <c>stagedTick</c> have been granted
+     * and who have not asked for the decision yet.
+     */
+    private final Set<Long> grantedRequests = new HashSet<>();
+
+    private long rttSamples = 0;
+    private long sentOperations = 0;
+    private long retries = 0;
+    private long refusedRetries = 0;
+
+    /**
+     * Sets the bounds of the timeout before jitter, by default the fixed timeout of worker helpers and 1000 ticks.
+     *
+     * @param min Lower bound in ticks, positive.
+     * @param max Upper bound in ticks, at least the lower bound.
+     * @return This policy.
+     */
+    public synchronized AdaptiveRetryPolicy timeouts(int min, int max) {
+        if (min <= 0 || max < min) {
+            throw new IllegalArgumentException("Invalid timeout bounds");
+        }
+        this.minTimeout = min;
+        this.maxTimeout = max;
+        this.timeout = Math.min(max, Math.max(min, timeout));
+        return this;
+    }
+
+    /**
+     * Sets the number of timeouts of an operation, after which it fails, by default the fixed retries of worker helpers.
+     *
+     * @param maxRetries Number of timeouts, not negative.
+     * @return This policy.
+     */
+    public synchronized AdaptiveRetryPolicy maxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Retries must not be negative");
+        }
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    /**
+     * Sets the retry budget, by default 10% of the operations and a reserve of 10 resends.
+     *
+     * @param ratio   Resends added to the budget per operation sent for the first time, not negative.
+     * @param reserve Initial and maximum budget in resends, not negative.
+     * @return This policy.
+     */
+    public synchronized AdaptiveRetryPolicy retryBudget(double ratio, double reserve) {
+        if (!(ratio >= 0) || !(reserve >= 0)) {
+            throw new IllegalArgumentException("Invalid retry budget");
+        }
+        this.budgetRatio = ratio;
+        this.budgetReserve = reserve;
+        this.budget = Math.min(budget, reserve);
+        return this;
+    }
+
+    /**
+     * Records that an operation has been sent for the first time.
+     *
+     * @param now The current time.
+     */
+    synchronized void recordSend(int now) {
+        advance(now);
+        stagedSends++;
+        sentOperations++;
+    }
+
+    /**
+     * Records the RTT of an operation, which has been sent only once.
+     *
+     * @param now      The current time.
+     * @param helperId ID of the helper, which measured the RTT.
+     * @param rtt      Number of ticks between sending the operation and receiving the reply.
+     */
+    synchronized void recordRtt(int now, long helperId, int rtt) {
+        advance(now);
+        stagedSamples.add(new long[]{helperId, rtt});
+        rttSamples++;
+    }
+
+    /**
+     * Records a timeout of an operation and requests a resend, which is decided in the next tick,
+     * see {@link AdaptiveRetryPolicy#isRetryGranted(int, long)}.
+     *
+     * @param now      The current time.
+     * @param helperId ID of the helper, which may request at most one resend per tick.
+     */
+    synchronized void requestRetry(int now, long helperId) {
+        advance(now);
+        stagedTimeouts++;
+        stagedRequests.add(helperId);
+    }
+
+    /**
+     * Must be called in the tick after a resend has been requested.
+     *
+     * @param now      The current time.
+     * @param helperId ID of the helper, which requested the resend.
+     * @return Whether the resend has been taken from the budget and the operation should be resent.
+     */
+    synchronized boolean isRetryGranted(int now, long helperId) {
+        advance(now);
+        if (!grantedRequests.remove(helperId)) {
+            return false;
+        }
+        retries++;
+        return true;
+    }
+
+    /**
+     * @param now      The current time.
+     * @param attempt  Number of timeouts of the operation so far.
+     * @param jitterId Value identifying the operation, from which the jitter is derived.
+     * @return Number of ticks the operation waits for a reply before its next timeout.
+     */
+    synchronized int timeout(int now, int attempt, long jitterId) {
+        advance(now);
+        long backedOff = timeout;
+        for (int i = 0; i < attempt && backedOff < maxTimeout; i++) {
+            backedOff *= 2;
+        }
+        int base = (int) Math.min(maxTimeout, backedOff);
+        long hash = mix(jitterId * 0x9E3779B97F4A7C15L + attempt);
+        return base + (int) Math.floorMod(hash, (long) base / 4 + 1);
+    }
+
+    synchronized int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Takes the changes of earlier ticks into account.
+     */
+    private void advance(int now) {
+        if (now <= stagedTick) {
+            return;
+        }
+        if (!stagedSamples.isEmpty()) {
+            stagedSamples.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            for (long[] sample : stagedSamples) {
+                measure(sample[1]);
+            }
+            stagedSamples.clear();
+            long rto = (long) Math.ceil(smoothedRtt + Math.max(1, DEVIATIONS * rttVariance));
+            timeout = (int) Math.min(maxTimeout, Math.max(minTimeout, rto));
+        }
+        if (stagedTimeouts > 0) {
+            timeout = Math.min(maxTimeout, timeout * 2);
+        }
+        // resends granted to helpers, which have received a reply in the meantime, are returned
+        budget = Math.min(budgetReserve, budget + grantedRequests.size() + stagedSends * budgetRatio);
+        grantedRequests.clear();
+        if (!stagedRequests.isEmpty()) {
+            stagedRequests.sort(null);
+            for (long helperId : stagedRequests) {
+                if (budget >= 1) {
+                    budget--;
+                    grantedRequests.add(helperId);
+                } else {
+                    refusedRetries++;
+                }
+            }
+            stagedRequests.clear();
+        }
+        stagedTimeouts = 0;
+        stagedSends = 0;
+        stagedTick = now;
+    }
+
+    private void measure(long rtt) {
+        if (!measured) {
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2.0;
+            measured = true;
+            return;
+        }
+        rttVariance += DEVIATION_GAIN * (Math.abs(smoothedRtt - rtt) - rttVariance);
+        smoothedRtt += RTT_GAIN * (rtt - smoothedRtt);
+    }
+
+    /**
+     * @return The smoothed RTT in ticks, zero before the first measurement.
+     */
+    public synchronized double getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    /**
+     * @return The smoothed mean deviation of the RTT in ticks, zero before the first measurement.
+     */
+    public synchronized double getRttVariance() {
+        return rttVariance;
+    }
+
+    /**
+     * @return The timeout of operations sent for the first time in ticks, without jitter.
+     */
+    public synchronized int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return Number of RTT measurements.
+     */
+    public synchronized long getRttSamples() {
+        return rttSamples;
+    }
+
+    /**
+     * @return Number of operations sent for the first time.
+     */
+    public synchronized long getSentOperations() {
+        return sentOperations;
+    }
+
+    /**
+     * @return Number of resends.
+     */
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return Number of timeouts, after which an operation was not resent as the budget was empty.
+     */
+    public synchronized long getRefusedRetries() {
+        return refusedRetries;
+    }
+
+    /**
+     * @return Resends per operation sent for the first time, zero if no operation has been sent.
+     */
+    public synchronized double getRetryRate() {
+        return sentOperations == 0 ? 0 : (double) retries / sentOperations;
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreading the bits of the value over the whole hash.
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
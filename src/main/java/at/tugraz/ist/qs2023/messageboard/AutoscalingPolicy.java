@@ -0,0 +1,110 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+/**
+ * Limits and thresholds of a {@link Dispatcher}, which adapts the number of its workers
+ * to the load (see {@link Dispatcher#setAutoscalingPolicy(AutoscalingPolicy)}).
+ * <p>
+ * In every tick, the dispatcher averages the open sessions and the mailbox depths over its
+ * active workers. It spawns a worker if one of the averages is above its high-water mark and
+ * retires a worker if both are below their low-water marks. Between two scale events at least
+ * the cooldown passes, so the averages can settle.
+ */
+public class AutoscalingPolicy {
+    private final int minWorkers;
+    private final int maxWorkers;
+    private double sessionsLowWaterMark = 1;
+    private double sessionsHighWaterMark = 4;
+    private double mailboxLowWaterMark = 0.5;
+    private double mailboxHighWaterMark = 2;
+    private int cooldown = 10;
+
+    /**
+     * Constructs a policy with the default water marks and cooldown.
+     *
+     * @param minWorkers Minimum number of active workers, at least one.
+     * @param maxWorkers Maximum number of active workers.
+     */
+    public AutoscalingPolicy(int minWorkers, int maxWorkers) {
+        if (minWorkers <= 0 || maxWorkers < minWorkers) {
+            throw new IllegalArgumentException("Invalid limits of workers");
+        }
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+    }
+
+    /**
+     * Sets the water marks of the average number of open sessions per worker, 1 and 4 by default.
+     *
+     * @param low  Average, below which a worker may be retired.
+     * @param high Average, above which a worker is spawned.
+     * @return This policy.
+     */
+    public AutoscalingPolicy sessionWaterMarks(double low, double high) {
+        if (!(low >= 0 && low < high)) {
+            throw new IllegalArgumentException("Invalid water marks");
+        }
+        this.sessionsLowWaterMark = low;
+        this.sessionsHighWaterMark = high;
+        return this;
+    }
+
+    /**
+     * Sets the water marks of the average mailbox depth per worker, 0.5 and 2 by default.
+     *
+     * @param low  Average, below which a worker may be retired.
+     * @param high Average, above which a worker is spawned.
+     * @return This policy.
+     */
+    public AutoscalingPolicy mailboxWaterMarks(double low, double high) {
+        if (!(low >= 0 && low < high)) {
+            throw new IllegalArgumentException("Invalid water marks");
+        }
+        this.mailboxLowWaterMark = low;
+        this.mailboxHighWaterMark = high;
+        return this;
+    }
+
+    /**
+     * Sets the minimum number of ticks between two scale events, 10 by default.
+     *
+     * @param ticks Number of ticks, not negative.
+     * @return This policy.
+     */
+    public AutoscalingPolicy cooldown(int ticks) {
+        if (ticks < 0) {
+            throw new IllegalArgumentException("Cooldown must not be negative");
+        }
+        this.cooldown = ticks;
+        return this;
+    }
+
+    public int getMinWorkers() {
+        return minWorkers;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public int getCooldown() {
+        return cooldown;
+    }
+
+    /**
+     * @param averageSessions Average number of open sessions per active worker.
+     * @param averageMailbox  Average mailbox depth per active worker.
+     * @return Whether a worker should be spawned.
+     */
+    boolean isOverloaded(double averageSessions, double averageMailbox) {
+        return averageSessions > sessionsHighWaterMark || averageMailbox > mailboxHighWaterMark;
+    }
+
+    /**
+     * @param averageSessions Average number of open sessions per active worker.
+     * @param averageMailbox  Average mailbox depth per active worker.
+     * @return Whether a worker should be retired.
+     */
+    boolean isUnderloaded(double averageSessions, double averageMailbox) {
+        return averageSessions < sessionsLowWaterMark && averageMailbox < mailboxLowWaterMark;
+    }
+}
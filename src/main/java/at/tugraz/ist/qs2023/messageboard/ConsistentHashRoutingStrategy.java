@@ -0,0 +1,122 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Routing strategy based on consistent hashing with virtual nodes: every worker is placed on a
+ * hash ring several times and a communication is assigned to the first worker following the hash
+ * of its ID on the ring. If a worker is added or removed, only the communications on its part of
+ * the ring are moved.
+ * <p>
+ * Optionally, the loads are bounded: a worker is skipped if its load (see
+ * {@link WorkerRoutingStrategy#load(Worker)}) would exceed the average load times the given factor,
+ * so hot spots on the ring are spread over the following workers.
+ */
+public class ConsistentHashRoutingStrategy implements WorkerRoutingStrategy {
+    private final int virtualNodes;
+    private final double loadBound;
+
+    /**
+     * Hashes of the virtual nodes in ascending order.
+     */
+    private long[] ring = new long[0];
+
+    /**
+     * Index of the worker of each virtual node in <c>ring</c>.
+     */
+    private int[] owners = new int[0];
+
+    /**
+     * Constructs a strategy without load bound.
+     *
+     * @param virtualNodes Number of places of each worker on the ring.
+     */
+    public ConsistentHashRoutingStrategy(int virtualNodes) {
+        this(virtualNodes, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Constructs a new ConsistentHashRoutingStrategy object.
+     *
+     * @param virtualNodes Number of places of each worker on the ring.
+     * @param loadBound    Factor limiting the load of the selected worker relative to the average
+     *                     load, at least 1, <c>Double.POSITIVE_INFINITY</c> to ignore the load.
+     */
+    public ConsistentHashRoutingStrategy(int virtualNodes, double loadBound) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Number of virtual nodes must be positive");
+        }
+        if (!(loadBound >= 1)) {
+            throw new IllegalArgumentException("Load bound must be at least 1");
+        }
+        this.virtualNodes = virtualNodes;
+        this.loadBound = loadBound;
+    }
+
+    /**
+     * @return A strategy with the same parameters and its own ring.
+     */
+    @Override
+    public WorkerRoutingStrategy forShard() {
+        return new ConsistentHashRoutingStrategy(virtualNodes, loadBound);
+    }
+
+    @Override
+    public void workersChanged(List<Worker> workers) {
+        int size = workers.size() * virtualNodes;
+        long[] nodes = new long[size];
+        for (int i = 0; i < workers.size(); i++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                nodes[i * virtualNodes + v] = mix(workers.get(i).getId() * 0x9E3779B97F4A7C15L + v);
+            }
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(nodes[a], nodes[b]));
+        ring = new long[size];
+        owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = nodes[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    @Override
+    public Worker selectWorker(long communicationId, List<Worker> workers) {
+        if (owners.length != workers.size() * virtualNodes) {
+            workersChanged(workers);
+        }
+        int position = Arrays.binarySearch(ring, mix(communicationId));
+        if (position < 0) {
+            position = -position - 1;
+        }
+        if (loadBound == Double.POSITIVE_INFINITY) {
+            return workers.get(owners[position % ring.length]);
+        }
+        long totalLoad = 0;
+        for (Worker worker : workers) {
+            totalLoad += WorkerRoutingStrategy.load(worker);
+        }
+        double maximumLoad = Math.ceil(loadBound * (totalLoad + 1) / workers.size());
+        for (int i = 0; i < ring.length; i++) {
+            Worker worker = workers.get(owners[(position + i) % ring.length]);
+            if (WorkerRoutingStrategy.load(worker) + 1 <= maximumLoad) {
+                return worker;
+            }
+        }
+        return workers.get(owners[position % ring.length]);
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreading the bits of the value over the whole hash.
+     */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -2,15 +2,18 @@ package at.tugraz.ist.qs2023.messageboard;
 
 import at.tugraz.ist.qs2023.actorsystem.Message;
 import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
-import at.tugraz.ist.qs2023.actorsystem.SimulatedActorSystem;
+import at.tugraz.ist.qs2023.actorsystem.ISimulatedActorSystem;
 import at.tugraz.ist.qs2023.messageboard.clientmessages.InitCommunication;
 import at.tugraz.ist.qs2023.messageboard.clientmessages.OperationFailed;
+import at.tugraz.ist.qs2023.messageboard.dispatchermessages.Retire;
+import at.tugraz.ist.qs2023.messageboard.dispatchermessages.RetireAck;
 import at.tugraz.ist.qs2023.messageboard.dispatchermessages.Stop;
 import at.tugraz.ist.qs2023.messageboard.dispatchermessages.StopAck;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 
 /**
  * Dispatcher mode which can either be normal or stopping,
@@ -23,6 +26,14 @@ enum Mode {NORMAL, STOPPING}
  * Upon communication initialization it selects a worker and forwards
  * the communication request to it. It is also responsible for stopping
  * the system.
+ * <p>
+ * The front door can be partitioned into several shards, which are dispatchers
+ * sharing the workers of this dispatcher. Each shard owns the communication IDs
+ * returned by {@link Dispatcher#shardFor(long)}, so new communications are set up
+ * in parallel. As the shards may be processed concurrently, each shard has its own
+ * instance of the routing strategy (see {@link WorkerRoutingStrategy#forShard()}) and
+ * its own copy of the list of workers. Stop messages are sent to this dispatcher only,
+ * which stops the shards together with the workers.
  */
 public class Dispatcher extends SimulatedActor {
 
@@ -44,107 +55,647 @@ public class Dispatcher extends SimulatedActor {
     /**
      * The system, which is used to spawn actors.
      */
-    private final SimulatedActorSystem system;
+    private final ISimulatedActorSystem system;
 
     /**
      * List of acknowledgement messages to collect, which is only non-empty
-     * in stopping mode. The list elements correspond to the actor-IDs of workers,
+     * in stopping mode. The list elements correspond to the actor-IDs of workers and shards,
      * which have not yet acknowledged the stop messages sent to them.
      */
     private final List<Long> acksToCollect;
 
+    /**
+     * Flag which is set once the Stop message has been broadcast to the workers.
+     */
+    private boolean stoppingWorkers = false;
+
     /**
      * Message store, which is used by workers to persist application data.
      */
     protected MessageStore messageStore;
 
-    public Dispatcher(SimulatedActorSystem system, int numberOfWorkers) {
+    /**
+     * Strategy selecting the worker of a new communication.
+     */
+    private final WorkerRoutingStrategy routingStrategy;
+
+    /**
+     * Limits and thresholds for adapting the number of workers, null for a fixed number of workers.
+     */
+    private AutoscalingPolicy autoscalingPolicy;
+
+    /**
+     * Workers, which have been removed from the pool and finish their ongoing communications.
+     */
+    private final List<Worker> retiringWorkers = new ArrayList<>();
+
+    /**
+     * Number of communications forwarded to each worker, only counted with autoscaling.
+     */
+    private final Map<Worker, Long> forwardedCommunications = new HashMap<>();
+
+    /**
+     * Time of the last scale event.
+     */
+    private int lastScaleEvent = Integer.MIN_VALUE;
+
+    /**
+     * Admission control passed to all workers, null if requests are not limited.
+     */
+    private RateLimiter rateLimiter;
+
+    /**
+     * Session timeout passed to all workers, zero if communications never expire.
+     */
+    private int sessionTimeout = 0;
+
+    /**
+     * Batching of store operations passed to all workers, see {@link Worker#setStoreBatching(int, int)}.
+     */
+    private int maxBatchSize = 1;
+    private int maxBatchDelay = 0;
+
+    /**
+     * Capacity of the read cache of all workers, zero if reads are not cached.
+     */
+    private int readCacheCapacity = 0;
+
+    /**
+     * Maximum number of pooled helpers of each worker, zero if helpers are not pooled.
+     */
+    private int helperPoolSize = 0;
+
+    /**
+     * Whether workers send operations to the message store with ask instead of worker helpers.
+     */
+    private boolean storeAsks = false;
+
+    /**
+     * Whether worker helpers schedule their resends with timers, see {@link Worker#setHelperTimers(boolean)}.
+     */
+    private boolean helperTimers = false;
+
+    /**
+     * Whether workers schedule the expiry of idle communications with timers, see {@link Worker#setSessionTimers(boolean)}.
+     */
+    private boolean sessionTimers = false;
+
+    /**
+     * Adaptive timeouts and retry budget shared by the worker helpers of all workers, null if they resend after a fixed timeout.
+     */
+    private AdaptiveRetryPolicy retryPolicy;
+
+    private int scaleUps = 0;
+    private int scaleDowns = 0;
+    private int retiredWorkers = 0;
+
+    /**
+     * The dispatcher, which has spawned this shard, <c>this</c> for the dispatcher spawned by the client.
+     */
+    private final Dispatcher primary;
+
+    /**
+     * Number of shards including the primary dispatcher.
+     */
+    private final int numberOfShards;
+
+    /**
+     * Shards of the primary dispatcher, indexed by their slices of communication IDs,
+     * empty before start-up and for shards other than the primary one.
+     */
+    private final List<Dispatcher> shards;
+
+    public Dispatcher(ISimulatedActorSystem system, int numberOfWorkers) {
+        this(system, numberOfWorkers, new RandomHashRoutingStrategy());
+    }
+
+    /**
+     * Constructs a dispatcher with several shards.
+     *
+     * @param system          the actor system simulation
+     * @param numberOfWorkers number of workers to spawn
+     * @param numberOfShards  number of shards including this dispatcher
+     */
+    public Dispatcher(ISimulatedActorSystem system, int numberOfWorkers, int numberOfShards) {
+        this(system, numberOfWorkers, new RandomHashRoutingStrategy(), numberOfShards);
+    }
+
+    /**
+     * Constructs a dispatcher with a custom selection of workers.
+     *
+     * @param system          the actor system simulation
+     * @param numberOfWorkers number of workers to spawn
+     * @param routingStrategy strategy selecting the worker of a new communication
+     */
+    public Dispatcher(ISimulatedActorSystem system, int numberOfWorkers, WorkerRoutingStrategy routingStrategy) {
+        this(system, numberOfWorkers, routingStrategy, 1);
+    }
+
+    /**
+     * Constructs a dispatcher with several shards and a custom selection of workers.
+     *
+     * @param system          the actor system simulation
+     * @param numberOfWorkers number of workers to spawn
+     * @param routingStrategy strategy selecting the worker of a new communication
+     * @param numberOfShards  number of shards including this dispatcher
+     */
+    public Dispatcher(ISimulatedActorSystem system, int numberOfWorkers, WorkerRoutingStrategy routingStrategy, int numberOfShards) {
+        if (numberOfShards <= 0) {
+            throw new IllegalArgumentException("Number of shards must be positive");
+        }
         this.system = system;
+        this.routingStrategy = routingStrategy;
         this.workers = new ArrayList<>(numberOfWorkers);
         this.numberOfWorkers = numberOfWorkers;
         this.mode = Mode.NORMAL;
         this.acksToCollect = new ArrayList<>();
+        this.primary = this;
+        this.numberOfShards = numberOfShards;
+        this.shards = new ArrayList<>(numberOfShards);
+        registerHandlers();
+    }
+
+    /**
+     * Constructs a shard of a dispatcher, which routes to the workers spawned by the dispatcher.
+     *
+     * @param primary the dispatcher spawning the shard
+     */
+    private Dispatcher(Dispatcher primary) {
+        this.system = primary.system;
+        this.routingStrategy = primary.routingStrategy.forShard();
+        this.workers = new ArrayList<>(primary.workers);
+        this.numberOfWorkers = 0;
+        this.mode = Mode.NORMAL;
+        this.acksToCollect = new ArrayList<>();
+        this.primary = primary;
+        this.numberOfShards = 1;
+        this.shards = new ArrayList<>(0);
+        this.routingStrategy.workersChanged(workers);
+        registerHandlers();
+    }
+
+    private void registerHandlers() {
+        registerHandler(Stop.class, this::processStop);
+        registerHandler(InitCommunication.class, this::processInitCommunication);
+        registerHandler(StopAck.class, this::processStopAck);
+        registerHandler(RetireAck.class, this::processRetireAck);
+    }
+
+    public int getNumberOfShards() {
+        return primary.numberOfShards;
+    }
+
+    /**
+     * Selects the shard owning a communication ID, which is the shard number
+     * communicationId % n, if the shards are numbered from 0 to n - 1 and this dispatcher
+     * is number 0. Clients should send InitCommunication messages to this shard.
+     *
+     * @param communicationId the communication ID of a new communication
+     * @return the shard owning the communication ID
+     * @throws IllegalStateException if the dispatcher has not been spawned yet
+     */
+    public Dispatcher shardFor(long communicationId) {
+        List<Dispatcher> allShards = primary.shards;
+        if (allShards.isEmpty()) {
+            throw new IllegalStateException("Dispatcher has not been spawned yet");
+        }
+        return allShards.get((int) Math.floorMod(communicationId, (long) allShards.size()));
+    }
+
+    /**
+     * Enables autoscaling, i.e. spawning and retiring workers depending on the load,
+     * must be called before the dispatcher is spawned. The number of workers given in the
+     * constructor is spawned at start-up and has to be within the limits of the policy.
+     *
+     * @param autoscalingPolicy limits and thresholds, null for a fixed number of workers
+     */
+    public void setAutoscalingPolicy(AutoscalingPolicy autoscalingPolicy) {
+        if (autoscalingPolicy != null && numberOfShards > 1) {
+            throw new IllegalArgumentException("Autoscaling is not supported with several shards");
+        }
+        if (autoscalingPolicy != null && (numberOfWorkers < autoscalingPolicy.getMinWorkers()
+                || numberOfWorkers > autoscalingPolicy.getMaxWorkers())) {
+            throw new IllegalArgumentException("Number of workers is not within the limits of the policy");
+        }
+        this.autoscalingPolicy = autoscalingPolicy;
+    }
+
+    public AutoscalingPolicy getAutoscalingPolicy() {
+        return autoscalingPolicy;
+    }
+
+    /**
+     * Sets the admission control, which all workers apply to the requests of clients,
+     * must be called before the dispatcher is spawned.
+     *
+     * @param rateLimiter the rate limiter shared by the workers, null if requests are not limited
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the number of idle ticks, after which workers finish a communication,
+     * must be called before the dispatcher is spawned.
+     *
+     * @param sessionTimeout number of ticks, zero if communications never expire
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        if (sessionTimeout < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets how workers batch the operations they send to the message store,
+     * must be called before the dispatcher is spawned.
+     *
+     * @param maxBatchSize  maximum number of operations in a batch, 1 if operations are not batched
+     * @param maxBatchDelay maximum number of ticks an operation waits for further operations
+     */
+    public void setStoreBatching(int maxBatchSize, int maxBatchDelay) {
+        if (maxBatchSize < 1 || maxBatchDelay < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and delay must not be negative");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = maxBatchDelay;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getMaxBatchDelay() {
+        return maxBatchDelay;
+    }
+
+    /**
+     * Sets the capacity of the read cache of all workers, see {@link Worker#setReadCache(int)},
+     * must be called before the dispatcher is spawned.
+     *
+     * @param readCacheCapacity maximum number of cached results for each request type, zero if reads are not cached
+     */
+    public void setReadCacheCapacity(int readCacheCapacity) {
+        if (readCacheCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.readCacheCapacity = readCacheCapacity;
+    }
+
+    public int getReadCacheCapacity() {
+        return readCacheCapacity;
+    }
+
+    /**
+     * Sets the maximum number of pooled helpers of each worker, see {@link Worker#setHelperPool(int)},
+     * must be called before the dispatcher is spawned.
+     *
+     * @param helperPoolSize maximum number of pooled helpers, zero if a helper is spawned for each operation
+     */
+    public void setHelperPoolSize(int helperPoolSize) {
+        if (helperPoolSize < 0) {
+            throw new IllegalArgumentException("Pool size must not be negative");
+        }
+        this.helperPoolSize = helperPoolSize;
+    }
+
+    public int getHelperPoolSize() {
+        return helperPoolSize;
+    }
+
+    /**
+     * Lets all workers send operations to the message store with ask, see {@link Worker#setStoreAsks(boolean)},
+     * must be called before the dispatcher is spawned.
+     *
+     * @param storeAsks true to send operations with ask, false to spawn worker helpers
+     */
+    public void setStoreAsks(boolean storeAsks) {
+        this.storeAsks = storeAsks;
+    }
+
+    public boolean getStoreAsks() {
+        return storeAsks;
+    }
+
+    /**
+     * Lets the worker helpers of all workers schedule their resends with timers, see
+     * {@link Worker#setHelperTimers(boolean)}, must be called before the dispatcher is spawned.
+     *
+     * @param helperTimers true to schedule resends with timers, false to let helpers count ticks
+     */
+    public void setHelperTimers(boolean helperTimers) {
+        this.helperTimers = helperTimers;
+    }
+
+    public boolean getHelperTimers() {
+        return helperTimers;
+    }
+
+    /**
+     * Lets all workers schedule the expiry of idle communications with timers, see
+     * {@link Worker#setSessionTimers(boolean)}, must be called before the dispatcher is spawned.
+     *
+     * @param sessionTimers true to schedule the expiry with timers, false to check it when workers are ticked
+     */
+    public void setSessionTimers(boolean sessionTimers) {
+        this.sessionTimers = sessionTimers;
+    }
+
+    public boolean getSessionTimers() {
+        return sessionTimers;
+    }
+
+    /**
+     * Sets the adaptive retry policy, which the worker helpers of all workers share, see
+     * {@link Worker#setRetryPolicy(AdaptiveRetryPolicy)}, must be called before the dispatcher is spawned.
+     *
+     * @param retryPolicy the policy of the message store, null to resend after a fixed timeout
+     */
+    public void setRetryPolicy(AdaptiveRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public AdaptiveRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return Number of workers, which get new communications.
+     */
+    public int getActiveWorkers() {
+        return workers.size();
+    }
+
+    /**
+     * @return Number of workers, which have been removed from the pool but still finish communications.
+     */
+    public int getRetiringWorkers() {
+        return retiringWorkers.size();
+    }
+
+    /**
+     * @return Number of workers spawned by autoscaling.
+     */
+    public int getScaleUps() {
+        return scaleUps;
+    }
+
+    /**
+     * @return Number of workers removed from the pool by autoscaling.
+     */
+    public int getScaleDowns() {
+        return scaleDowns;
+    }
+
+    /**
+     * @return Number of retiring workers, which have finished all communications and have been stopped.
+     */
+    public int getRetiredWorkers() {
+        return retiredWorkers;
     }
 
     /**
      * Depending on messages sent and the mode, different actions are performed.
+     * The processing method of each message type is registered as its handler
+     * in the constructor, messages of other types are ignored.
      *
      * @param message Non-null message received
      */
     @Override
-    public void receive(Message message) {
-        if (mode == Mode.NORMAL) {
-            normalOperation(message);
-        }
-        if (mode == Mode.STOPPING) {
-            stopping(message);
-        }
+    public void receive(Message message) throws UnknownClientException, UnknownMessageException {
+        dispatch(message);
     }
 
     /**
-     * Creates all Workers and the message store
+     * Creates all Workers, the message store and the other shards,
+     * does nothing for shards spawned by another dispatcher.
      */
     @Override
     public void atStartUp() {
+        if (primary != this) {
+            return;
+        }
         messageStore = new MessageStore();
         for (int i = 0; i < numberOfWorkers; i++) {
-            Worker w = new Worker(this, messageStore, system);
+            Worker w = createWorker();
             system.spawn(w);
             workers.add(w);
         }
+        routingStrategy.workersChanged(workers);
         system.spawn(messageStore);
+        shards.add(this);
+        for (int i = 1; i < numberOfShards; i++) {
+            Dispatcher shard = new Dispatcher(this);
+            system.spawn(shard);
+            shards.add(shard);
+        }
+    }
+
+    /**
+     * In normal operation, the Stop message is broadcast to all workers, including retiring ones,
+     * and the mode is switched to STOPPING. With several shards, the Stop message is
+     * first sent to the other shards, which acknowledge it and switch to STOPPING,
+     * and then to the workers. In stopping mode, it is ignored.
+     *
+     * @param message non-null message of type Stop
+     */
+    private void processStop(Stop message) {
+        if (mode != Mode.NORMAL) {
+            return;
+        }
+        if (primary != this) {
+            primary.tell(new StopAck(this));
+        } else {
+            for (Dispatcher shard : shards) {
+                if (shard != this) {
+                    acksToCollect.add(shard.getId());
+                    shard.tell(new Stop());
+                }
+            }
+            if (acksToCollect.isEmpty()) {
+                stopWorkers();
+            }
+        }
+        mode = Mode.STOPPING;
     }
 
     /**
+     * In normal operation, a InitCommunication-message is forwarded to one worker,
+     * which is selected by the routing strategy of the dispatcher.
+     * The default scheme is (if workers are numbered from 0 to n - 1)
+     * selected_worker_number = r % n, where r is the first random number generated
+     * from the communication id and a % b is the non-negative remainder of the integer
+     * division a/b (see {@link RandomHashRoutingStrategy}).
      * In stopping mode, InitCommunication always fail, which is signal
      * using an OperationFailed message sent to the client.
-     * In this mode, only StopAck-messages are expected and if all stop acknowledgements
-     * have been collected, the Dispatcher stop itself.
-     *
-     * @param message received message
-     */
-    private void stopping(Message message) {
-        if (message instanceof InitCommunication) {
-            InitCommunication initM = ((InitCommunication) message);
-            initM.client.tell(new OperationFailed(initM.communicationId));
-        } else if (message instanceof StopAck) {
-            SimulatedActor actor = ((StopAck) message).sender;
-            acksToCollect.remove(actor.getId());
-            system.stop(actor);
-            if (acksToCollect.size() == 0) {
-                system.stop(messageStore);
-                system.stop(this);
-            }
+     *
+     * @param initC non-null message of type InitCommunication
+     */
+    private void processInitCommunication(InitCommunication initC) {
+        if (mode != Mode.NORMAL) {
+            initC.client.tell(new OperationFailed(initC.communicationId));
+            return;
+        }
+        // decide upon id for now, maybe switch to login credentials TODO
+        Worker w = routingStrategy.selectWorker(initC.communicationId, workers);
+        if (autoscalingPolicy != null) {
+            forwardedCommunications.merge(w, 1L, Long::sum);
         }
+        w.tell(initC);
     }
 
     /**
-     * In normal operation messages are forwarded to workers.
-     * A InitCommunication-message is forwarded to one worker,
-     * which is selected based on the communication id set in the message.
-     * The selection scheme is (if workers are numbered from 0 to n - 1)
-     * selected_worker_number = communication % n, where a % b is the non-negative
-     * remainder of the integer division a/b.
-     * If a Stop message is sent, it is broadcast to all workers and the mode
-     * is switched to STOPPING.
+     * In stopping mode, only StopAck-messages are expected and if all stop acknowledgements
+     * have been collected, the Dispatcher stop itself. In normal operation, they are ignored.
      *
-     * @param message message received
+     * @param message non-null message of type StopAck
      */
-    private void normalOperation(Message message) {
-        if (message instanceof Stop) {
-            for (Worker w : workers) {
-                acksToCollect.add(w.getId());
-                w.tell(new Stop());
+    private void processStopAck(StopAck message) {
+        if (mode != Mode.STOPPING) {
+            return;
+        }
+        SimulatedActor actor = message.sender;
+        retiringWorkers.remove(actor);
+        acksToCollect.remove(actor.getId());
+        system.stop(actor);
+        if (acksToCollect.size() == 0 && !stoppingWorkers) {
+            stopWorkers();
+        }
+        if (acksToCollect.size() == 0) {
+            system.stop(messageStore);
+            system.stop(this);
+        }
+    }
+
+    /**
+     * In normal operation, retiring workers are stopped once they acknowledge retiring.
+     * In stopping mode, RetireAck-messages are ignored, as retiring workers acknowledge
+     * the stop message as well.
+     *
+     * @param message non-null message of type RetireAck
+     */
+    private void processRetireAck(RetireAck message) {
+        if (mode != Mode.NORMAL) {
+            return;
+        }
+        SimulatedActor actor = message.sender;
+        if (retiringWorkers.remove(actor)) {
+            forwardedCommunications.remove(actor);
+            retiredWorkers++;
+            system.stop(actor);
+        }
+    }
+
+    /**
+     * Creates a worker with the configuration of this dispatcher.
+     */
+    private Worker createWorker() {
+        Worker w = new Worker(this, messageStore, system);
+        w.setRateLimiter(rateLimiter);
+        w.setSessionTimeout(sessionTimeout);
+        w.setStoreBatching(maxBatchSize, maxBatchDelay);
+        w.setReadCache(readCacheCapacity);
+        w.setHelperPool(helperPoolSize);
+        w.setStoreAsks(storeAsks);
+        w.setHelperTimers(helperTimers);
+        w.setSessionTimers(sessionTimers);
+        w.setRetryPolicy(retryPolicy);
+        return w;
+    }
+
+    /**
+     * Broadcasts the Stop message to all workers, including retiring ones, which must happen
+     * after all shards have acknowledged stopping, so no shard forwards a communication
+     * to a stopping worker.
+     */
+    private void stopWorkers() {
+        stoppingWorkers = true;
+        for (Worker w : workers) {
+            acksToCollect.add(w.getId());
+            w.tell(new Stop());
+        }
+        for (Worker w : retiringWorkers) {
+            acksToCollect.add(w.getId());
+            w.tell(new Stop());
+        }
+    }
+
+    /**
+     * Overridden tick()-method, which adapts the pool of workers with autoscaling in normal operation,
+     * even if no new communication arrives, so the pool also shrinks once the load has dropped.
+     */
+    @Override
+    public void tick() throws UnknownClientException, UnknownMessageException {
+        super.tick();
+        if (autoscalingPolicy != null && mode == Mode.NORMAL) {
+            autoscale();
+        }
+    }
+
+    /**
+     * With autoscaling, only the ticks of the cooldown after a scale event can be skipped, as the load
+     * of the workers may cross a water mark in any other tick.
+     */
+    @Override
+    protected int ticksUntilNextEvent() {
+        int ticks = super.ticksUntilNextEvent();
+        if (autoscalingPolicy != null && mode == Mode.NORMAL) {
+            long cooldownEnd = (long) lastScaleEvent + autoscalingPolicy.getCooldown();
+            // the policy is evaluated in the tick, which advances the time of the dispatcher to the end of the cooldown
+            ticks = (int) Math.min(ticks, Math.max(0, cooldownEnd - getTimeSinceSystemStart() - 1));
+        }
+        return ticks;
+    }
+
+    /**
+     * Spawns or retires one worker if the load of the active workers crosses a water mark
+     * of the autoscaling policy and the cooldown since the last scale event has passed.
+     * The worker with the fewest open sessions is retired. The load of the workers is taken
+     * from their snapshots of the previous tick, see {@link LoadSnapshot}.
+     */
+    private void autoscale() {
+        int now = getTimeSinceSystemStart();
+        if ((long) now - lastScaleEvent < autoscalingPolicy.getCooldown()) {
+            return;
+        }
+        long sessions = 0;
+        long mailboxDepth = 0;
+        Worker idlest = null;
+        for (Worker w : workers) {
+            sessions += w.getOpenSessionsSnapshot();
+            mailboxDepth += w.getMailboxDepthSnapshot();
+            if (idlest == null || w.getOpenSessionsSnapshot() < idlest.getOpenSessionsSnapshot()) {
+                idlest = w;
             }
-            mode = Mode.STOPPING;
-        } else if (message instanceof InitCommunication) {
-            // decide upon id for now, maybe switch to login credentials TODO
-            InitCommunication initC = ((InitCommunication) message);
-            Random random = new Random(initC.communicationId);
-            int rnd = random.nextInt();
-            int index = (((rnd % workers.size()) + workers.size()) % workers.size());
-            Worker w = workers.get(index);
-            w.tell(message);
         }
+        double averageSessions = (double) sessions / workers.size();
+        double averageMailbox = (double) mailboxDepth / workers.size();
+        if (workers.size() < autoscalingPolicy.getMaxWorkers()
+                && autoscalingPolicy.isOverloaded(averageSessions, averageMailbox)) {
+            Worker w = createWorker();
+            system.spawn(w);
+            workers.add(w);
+            scaleUps++;
+        } else if (workers.size() > autoscalingPolicy.getMinWorkers()
+                && autoscalingPolicy.isUnderloaded(averageSessions, averageMailbox)) {
+            workers.remove(idlest);
+            retiringWorkers.add(idlest);
+            Long forwarded = forwardedCommunications.get(idlest);
+            idlest.tell(new Retire(forwarded == null ? 0 : forwarded));
+            scaleDowns++;
+        } else {
+            return;
+        }
+        lastScaleEvent = now;
+        routingStrategy.workersChanged(workers);
     }
 }
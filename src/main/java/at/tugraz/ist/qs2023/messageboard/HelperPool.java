@@ -0,0 +1,135 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Idle worker helpers of a worker, which can be reused for further operations instead of spawning
+ * new helpers. The number of helpers belonging to the pool is capped.
+ * <p>
+ * Helpers return themselves to the pool, possibly from another thread in a phased tick of the actor
+ * system. To keep the simulation deterministic, a helper is only handed out after the tick in which it
+ * was returned, and among these always the one with the lowest ID.
+ */
+final class HelperPool {
+    private final int maxSize;
+
+    /**
+     * Idle helpers returned before the tick <c>returnedTick</c>, ordered by their IDs.
+     */
+    private final PriorityQueue<WorkerHelper> ready = new PriorityQueue<>(Comparator.comparingLong(WorkerHelper::getId));
+
+    /**
+     * Idle helpers returned in the tick <c>returnedTick</c>.
+     */
+    private final List<WorkerHelper> returned = new ArrayList<>();
+    private int returnedTick = Integer.MIN_VALUE;
+
+    /**
+     * Number of helpers belonging to the pool, idle or busy.
+     */
+    private int size = 0;
+
+    private boolean closed = false;
+    private long spawned = 0;
+    private long reused = 0;
+
+    /**
+     * @param maxSize Maximum number of helpers belonging to the pool, positive.
+     */
+    HelperPool(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Takes an idle helper out of the pool.
+     *
+     * @param now The current time.
+     * @return The idle helper, null if there is none.
+     */
+    synchronized WorkerHelper acquire(int now) {
+        if (returnedTick < now) {
+            ready.addAll(returned);
+            returned.clear();
+        }
+        WorkerHelper helper = ready.poll();
+        if (helper != null) {
+            reused++;
+        }
+        return helper;
+    }
+
+    /**
+     * Reserves a place in the pool for a helper, which is about to be spawned.
+     *
+     * @return Whether the pool has not been full.
+     */
+    synchronized boolean reserve() {
+        if (closed || size == maxSize) {
+            return false;
+        }
+        size++;
+        spawned++;
+        return true;
+    }
+
+    /**
+     * Returns a helper, which has finished its operation, to the pool.
+     *
+     * @param helper The helper.
+     * @param now    The current time.
+     * @return Whether the helper has been returned, false if the pool is closed and it has to stop.
+     */
+    synchronized boolean release(WorkerHelper helper, int now) {
+        if (closed) {
+            size--;
+            return false;
+        }
+        if (returnedTick < now) {
+            ready.addAll(returned);
+            returned.clear();
+            returnedTick = now;
+        }
+        returned.add(helper);
+        return true;
+    }
+
+    /**
+     * Removes a helper, which is stopping, from the pool.
+     */
+    synchronized void discard() {
+        size--;
+    }
+
+    /**
+     * Closes the pool, afterwards helpers cannot be acquired or returned anymore.
+     *
+     * @return The idle helpers, which should be stopped.
+     */
+    synchronized List<WorkerHelper> close() {
+        closed = true;
+        List<WorkerHelper> idle = new ArrayList<>(ready);
+        idle.addAll(returned);
+        ready.clear();
+        returned.clear();
+        size -= idle.size();
+        return idle;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long getSpawned() {
+        return spawned;
+    }
+
+    synchronized long getReused() {
+        return reused;
+    }
+}
@@ -0,0 +1,151 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+
+/**
+ * Replies of the message store to recent operations, keyed by communication ID and request sequence,
+ * so an operation which is resent can be answered with the reply to its first run instead of running again.
+ * <p>
+ * Entries are kept in a ring buffer in the order they were added, which bounds the memory: an entry
+ * is removed when it is older than the window or when the ring is full and a new entry is added.
+ * As entries are added in the order of time, only the oldest entries have to be checked. An
+ * open-addressing hash table with linear probing maps keys to their positions in the ring,
+ * so lookups take constant time without boxing the key.
+ */
+final class IdempotencyTable {
+    /**
+     * Entries in the ring, which starts at <c>head</c> and holds <c>size</c> entries.
+     */
+    private final long[] communicationIds;
+    private final long[] sequences;
+    private final Message[] replies;
+    private final long[] times;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Position in the ring plus one of each key of the hash table, zero for an empty slot.
+     */
+    private final int[] slots;
+
+    /**
+     * Number of ticks an entry is kept.
+     */
+    private final int window;
+
+    /**
+     * @param window   Number of ticks an entry is kept, positive.
+     * @param capacity Maximum number of entries, positive.
+     */
+    IdempotencyTable(int window, int capacity) {
+        if (window <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Window and capacity must be positive");
+        }
+        this.window = window;
+        communicationIds = new long[capacity];
+        sequences = new long[capacity];
+        replies = new Message[capacity];
+        times = new long[capacity];
+        // at most half of the slots are used
+        slots = new int[Integer.highestOneBit(capacity) * 4];
+    }
+
+    int getWindow() {
+        return window;
+    }
+
+    int getCapacity() {
+        return replies.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the reply to an earlier run of an operation.
+     *
+     * @param communicationId Communication ID of the operation.
+     * @param sequence        Request sequence of the operation.
+     * @param now             The current time, not before the time of previous calls.
+     * @return The reply, null if the operation has not run within the window.
+     */
+    Message get(long communicationId, long sequence, long now) {
+        evictExpired(now);
+        int slot = slotOf(communicationId, sequence);
+        return slots[slot] == 0 ? null : replies[slots[slot] - 1];
+    }
+
+    /**
+     * Adds the reply to an operation, which is not in the table, evicting the oldest entry if the table is full.
+     *
+     * @param communicationId Communication ID of the operation.
+     * @param sequence        Request sequence of the operation.
+     * @param reply           The reply to the operation.
+     * @param now             The current time, not before the time of previous calls.
+     */
+    void put(long communicationId, long sequence, Message reply, long now) {
+        evictExpired(now);
+        if (size == replies.length) {
+            evictOldest();
+        }
+        int position = (head + size) % replies.length;
+        communicationIds[position] = communicationId;
+        sequences[position] = sequence;
+        replies[position] = reply;
+        times[position] = now;
+        size++;
+        slots[slotOf(communicationId, sequence)] = position + 1;
+    }
+
+    private void evictExpired(long now) {
+        while (size > 0 && times[head] + window <= now) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        deleteAt(slotOf(communicationIds[head], sequences[head]));
+        replies[head] = null;
+        head = (head + 1) % replies.length;
+        size--;
+    }
+
+    /**
+     * @return Index of the slot holding the key or of the empty slot, where it would be inserted.
+     */
+    private int slotOf(long communicationId, long sequence) {
+        int mask = slots.length - 1;
+        int slot = hash(communicationId, sequence) & mask;
+        while (slots[slot] != 0 && (communicationIds[slots[slot] - 1] != communicationId
+                || sequences[slots[slot] - 1] != sequence)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot and shifts following entries of the probe sequence back, so lookups need no tombstones.
+     */
+    private void deleteAt(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (slots[next] != 0) {
+            int position = slots[next] - 1;
+            int home = hash(communicationIds[position], sequences[position]) & mask;
+            // move the entry if the hole lies cyclically between its home slot and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[hole] = 0;
+    }
+
+    private static int hash(long communicationId, long sequence) {
+        long z = (communicationId * 31 + sequence) * 0x9E3779B97F4A7C15L;
+        return (int) (z ^ (z >>> 32));
+    }
+}
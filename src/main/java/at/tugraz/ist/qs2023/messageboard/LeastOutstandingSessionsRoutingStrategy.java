@@ -0,0 +1,26 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.List;
+
+/**
+ * Routing strategy selecting the worker with the fewest open sessions at the end of the previous tick.
+ * Ties are broken by the number of messages waiting in the mailboxes and then by the position in the
+ * list of workers.
+ */
+public class LeastOutstandingSessionsRoutingStrategy implements WorkerRoutingStrategy {
+
+    @Override
+    public Worker selectWorker(long communicationId, List<Worker> workers) {
+        Worker selected = workers.get(0);
+        for (int i = 1; i < workers.size(); i++) {
+            Worker worker = workers.get(i);
+            int sessions = worker.getOpenSessionsSnapshot();
+            int selectedSessions = selected.getOpenSessionsSnapshot();
+            if (sessions < selectedSessions || (sessions == selectedSessions
+                    && worker.getMailboxDepthSnapshot() < selected.getMailboxDepthSnapshot())) {
+                selected = worker;
+            }
+        }
+        return selected;
+    }
+}
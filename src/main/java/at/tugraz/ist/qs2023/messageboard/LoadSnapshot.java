@@ -0,0 +1,58 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+/**
+ * Load of a worker as seen by the dispatcher and its routing strategy, which may be processed concurrently
+ * with the worker in a phased tick of the actor system.
+ * <p>
+ * The worker records its load at the end of each of its ticks. To keep the simulation deterministic,
+ * readers only see the load recorded before the current tick, so the load does not depend on whether
+ * the worker is processed before, after or at the same time as the reader.
+ */
+final class LoadSnapshot {
+
+    /**
+     * Load recorded in the tick <c>recordedTick</c>.
+     */
+    private int sessions = 0;
+    private int mailboxDepth = 0;
+    private int recordedTick = Integer.MIN_VALUE;
+
+    /**
+     * Load recorded before the tick <c>recordedTick</c>.
+     */
+    private int previousSessions = 0;
+    private int previousMailboxDepth = 0;
+
+    /**
+     * Records the load of the worker at the end of its tick.
+     *
+     * @param now          The current time.
+     * @param sessions     Number of open sessions.
+     * @param mailboxDepth Number of messages waiting in the mailbox.
+     */
+    synchronized void record(int now, int sessions, int mailboxDepth) {
+        if (recordedTick < now) {
+            previousSessions = this.sessions;
+            previousMailboxDepth = this.mailboxDepth;
+            recordedTick = now;
+        }
+        this.sessions = sessions;
+        this.mailboxDepth = mailboxDepth;
+    }
+
+    /**
+     * @param now The current time.
+     * @return Number of open sessions recorded before the current tick.
+     */
+    synchronized int sessions(int now) {
+        return recordedTick < now ? sessions : previousSessions;
+    }
+
+    /**
+     * @param now The current time.
+     * @return Number of messages waiting in the mailbox recorded before the current tick.
+     */
+    synchronized int mailboxDepth(int now) {
+        return recordedTick < now ? mailboxDepth : previousMailboxDepth;
+    }
+}
@@ -20,6 +20,16 @@ public class MessageStore extends SimulatedActor {
      */
     public final static int USER_BLOCKED_AT_COUNT = 5;
 
+    /**
+     * Default number of ticks, for which the replies to writes are kept to answer resends
+     */
+    private final static int IDEMPOTENCY_WINDOW = 1000;
+
+    /**
+     * Default maximum number of replies to writes kept to answer resends
+     */
+    private final static int IDEMPOTENCY_CAPACITY = 1024;
+
     /**
      * All messages stored, the key of the dictionary corresponds to
      * the message ID of the user message stored as value.
@@ -38,6 +48,26 @@ public class MessageStore extends SimulatedActor {
      */
     private long currentId;
 
+    /**
+     * Replies to the operations of the batch being processed, null if no batch is processed.
+     */
+    private List<Message> batchReplies = null;
+
+    /**
+     * Actors notified with a CacheInvalidation message whenever a user message is added, edited or deleted.
+     */
+    private final Set<SimulatedActor> cacheSubscribers = new LinkedHashSet<>();
+
+    /**
+     * Replies to recent writes with a request sequence, null if resent writes run again.
+     */
+    private IdempotencyTable idempotencyTable = new IdempotencyTable(IDEMPOTENCY_WINDOW, IDEMPOTENCY_CAPACITY);
+
+    /**
+     * Number of resent writes answered from the idempotency table.
+     */
+    private long replayedOperations = 0;
+
     /**
      * Constructs a new MessageStore object, the channel is set to a
      * deterministic channel with no delay to simulate a good connection to
@@ -50,6 +80,19 @@ public class MessageStore extends SimulatedActor {
         this.currentId = 0;
         // good connection between WorkerHelper and MessageStore -> no delay
         this.channel = new DeterministicChannel(0);
+
+        registerHandler(RetrieveFromStore.class, this::processRetrieveFromStore);
+        registerHandler(AddLike.class, this::processAddLike);
+        registerHandler(AddDislike.class, this::processAddDislike);
+        registerHandler(DeleteLikeOrDislike.class, this::processDeleteLikeOrDislike);
+        registerHandler(AddReaction.class, this::processAddReaction);
+        registerHandler(UpdateMessageStore.class, this::processUpdateMessageStore);
+        registerHandler(AddReport.class, this::processAddReport);
+        registerHandler(SearchInStore.class, this::processSearchInStore);
+        registerHandler(EditMessage.class, this::processEditMessage);
+        registerHandler(DeleteMessage.class, this::processDeleteMessage);
+        registerHandler(StoreBatch.class, this::processStoreBatch);
+        registerHandler(CacheSubscription.class, this::processCacheSubscription);
     }
 
     /**
@@ -79,92 +122,315 @@ public class MessageStore extends SimulatedActor {
      * In case of success a OperationAck message is sent to the client, otherwise
      * an UserBanned message or an OperationFailed message is sent, depending
      * on if the user was reported too often.
+     * <p>
+     * If the message passed as parameter is of type <c>StoreBatch</c>, its operations are
+     * processed in order and their replies are sent back in a single StoreBatchReply message.
+     * <p>
+     * Replies are sent to the store client of the operation, unless the operation has been sent
+     * with ask, in which case they are answers to the asking actor.
+     * <p>
+     * The replies to operations changing the store, which have a request sequence, are kept for the
+     * idempotency window. An operation with the communication ID and request sequence of such a reply,
+     * i.e. a resend, is not run again, but answered with the same reply.
+     * <p>
+     * If the message passed as parameter is of type <c>CacheSubscription</c>, its store client is
+     * added to or removed from the subscribers, which get a CacheInvalidation message whenever a
+     * user message of an author is added, edited or deleted. Likes, dislikes and reactions do not
+     * invalidate anything, as they change the user messages already handed out.
+     * <p>
+     * The processing method of each message type is registered as its handler in the constructor,
+     * so it is found with a single lookup.
      *
      * @param message Non-null message received
      */
     @Override
     public void receive(Message message) {
-        if (message instanceof RetrieveFromStore) {
-            RetrieveFromStore retrieve = (RetrieveFromStore) message;
-            List<UserMessage> foundMessage = findByAuthor(retrieve.author);
-            retrieve.storeClient.tell(new FoundMessages(foundMessage, retrieve.communicationId));
-        } else if (message instanceof AddLike) {
-            AddLike addLikeMessage = (AddLike) message;
-            if (isBanned(addLikeMessage.clientName)) {
-                addLikeMessage.storeClient.tell(new UserBanned(addLikeMessage.communicationId));
-            } else if (addLike(addLikeMessage.clientName, addLikeMessage.messageId)) {
-                addLikeMessage.storeClient.tell(new OperationAck(addLikeMessage.communicationId));
-            } else {
-                addLikeMessage.storeClient.tell(new OperationFailed(addLikeMessage.communicationId));
-            }
-        } else if (message instanceof AddDislike) {
-            AddDislike addDislikeMessage = (AddDislike) message;
-            if (isBanned(addDislikeMessage.clientName)) {
-                addDislikeMessage.storeClient.tell(new UserBanned(addDislikeMessage.communicationId));
-            } else if (addDislike(addDislikeMessage.clientName, addDislikeMessage.messageId)) {
-                addDislikeMessage.storeClient.tell(new OperationAck(addDislikeMessage.communicationId));
-            } else {
-                addDislikeMessage.storeClient.tell(new OperationFailed(addDislikeMessage.communicationId));
-            }
-        } else if (message instanceof DeleteLikeOrDislike) {
-            DeleteLikeOrDislike deleteLikeOrDislikeMessage = (DeleteLikeOrDislike) message;
-            if (isBanned(deleteLikeOrDislikeMessage.clientName)) {
-                deleteLikeOrDislikeMessage.storeClient.tell(new UserBanned(deleteLikeOrDislikeMessage.communicationId));
-            } else if (deleteLikeOrDislike(deleteLikeOrDislikeMessage.clientName, deleteLikeOrDislikeMessage.messageId,
-                    deleteLikeOrDislikeMessage.typeToDelete)) {
-                deleteLikeOrDislikeMessage.storeClient.tell(new OperationAck(deleteLikeOrDislikeMessage.communicationId));
-            } else {
-                deleteLikeOrDislikeMessage.storeClient.tell(new OperationFailed(deleteLikeOrDislikeMessage.communicationId));
-            }
-        } else if (message instanceof AddReaction) {
-            AddReaction addReactionMessage = (AddReaction) message;
-            if (isBanned(addReactionMessage.clientName)) {
-                addReactionMessage.storeClient.tell(new UserBanned(addReactionMessage.communicationId));
-            } else if (addReaction(addReactionMessage.clientName, addReactionMessage.messageId, addReactionMessage.reaction)) {
-                addReactionMessage.storeClient.tell(new OperationAck(addReactionMessage.communicationId));
-            } else {
-                addReactionMessage.storeClient.tell(new OperationFailed(addReactionMessage.communicationId));
-            }
-        } else if (message instanceof UpdateMessageStore) {
-            UpdateMessageStore updateMessage = (UpdateMessageStore) message;
-            if (isBanned(updateMessage.message.getAuthor())) {
-                updateMessage.storeClient.tell(new UserBanned(updateMessage.communicationId));
-            } else if (update(updateMessage.message)) {
-                updateMessage.storeClient.tell(new OperationAck(updateMessage.communicationId));
-            } else {
-                updateMessage.storeClient.tell(new OperationFailed(updateMessage.communicationId));
-            }
-        } else if (message instanceof AddReport) {
-            AddReport reportMessage = (AddReport) message;
-            if (isBanned(reportMessage.clientName)) {
-                reportMessage.storeClient.tell(new UserBanned(reportMessage.communicationId));
-            } else if (addReport(reportMessage.clientName, reportMessage.reportedClientName)) {
-                reportMessage.storeClient.tell(new OperationAck(reportMessage.communicationId));
-            } else {
-                reportMessage.storeClient.tell(new OperationFailed(reportMessage.communicationId));
-            }
-        } else if (message instanceof SearchInStore) {
-            SearchInStore searchMessage = (SearchInStore) message;
-            List<UserMessage> foundMessage = findByAuthorOrText(searchMessage.searchText);
-            searchMessage.storeClient.tell(new FoundMessages(foundMessage, searchMessage.communicationId));
-        } else if (message instanceof EditMessage) {
-            EditMessage editMessage = (EditMessage) message;
-            if (isBanned(editMessage.clientName)) {
-                editMessage.storeClient.tell(new UserBanned(editMessage.communicationId));
-            } else if (editMessage(editMessage.messageId, editMessage.clientName, editMessage.newMessage)) {
-                editMessage.storeClient.tell(new OperationAck(editMessage.communicationId));
-            } else {
-                editMessage.storeClient.tell(new OperationFailed(editMessage.communicationId));
+        try {
+            if (!(message instanceof MessageStoreMessage) || !replay((MessageStoreMessage) message)) {
+                // messages of other types are ignored
+                dispatch(message);
             }
-        } else if (message instanceof DeleteMessage) {
-            DeleteMessage deleteMessage = (DeleteMessage) message;
-            if (isBanned(deleteMessage.clientName)) {
-                deleteMessage.storeClient.tell(new UserBanned(deleteMessage.communicationId));
-            } else if (deleteMessage(deleteMessage.clientName, deleteMessage.messageId)) {
-                deleteMessage.storeClient.tell(new OperationAck(deleteMessage.communicationId));
-            } else {
-                deleteMessage.storeClient.tell(new OperationFailed(deleteMessage.communicationId));
+        } catch (UnknownClientException | UnknownMessageException e) {
+            // none of the handlers of the store throws
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Processes a RetrieveFromStore message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param retrieve non-null message of type RetrieveFromStore
+     */
+    private void processRetrieveFromStore(RetrieveFromStore retrieve) {
+        List<UserMessage> foundMessage = findByAuthor(retrieve.author);
+        reply(retrieve, new FoundMessages(foundMessage, retrieve.communicationId));
+    }
+
+    /**
+     * Processes an AddLike message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param addLikeMessage non-null message of type AddLike
+     */
+    private void processAddLike(AddLike addLikeMessage) {
+        if (isBanned(addLikeMessage.clientName)) {
+            reply(addLikeMessage, new UserBanned(addLikeMessage.communicationId));
+        } else if (addLike(addLikeMessage.clientName, addLikeMessage.messageId)) {
+            reply(addLikeMessage, new OperationAck(addLikeMessage.communicationId));
+        } else {
+            reply(addLikeMessage, new OperationFailed(addLikeMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes an AddDislike message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param addDislikeMessage non-null message of type AddDislike
+     */
+    private void processAddDislike(AddDislike addDislikeMessage) {
+        if (isBanned(addDislikeMessage.clientName)) {
+            reply(addDislikeMessage, new UserBanned(addDislikeMessage.communicationId));
+        } else if (addDislike(addDislikeMessage.clientName, addDislikeMessage.messageId)) {
+            reply(addDislikeMessage, new OperationAck(addDislikeMessage.communicationId));
+        } else {
+            reply(addDislikeMessage, new OperationFailed(addDislikeMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes a DeleteLikeOrDislike message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param deleteLikeOrDislikeMessage non-null message of type DeleteLikeOrDislike
+     */
+    private void processDeleteLikeOrDislike(DeleteLikeOrDislike deleteLikeOrDislikeMessage) {
+        if (isBanned(deleteLikeOrDislikeMessage.clientName)) {
+            reply(deleteLikeOrDislikeMessage, new UserBanned(deleteLikeOrDislikeMessage.communicationId));
+        } else if (deleteLikeOrDislike(deleteLikeOrDislikeMessage.clientName, deleteLikeOrDislikeMessage.messageId,
+                deleteLikeOrDislikeMessage.typeToDelete)) {
+            reply(deleteLikeOrDislikeMessage, new OperationAck(deleteLikeOrDislikeMessage.communicationId));
+        } else {
+            reply(deleteLikeOrDislikeMessage, new OperationFailed(deleteLikeOrDislikeMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes an AddReaction message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param addReactionMessage non-null message of type AddReaction
+     */
+    private void processAddReaction(AddReaction addReactionMessage) {
+        if (isBanned(addReactionMessage.clientName)) {
+            reply(addReactionMessage, new UserBanned(addReactionMessage.communicationId));
+        } else if (addReaction(addReactionMessage.clientName, addReactionMessage.messageId, addReactionMessage.reaction)) {
+            reply(addReactionMessage, new OperationAck(addReactionMessage.communicationId));
+        } else {
+            reply(addReactionMessage, new OperationFailed(addReactionMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes an UpdateMessageStore message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param updateMessage non-null message of type UpdateMessageStore
+     */
+    private void processUpdateMessageStore(UpdateMessageStore updateMessage) {
+        if (isBanned(updateMessage.message.getAuthor())) {
+            reply(updateMessage, new UserBanned(updateMessage.communicationId));
+        } else if (update(updateMessage.message)) {
+            invalidateCaches(updateMessage.message.getAuthor());
+            reply(updateMessage, new OperationAck(updateMessage.communicationId));
+        } else {
+            reply(updateMessage, new OperationFailed(updateMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes an AddReport message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param reportMessage non-null message of type AddReport
+     */
+    private void processAddReport(AddReport reportMessage) {
+        if (isBanned(reportMessage.clientName)) {
+            reply(reportMessage, new UserBanned(reportMessage.communicationId));
+        } else if (addReport(reportMessage.clientName, reportMessage.reportedClientName)) {
+            reply(reportMessage, new OperationAck(reportMessage.communicationId));
+        } else {
+            reply(reportMessage, new OperationFailed(reportMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes a SearchInStore message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param searchMessage non-null message of type SearchInStore
+     */
+    private void processSearchInStore(SearchInStore searchMessage) {
+        List<UserMessage> foundMessage = findByAuthorOrText(searchMessage.searchText);
+        reply(searchMessage, new FoundMessages(foundMessage, searchMessage.communicationId));
+    }
+
+    /**
+     * Processes an EditMessage message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param editMessage non-null message of type EditMessage
+     */
+    private void processEditMessage(EditMessage editMessage) {
+        if (isBanned(editMessage.clientName)) {
+            reply(editMessage, new UserBanned(editMessage.communicationId));
+        } else if (editMessage(editMessage.messageId, editMessage.clientName, editMessage.newMessage)) {
+            invalidateCaches(editMessage.clientName);
+            reply(editMessage, new OperationAck(editMessage.communicationId));
+        } else {
+            reply(editMessage, new OperationFailed(editMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes a DeleteMessage message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param deleteMessage non-null message of type DeleteMessage
+     */
+    private void processDeleteMessage(DeleteMessage deleteMessage) {
+        if (isBanned(deleteMessage.clientName)) {
+            reply(deleteMessage, new UserBanned(deleteMessage.communicationId));
+        } else if (deleteMessage(deleteMessage.clientName, deleteMessage.messageId)) {
+            invalidateCaches(deleteMessage.clientName);
+            reply(deleteMessage, new OperationAck(deleteMessage.communicationId));
+        } else {
+            reply(deleteMessage, new OperationFailed(deleteMessage.communicationId));
+        }
+    }
+
+    /**
+     * Processes a StoreBatch message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param batch non-null message of type StoreBatch
+     * @throws UnknownClientException  never, as none of the handlers of the operations throws
+     * @throws UnknownMessageException never, as none of the handlers of the operations throws
+     */
+    private void processStoreBatch(StoreBatch batch) throws UnknownClientException, UnknownMessageException {
+        List<Message> replies = new ArrayList<>(batch.operations.size());
+        batchReplies = replies;
+        try {
+            for (MessageStoreMessage operation : batch.operations) {
+                if (!replay(operation) && !dispatch(operation)) {
+                    // keeps the replies aligned with the operations
+                    replies.add(new OperationFailed(operation.communicationId));
+                }
             }
+        } finally {
+            batchReplies = null;
+        }
+        StoreBatchReply batchReply = new StoreBatchReply(replies);
+        if (!answer(batchReply)) {
+            batch.storeClient.tell(batchReply);
+        }
+    }
+
+    /**
+     * Processes a CacheSubscription message, see {@link MessageStore#receive(Message)}.
+     *
+     * @param subscription non-null message of type CacheSubscription
+     */
+    private void processCacheSubscription(CacheSubscription subscription) {
+        if (subscription.subscribe) {
+            cacheSubscribers.add(subscription.storeClient);
+        } else {
+            cacheSubscribers.remove(subscription.storeClient);
+        }
+    }
+
+    /**
+     * Notifies all subscribers that a user message of an author has been added, edited or deleted.
+     *
+     * @param author the author of the user message
+     */
+    private void invalidateCaches(String author) {
+        for (SimulatedActor subscriber : cacheSubscribers) {
+            subscriber.tell(new CacheInvalidation(author));
+        }
+    }
+
+    /**
+     * Sets the number of ticks, for which the replies to writes with a request sequence are kept,
+     * so that resends of the writes are answered with the same reply instead of running again.
+     * At most <c>capacity</c> replies are kept, the oldest one is dropped first. By default, replies are
+     * kept for 1000 ticks and at most 1024 of them.
+     *
+     * @param window   number of ticks, zero if resent writes run again
+     * @param capacity maximum number of replies kept, positive
+     */
+    public void setIdempotencyWindow(int window, int capacity) {
+        idempotencyTable = window == 0 ? null : new IdempotencyTable(window, capacity);
+    }
+
+    public int getIdempotencyWindow() {
+        return idempotencyTable == null ? 0 : idempotencyTable.getWindow();
+    }
+
+    /**
+     * @return Number of resent writes, which were answered with the reply to their first run.
+     */
+    public long getReplayedOperations() {
+        return replayedOperations;
+    }
+
+    /**
+     * Answers a resent write with the reply to its first run if it is in the idempotency table.
+     *
+     * @param operation the operation
+     * @return whether the operation has been answered
+     */
+    private boolean replay(MessageStoreMessage operation) {
+        if (idempotencyTable == null || !isDeduplicated(operation)) {
+            return false;
+        }
+        Message reply = idempotencyTable.get(operation.communicationId, operation.sequence, getTimeSinceSystemStart());
+        if (reply == null) {
+            return false;
+        }
+        replayedOperations++;
+        send(operation, reply);
+        return true;
+    }
+
+    /**
+     * Reads run again when resent, as they do not change the store and their replies may be large.
+     */
+    private static boolean isDeduplicated(MessageStoreMessage operation) {
+        return operation.sequence != MessageStoreMessage.NO_SEQUENCE
+                && !(operation instanceof RetrieveFromStore) && !(operation instanceof SearchInStore);
+    }
+
+    /**
+     * Sends the reply to an operation, see {@link MessageStore#send(MessageStoreMessage, Message)},
+     * and keeps it in the idempotency table if the operation is deduplicated. The reply echoes the
+     * request sequence of the operation.
+     *
+     * @param operation the operation
+     * @param reply     the reply to the operation
+     */
+    private void reply(MessageStoreMessage operation, Message reply) {
+        if (reply instanceof ClientMessage) {
+            ((ClientMessage) reply).sequence = operation.sequence;
+        }
+        if (idempotencyTable != null && isDeduplicated(operation)) {
+            idempotencyTable.put(operation.communicationId, operation.sequence, reply, getTimeSinceSystemStart());
+        }
+        send(operation, reply);
+    }
+
+    /**
+     * Sends the reply to an operation to its store client, or to the asking actor if the operation has been
+     * sent with ask, or adds it to the replies of the batch being processed.
+     *
+     * @param operation the operation
+     * @param reply     the reply to the operation
+     */
+    private void send(MessageStoreMessage operation, Message reply) {
+        if (batchReplies != null) {
+            batchReplies.add(reply);
+        } else if (!answer(reply)) {
+            operation.storeClient.tell(reply);
         }
     }
 
@@ -0,0 +1,50 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Routing strategy sampling two different workers at random and selecting the one with the lower
+ * load (see {@link WorkerRoutingStrategy#load(Worker)}), the first one on ties. It balances almost as
+ * well as a full scan while only reading the load of two workers.
+ */
+public class PowerOfTwoChoicesRoutingStrategy implements WorkerRoutingStrategy {
+    private final SplittableRandom random;
+
+    /**
+     * Constructs a new PowerOfTwoChoicesRoutingStrategy object.
+     *
+     * @param seed Seed of the random number generator, which makes the selection reproducible.
+     */
+    public PowerOfTwoChoicesRoutingStrategy(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private PowerOfTwoChoicesRoutingStrategy(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * @return A strategy, whose random number generator is split off the one of this strategy.
+     */
+    @Override
+    public WorkerRoutingStrategy forShard() {
+        return new PowerOfTwoChoicesRoutingStrategy(random.split());
+    }
+
+    @Override
+    public Worker selectWorker(long communicationId, List<Worker> workers) {
+        int size = workers.size();
+        if (size == 1) {
+            return workers.get(0);
+        }
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Worker a = workers.get(first);
+        Worker b = workers.get(second);
+        return WorkerRoutingStrategy.load(b) < WorkerRoutingStrategy.load(a) ? b : a;
+    }
+}
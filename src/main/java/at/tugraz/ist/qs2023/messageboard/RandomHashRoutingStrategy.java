@@ -0,0 +1,34 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.List;
+
+/**
+ * Routing strategy selecting worker number <c>r mod n</c>, where <c>r</c> is the first value of
+ * <c>new java.util.Random(communicationId).nextInt()</c> and <c>n</c> is the number of workers.
+ * This is the original scheme of the dispatcher. It ignores the load and reassigns most
+ * communication IDs whenever the number of workers changes.
+ * <p>
+ * The value is computed with the linear congruential generator of {@link java.util.Random}
+ * directly, so no object is allocated per communication.
+ */
+public class RandomHashRoutingStrategy implements WorkerRoutingStrategy {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    @Override
+    public Worker selectWorker(long communicationId, List<Worker> workers) {
+        int size = workers.size();
+        int index = ((firstRandomInt(communicationId) % size) + size) % size;
+        return workers.get(index);
+    }
+
+    /**
+     * @param seed Seed of the generator.
+     * @return The same value as <c>new java.util.Random(seed).nextInt()</c>.
+     */
+    static int firstRandomInt(long seed) {
+        long scrambled = (seed ^ MULTIPLIER) & MASK;
+        return (int) (((scrambled * MULTIPLIER + ADDEND) & MASK) >>> 16);
+    }
+}
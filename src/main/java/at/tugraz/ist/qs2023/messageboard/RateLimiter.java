@@ -0,0 +1,184 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import at.tugraz.ist.qs2023.messageboard.clientmessages.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Admission control for the requests of clients, which workers apply before doing any work
+ * for a request (see {@link Dispatcher#setRateLimiter(RateLimiter)}).
+ * <p>
+ * Every communication has a token bucket, and optionally every client name has one as well,
+ * which limits a client across all its communications. A request is admitted if all its
+ * buckets hold the cost of the request, which is configurable per message type and 1 by default.
+ * Requests without client name (e.g. SearchMessages) are only limited per communication.
+ * InitCommunication and FinishCommunication are never limited.
+ * <p>
+ * A rate limiter may be shared by workers running concurrently.
+ */
+public class RateLimiter {
+    private final double communicationCapacity;
+    private final double communicationRefill;
+    private double clientNameCapacity = 0;
+    private double clientNameRefill = 0;
+    private final Map<Class<? extends ClientMessage>, Double> costs = new HashMap<>();
+
+    private final Map<Long, TokenBucket> communicationBuckets = new HashMap<>();
+    private final Map<String, TokenBucket> clientNameBuckets = new HashMap<>();
+
+    /**
+     * Number of admissions since full client name buckets were last removed.
+     */
+    private int admissionsSinceCleanup = 0;
+
+    private long admitted = 0;
+    private long throttled = 0;
+
+    /**
+     * Constructs a rate limiter, which only limits each communication.
+     *
+     * @param capacity      Largest burst of a communication in tokens.
+     * @param refillPerTick Sustained rate of a communication in tokens per tick.
+     */
+    public RateLimiter(double capacity, double refillPerTick) {
+        if (!(capacity > 0) || !(refillPerTick > 0)) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        this.communicationCapacity = capacity;
+        this.communicationRefill = refillPerTick;
+    }
+
+    /**
+     * Limits the requests of each client name across all its communications.
+     *
+     * @param capacity      Largest burst of a client name in tokens.
+     * @param refillPerTick Sustained rate of a client name in tokens per tick.
+     * @return This rate limiter.
+     */
+    public synchronized RateLimiter perClientName(double capacity, double refillPerTick) {
+        if (!(capacity > 0) || !(refillPerTick > 0)) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        this.clientNameCapacity = capacity;
+        this.clientNameRefill = refillPerTick;
+        return this;
+    }
+
+    /**
+     * Sets the cost of a message type, requests costing more than a capacity are never admitted.
+     *
+     * @param type Class of the request.
+     * @param cost Number of tokens the request costs, not negative.
+     * @return This rate limiter.
+     */
+    public synchronized RateLimiter cost(Class<? extends ClientMessage> type, double cost) {
+        if (!(cost >= 0)) {
+            throw new IllegalArgumentException("Cost must not be negative");
+        }
+        costs.put(type, cost);
+        return this;
+    }
+
+    /**
+     * Charges a request to the buckets of its communication and client name.
+     *
+     * @param message The request.
+     * @param now     The current time.
+     * @return Zero if the request is admitted, otherwise the number of ticks until it would be admitted.
+     */
+    public synchronized int tryAdmit(ClientMessage message, long now) {
+        if (message instanceof InitCommunication || message instanceof FinishCommunication) {
+            return 0;
+        }
+        Double configuredCost = costs.get(message.getClass());
+        double cost = configuredCost == null ? 1 : configuredCost;
+        TokenBucket communication = communicationBuckets.get(message.communicationId);
+        if (communication == null) {
+            communication = new TokenBucket(communicationCapacity, communicationRefill, now);
+            communicationBuckets.put(message.communicationId, communication);
+        }
+        String clientName = clientNameOf(message);
+        TokenBucket client = null;
+        if (clientName != null && clientNameCapacity > 0) {
+            client = clientNameBuckets.get(clientName);
+            if (client == null) {
+                client = new TokenBucket(clientNameCapacity, clientNameRefill, now);
+                clientNameBuckets.put(clientName, client);
+            }
+        }
+        int wait = communication.ticksUntilAvailable(cost, now);
+        if (client != null) {
+            wait = Math.max(wait, client.ticksUntilAvailable(cost, now));
+        }
+        if (wait > 0) {
+            throttled++;
+            return wait;
+        }
+        communication.tryAcquire(cost, now);
+        if (client != null) {
+            client.tryAcquire(cost, now);
+        }
+        admitted++;
+        if (++admissionsSinceCleanup >= 4096) {
+            removeFullClientNameBuckets(now);
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets the bucket of a finished communication.
+     *
+     * @param communicationId ID of the communication.
+     */
+    public synchronized void release(long communicationId) {
+        communicationBuckets.remove(communicationId);
+    }
+
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    public synchronized long getThrottled() {
+        return throttled;
+    }
+
+    /**
+     * Full buckets behave like new ones, so they are dropped to bound the memory of idle client names.
+     */
+    private void removeFullClientNameBuckets(long now) {
+        admissionsSinceCleanup = 0;
+        Iterator<TokenBucket> buckets = clientNameBuckets.values().iterator();
+        while (buckets.hasNext()) {
+            if (buckets.next().isFull(now)) {
+                buckets.remove();
+            }
+        }
+    }
+
+    /**
+     * @param message A request.
+     * @return The name of the client sending the request, null if the request does not contain it.
+     */
+    static String clientNameOf(ClientMessage message) {
+        if (message instanceof Like) {
+            return ((Like) message).clientName;
+        } else if (message instanceof Dislike) {
+            return ((Dislike) message).clientName;
+        } else if (message instanceof RemoveLikeOrDislike) {
+            return ((RemoveLikeOrDislike) message).clientName;
+        } else if (message instanceof Reaction) {
+            return ((Reaction) message).clientName;
+        } else if (message instanceof Report) {
+            return ((Report) message).clientName;
+        } else if (message instanceof Edit) {
+            return ((Edit) message).clientName;
+        } else if (message instanceof Delete) {
+            return ((Delete) message).clientName;
+        } else if (message instanceof Publish) {
+            return ((Publish) message).message.getAuthor();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of results read from the message store, which evicts the least recently used
+ * result when it is full.
+ * <p>
+ * A result is read asynchronously: {@link ReadCache#startFill(String)} is called when the read is sent
+ * and returns an id, which {@link ReadCache#fill(String, long, List)} must pass with the result. If the key
+ * has been invalidated in the meantime, the id does not match anymore and the result, which may be stale,
+ * is not cached.
+ */
+final class ReadCache {
+    private final int capacity;
+
+    /**
+     * Cached results in the order of their last access.
+     */
+    private final LinkedHashMap<String, List<UserMessage>> entries;
+
+    /**
+     * Id of the latest read of each key, which has been sent but not filled yet.
+     */
+    private final Map<String, Long> pendingFills = new HashMap<>();
+
+    private long nextFillId = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param capacity Maximum number of cached results, positive.
+     */
+    ReadCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, List<UserMessage>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<UserMessage>> eldest) {
+                return size() > ReadCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up a result and counts the hit or miss.
+     *
+     * @param key The key of the result.
+     * @return A copy of the cached result, null if it is not cached.
+     */
+    List<UserMessage> get(String key) {
+        List<UserMessage> result = entries.get(key);
+        if (result == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Registers a read of a key, which has just been sent, replacing earlier reads of the key.
+     *
+     * @param key The key of the result.
+     * @return Id to pass to {@link ReadCache#fill(String, long, List)}.
+     */
+    long startFill(String key) {
+        long id = nextFillId++;
+        pendingFills.put(key, id);
+        return id;
+    }
+
+    /**
+     * Caches the result of a read unless the key has been invalidated or read again since the read was sent.
+     *
+     * @param key    The key of the result.
+     * @param id     Id returned by {@link ReadCache#startFill(String)} for the read.
+     * @param result The result, null if the read failed.
+     */
+    void fill(String key, long id, List<UserMessage> result) {
+        Long pending = pendingFills.get(key);
+        if (pending == null || pending != id) {
+            return;
+        }
+        pendingFills.remove(key);
+        if (result != null) {
+            entries.put(key, new ArrayList<>(result));
+        }
+    }
+
+    /**
+     * Removes a result and discards the results of reads of the key, which have not been filled yet.
+     */
+    void invalidate(String key) {
+        entries.remove(key);
+        pendingFills.remove(key);
+    }
+
+    /**
+     * Removes all results and discards the results of all reads, which have not been filled yet.
+     */
+    void invalidateAll() {
+        entries.clear();
+        pendingFills.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+}
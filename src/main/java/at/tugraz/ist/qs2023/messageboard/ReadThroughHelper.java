@@ -0,0 +1,71 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import at.tugraz.ist.qs2023.actorsystem.ISimulatedActorSystem;
+import at.tugraz.ist.qs2023.actorsystem.Message;
+import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2023.messageboard.clientmessages.FoundMessages;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.CacheFill;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.MessageStoreMessage;
+
+/**
+ * Worker helper for a read, which missed the read cache of the worker. Besides forwarding
+ * the result to the client, it sends the result to the worker in a {@link CacheFill} message.
+ */
+public class ReadThroughHelper extends WorkerHelper {
+    /**
+     * The worker owning the read cache
+     */
+    private final SimulatedActor worker;
+
+    /**
+     * true for a search, false for a retrieval of the messages of an author
+     */
+    private final boolean search;
+
+    /**
+     * author or search text which is read
+     */
+    private final String key;
+
+    /**
+     * id of the read assigned by the worker
+     */
+    private final long fillId;
+
+    /**
+     * Constructs a new ReadThroughHelper object.
+     *
+     * @param messageStore message store which receives the read from the helper
+     * @param client       client to which the result gets forwarded
+     * @param message      the read to be sent to the message store
+     * @param system       actor system used to stop the helper
+     * @param worker       worker to which the result gets sent for caching
+     * @param search       true for a search, false for a retrieval of the messages of an author
+     * @param key          author or search text which is read
+     * @param fillId       id of the read assigned by the worker
+     */
+    public ReadThroughHelper(SimulatedActor messageStore, SimulatedActor client, MessageStoreMessage message, ISimulatedActorSystem system,
+                             SimulatedActor worker, boolean search, String key, long fillId) {
+        super(messageStore, client, message, system);
+        this.worker = worker;
+        this.search = search;
+        this.key = key;
+        this.fillId = fillId;
+    }
+
+    @Override
+    protected void forward(Message response) {
+        super.forward(response);
+        if (response instanceof FoundMessages) {
+            worker.tell(new CacheFill(search, key, fillId, ((FoundMessages) response).messages));
+        } else {
+            worker.tell(new CacheFill(search, key, fillId, null));
+        }
+    }
+
+    @Override
+    protected void fail() {
+        super.fail();
+        worker.tell(new CacheFill(search, key, fillId, null));
+    }
+}
@@ -0,0 +1,316 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+
+import java.util.Arrays;
+
+/**
+ * Ongoing communications of a worker: an open-addressing hash table with linear probing from
+ * primitive communication IDs to clients, together with the time of the last activity of
+ * each communication.
+ * <p>
+ * With a timeout, idle communications are expired incrementally by {@link SessionTable#expire}.
+ * Every communication has exactly one entry in a timing wheel with one bucket per tick, which
+ * is the tick it would expire at if there were no further activity. Activity only updates
+ * the time of the last activity; when the bucket is reached, an entry is either expired or
+ * moved to the bucket of its new expiry tick. Expiring thus costs time proportional to the
+ * number of communications becoming due instead of the number of communications. The earliest tick
+ * of a non-empty bucket is tracked, so the owner only has to call it when a communication may be due.
+ */
+final class SessionTable {
+    private static final int MINIMUM_CAPACITY = 16;
+
+    /**
+     * Value of <c>nextExpiry</c> if it has to be recomputed.
+     */
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    /**
+     * Called for every expired communication.
+     */
+    interface ExpiryListener {
+        void expired(long communicationId, SimulatedActor client);
+    }
+
+    private long[] keys = new long[MINIMUM_CAPACITY];
+    private SimulatedActor[] clients = new SimulatedActor[MINIMUM_CAPACITY];
+    private long[] lastActivity = new long[MINIMUM_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Number of idle ticks, after which a communication expires, zero if communications never expire.
+     */
+    private int timeout = 0;
+
+    /**
+     * Timing wheel of communication IDs indexed by their expiry tick modulo the number of buckets,
+     * which is larger than the timeout.
+     */
+    private long[][] buckets;
+    private int[] bucketSizes;
+
+    /**
+     * Last tick processed by {@link SessionTable#expire}, the tick before the first communication
+     * was added until then.
+     */
+    private long swept = Long.MIN_VALUE;
+
+    /**
+     * Earliest tick of a non-empty bucket after <c>swept</c>, <c>UNKNOWN</c> if it has to be recomputed.
+     */
+    private long nextExpiry = UNKNOWN;
+
+    /**
+     * Enables expiry, must be called while the table is empty.
+     *
+     * @param timeout Number of idle ticks, after which a communication expires, zero to disable expiry.
+     */
+    void setTimeout(int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative");
+        }
+        if (size > 0) {
+            throw new IllegalStateException("Timeout must be set before the first communication");
+        }
+        this.timeout = timeout;
+        if (timeout > 0) {
+            int wheelSize = Integer.highestOneBit(timeout) * 2;
+            buckets = new long[wheelSize][];
+            bucketSizes = new int[wheelSize];
+        } else {
+            buckets = null;
+            bucketSizes = null;
+        }
+    }
+
+    int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the earliest tick, at which {@link SessionTable#expire} might expire a communication. Until then
+     * calling it has no effect, so the caller may wait for this tick instead of calling it every tick.
+     *
+     * @return The tick, <c>Long.MAX_VALUE</c> if there are no communications or they never expire.
+     */
+    long nextExpiry() {
+        if (timeout == 0 || size == 0) {
+            return Long.MAX_VALUE;
+        }
+        if (nextExpiry == UNKNOWN) {
+            nextExpiry = Long.MAX_VALUE;
+            int mask = buckets.length - 1;
+            for (long tick = swept + 1; tick <= swept + buckets.length; tick++) {
+                if (bucketSizes[(int) (tick & mask)] > 0) {
+                    nextExpiry = tick;
+                    break;
+                }
+            }
+        }
+        return nextExpiry;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean containsKey(long communicationId) {
+        return clients[indexOf(communicationId)] != null;
+    }
+
+    /**
+     * @return The client of the communication, null if there is no such communication.
+     */
+    SimulatedActor get(long communicationId) {
+        return clients[indexOf(communicationId)];
+    }
+
+    /**
+     * Adds or replaces a communication.
+     *
+     * @param communicationId ID of the communication.
+     * @param client          Client of the communication.
+     * @param now             The current time, which counts as activity.
+     */
+    void put(long communicationId, SimulatedActor client, long now) {
+        int index = indexOf(communicationId);
+        if (clients[index] == null) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+                index = indexOf(communicationId);
+            }
+            keys[index] = communicationId;
+            size++;
+            if (timeout > 0) {
+                if (swept == Long.MIN_VALUE) {
+                    swept = now - 1;
+                }
+                schedule(communicationId, now + timeout);
+            }
+        }
+        clients[index] = client;
+        lastActivity[index] = now;
+    }
+
+    /**
+     * Records activity of a communication.
+     *
+     * @param communicationId ID of the communication.
+     * @param now             The current time.
+     * @return Whether there is such a communication.
+     */
+    boolean touch(long communicationId, long now) {
+        int index = indexOf(communicationId);
+        if (clients[index] == null) {
+            return false;
+        }
+        lastActivity[index] = Math.max(lastActivity[index], now);
+        return true;
+    }
+
+    /**
+     * Removes a communication.
+     *
+     * @param communicationId ID of the communication.
+     * @return The client of the removed communication, null if there was no such communication.
+     */
+    SimulatedActor remove(long communicationId) {
+        int index = indexOf(communicationId);
+        SimulatedActor client = clients[index];
+        if (client == null) {
+            return null;
+        }
+        deleteAt(index);
+        if (size * 8 < keys.length && keys.length > MINIMUM_CAPACITY) {
+            resize(keys.length / 2);
+        }
+        // the entry in the timing wheel is dropped when its bucket is reached
+        return client;
+    }
+
+    /**
+     * Removes all communications, which have been idle for at least the timeout at the given time.
+     * It processes the buckets of all ticks since the previous call.
+     *
+     * @param now      The current time, not before the time of previous calls.
+     * @param listener Receives the expired communications after they have been removed.
+     */
+    void expire(long now, ExpiryListener listener) {
+        if (timeout == 0 || swept == Long.MIN_VALUE || swept >= now) {
+            return;
+        }
+        int mask = buckets.length - 1;
+        // every bucket is visited at most once, even after a long time without calls
+        long tick = Math.max(swept + 1, now - mask);
+        swept = now;
+        for (; tick <= now; tick++) {
+            int bucket = (int) (tick & mask);
+            int count = bucketSizes[bucket];
+            if (count == 0) {
+                continue;
+            }
+            long[] ids = buckets[bucket];
+            buckets[bucket] = null;
+            bucketSizes[bucket] = 0;
+            for (int i = 0; i < count; i++) {
+                long communicationId = ids[i];
+                int index = indexOf(communicationId);
+                SimulatedActor client = clients[index];
+                if (client == null) {
+                    // finished in the meantime
+                    continue;
+                }
+                long expiry = lastActivity[index] + timeout;
+                if (expiry > now) {
+                    schedule(communicationId, expiry);
+                } else {
+                    deleteAt(index);
+                    listener.expired(communicationId, client);
+                }
+            }
+            if (buckets[bucket] == null) {
+                buckets[bucket] = ids;
+            }
+        }
+        if (nextExpiry <= now) {
+            nextExpiry = UNKNOWN;
+        }
+    }
+
+    private void schedule(long communicationId, long expiry) {
+        int bucket = (int) (expiry & (buckets.length - 1));
+        long[] ids = buckets[bucket];
+        int count = bucketSizes[bucket];
+        if (ids == null) {
+            ids = buckets[bucket] = new long[4];
+        } else if (count == ids.length) {
+            ids = buckets[bucket] = Arrays.copyOf(ids, count * 2);
+        }
+        ids[count] = communicationId;
+        bucketSizes[bucket] = count + 1;
+        if (nextExpiry != UNKNOWN) {
+            nextExpiry = Math.min(nextExpiry, expiry);
+        }
+    }
+
+    /**
+     * @return Index of the slot holding the communication or of the empty slot, where it would be inserted.
+     */
+    private int indexOf(long communicationId) {
+        int mask = keys.length - 1;
+        int index = hash(communicationId) & mask;
+        while (clients[index] != null && keys[index] != communicationId) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Empties a slot and shifts following entries of the probe sequence back, so lookups need no tombstones.
+     */
+    private void deleteAt(int index) {
+        int mask = keys.length - 1;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (clients[next] != null) {
+            int home = hash(keys[next]) & mask;
+            // move the entry if the hole lies cyclically between its home slot and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                clients[hole] = clients[next];
+                lastActivity[hole] = lastActivity[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        clients[hole] = null;
+        keys[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        SimulatedActor[] oldClients = clients;
+        long[] oldActivity = lastActivity;
+        keys = new long[capacity];
+        clients = new SimulatedActor[capacity];
+        lastActivity = new long[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldClients[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                clients[index] = oldClients[i];
+                lastActivity[index] = oldActivity[i];
+            }
+        }
+    }
+
+    private static int hash(long communicationId) {
+        long z = communicationId * 0x9E3779B97F4A7C15L;
+        return (int) (z ^ (z >>> 32));
+    }
+}
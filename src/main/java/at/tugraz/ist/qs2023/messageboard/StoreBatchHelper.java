@@ -0,0 +1,64 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import at.tugraz.ist.qs2023.actorsystem.ISimulatedActorSystem;
+import at.tugraz.ist.qs2023.actorsystem.Message;
+import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2023.messageboard.clientmessages.OperationFailed;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.MessageStoreMessage;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.StoreBatch;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.StoreBatchReply;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Worker helper sending a batch of operations to the message store, which forwards the reply
+ * to each operation to the client of the operation. Like a {@link WorkerHelper}, it resends the
+ * batch if the store does not respond in time and notifies all clients if it gives up.
+ */
+public class StoreBatchHelper extends WorkerHelper {
+    /**
+     * The client of each operation of the batch, in the order of the operations
+     */
+    private final List<SimulatedActor> clients;
+
+    /**
+     * Constructs a new StoreBatchHelper object.
+     *
+     * @param messageStore message store which receives the batch from the helper
+     * @param clients      clients of the operations in the order of the operations
+     * @param batch        the batch to be sent to the message store
+     * @param system       actor system used to stop the helper
+     */
+    public StoreBatchHelper(SimulatedActor messageStore, List<SimulatedActor> clients, StoreBatch batch, ISimulatedActorSystem system) {
+        super(messageStore, null, batch, system);
+        if (clients.size() != batch.operations.size()) {
+            throw new IllegalArgumentException("Each operation needs exactly one client");
+        }
+        this.clients = new ArrayList<>(clients);
+    }
+
+    /**
+     * Forwards each reply of the message store to the client of its operation.
+     *
+     * @param response Non-null message received from the message store
+     */
+    @Override
+    protected void forward(Message response) {
+        List<Message> replies = ((StoreBatchReply) response).replies;
+        for (int i = 0; i < replies.size(); i++) {
+            clients.get(i).tell(replies.get(i));
+        }
+    }
+
+    /**
+     * Notifies the client of each operation that it failed.
+     */
+    @Override
+    protected void fail() {
+        List<MessageStoreMessage> operations = ((StoreBatch) message).operations;
+        for (int i = 0; i < operations.size(); i++) {
+            clients.get(i).tell(new OperationFailed(operations.get(i).communicationId));
+        }
+    }
+}
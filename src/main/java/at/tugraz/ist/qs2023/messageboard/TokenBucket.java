@@ -0,0 +1,79 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+/**
+ * Token bucket measured in simulated ticks: it holds up to <c>capacity</c> tokens,
+ * gains <c>refillPerTick</c> tokens per tick and admits a request if it holds at least
+ * the cost of the request, which is then removed.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double refillPerTick;
+    private double tokens;
+
+    /**
+     * Time of the last refill.
+     */
+    private long lastRefill;
+
+    /**
+     * Constructs a full bucket.
+     *
+     * @param capacity      Maximum number of tokens, i.e. the largest burst.
+     * @param refillPerTick Tokens added per tick, i.e. the sustained rate.
+     * @param now           The current time.
+     */
+    public TokenBucket(double capacity, double refillPerTick, long now) {
+        if (!(capacity > 0) || !(refillPerTick > 0)) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        this.capacity = capacity;
+        this.refillPerTick = refillPerTick;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Removes tokens if there are enough of them.
+     *
+     * @param cost Number of tokens the request costs.
+     * @param now  The current time, not before the time of previous calls.
+     * @return Whether the request is admitted.
+     */
+    public boolean tryAcquire(double cost, long now) {
+        refill(now);
+        if (tokens < cost) {
+            return false;
+        }
+        tokens -= cost;
+        return true;
+    }
+
+    /**
+     * @param cost Number of tokens a request costs.
+     * @param now  The current time, not before the time of previous calls.
+     * @return Number of ticks until the request would be admitted, zero if it would be admitted now.
+     */
+    public int ticksUntilAvailable(double cost, long now) {
+        refill(now);
+        if (tokens >= cost) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil((cost - tokens) / refillPerTick));
+    }
+
+    /**
+     * @param now The current time, not before the time of previous calls.
+     * @return Whether the bucket is full, i.e. in the same state as a new bucket.
+     */
+    public boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerTick);
+            lastRefill = now;
+        }
+    }
+}
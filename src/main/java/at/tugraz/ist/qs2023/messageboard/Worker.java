@@ -1,16 +1,20 @@
 package at.tugraz.ist.qs2023.messageboard;
 
+import at.tugraz.ist.qs2023.actorsystem.AskCallback;
 import at.tugraz.ist.qs2023.actorsystem.Message;
 import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2023.actorsystem.ISimulatedActorSystem;
 import at.tugraz.ist.qs2023.actorsystem.SimulatedActorSystem;
+import at.tugraz.ist.qs2023.actorsystem.TimerHandle;
 import at.tugraz.ist.qs2023.messageboard.clientmessages.*;
+import at.tugraz.ist.qs2023.messageboard.dispatchermessages.Retire;
+import at.tugraz.ist.qs2023.messageboard.dispatchermessages.RetireAck;
 import at.tugraz.ist.qs2023.messageboard.dispatchermessages.Stop;
 import at.tugraz.ist.qs2023.messageboard.dispatchermessages.StopAck;
 import at.tugraz.ist.qs2023.messageboard.messagestoremessages.*;
 
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Worker extends SimulatedActor {
     /**
@@ -30,20 +34,154 @@ public class Worker extends SimulatedActor {
 
     /**
      * currently active communications with clients, the key of
-     * the dictionary is a communication ID and the value a reference to the client
+     * the table is a communication ID and the value a reference to the client
+     */
+    private final SessionTable ongoingCommunications;
+
+    /**
+     * finishes communications, which have expired
+     */
+    private final SessionTable.ExpiryListener expiryListener = this::expireCommunication;
+
+    /**
+     * forgets communications, which expired more than a timeout ago
+     */
+    private static final SessionTable.ExpiryListener FORGET = (communicationId, client) -> {
+    };
+
+    /**
+     * communications, which have expired within the last timeout, so further requests of their
+     * clients can still be answered with a SessionExpired message
+     */
+    private final SessionTable expiredCommunications;
+
+    /**
+     * load of the worker at the end of its last tick, which the dispatcher reads
+     */
+    private final LoadSnapshot loadSnapshot = new LoadSnapshot();
+
+    /**
+     * number of communications finished by the client
+     */
+    private long finishedSessions = 0;
+
+    /**
+     * number of communications finished because they have been idle for too long
      */
-    private final Map<Long, SimulatedActor> ongoingCommunications;
+    private long expiredSessions = 0;
 
     /**
      * system used to spawn actors
      */
-    private final SimulatedActorSystem system;
+    private final ISimulatedActorSystem system;
 
     /**
      * flag which is set if the worker is about to be stopped
      */
     private boolean stopping;
 
+    /**
+     * number of InitCommunication messages received so far
+     */
+    private long initializedCommunications = 0;
+
+    /**
+     * number of InitCommunication messages to receive before retiring,
+     * -1 if the worker is not retiring
+     */
+    private long retireAfter = -1;
+
+    /**
+     * admission control applied to requests of clients, null if requests are not limited
+     */
+    private RateLimiter rateLimiter;
+
+    /**
+     * maximum number of operations sent to the message store in one batch, 1 if operations are not batched
+     */
+    private int maxBatchSize = 1;
+
+    /**
+     * maximum number of ticks an operation waits for further operations of its batch
+     */
+    private int maxBatchDelay = 0;
+
+    /**
+     * operations collected for the next batch
+     */
+    private final List<MessageStoreMessage> pendingOperations = new ArrayList<>();
+
+    /**
+     * clients of the operations collected for the next batch
+     */
+    private final List<SimulatedActor> pendingClients = new ArrayList<>();
+
+    /**
+     * number of ticks since the first operation of the next batch was collected
+     */
+    private int batchAge = 0;
+
+    /**
+     * number of requests sent to the message store, a batch counts as one request
+     */
+    private long storeRequests = 0;
+
+    /**
+     * results of retrievals by author read from the message store, null if reads are not cached
+     */
+    private ReadCache authorCache = null;
+
+    /**
+     * results of searches read from the message store, null if reads are not cached
+     */
+    private ReadCache searchCache = null;
+
+    /**
+     * idle worker helpers reused for single operations, null if a helper is spawned for each operation
+     */
+    private HelperPool helperPool = null;
+
+    /**
+     * number of worker helpers spawned so far
+     */
+    private long spawnedHelpers = 0;
+
+    /**
+     * flag which is set if operations are sent to the message store with ask instead of worker helpers
+     */
+    private boolean storeAsks = false;
+
+    /**
+     * flag which is set if worker helpers schedule their resends with the timer service of the actor system
+     */
+    private boolean helperTimers = false;
+
+    /**
+     * flag which is set if the expiry of idle communications is scheduled with the timer service of the actor system
+     */
+    private boolean sessionTimers = false;
+
+    /**
+     * timer delivering the next SessionTimeout message, null if none is scheduled
+     */
+    private TimerHandle sessionTimer = null;
+
+    /**
+     * tick of the worker, for which <c>sessionTimer</c> is scheduled
+     */
+    private long sessionTimerExpiry = Long.MAX_VALUE;
+
+    /**
+     * adaptive timeouts and retry budget of the worker helpers, null if they resend after a fixed timeout
+     */
+    private AdaptiveRetryPolicy retryPolicy = null;
+
+    /**
+     * request sequence of the next operation sent to the message store, which starts at the ID of the
+     * worker shifted by 32 bits, so the operations of workers sharing a communication ID do not collide
+     */
+    private long nextSequence = 0;
+
     /**
      * Constructs a new Worker object
      *
@@ -51,12 +189,274 @@ public class Worker extends SimulatedActor {
      * @param messageStore the message store responsible for persistence
      * @param system       the actor system simulation
      */
-    public Worker(SimulatedActor dispatcher, SimulatedActor messageStore, SimulatedActorSystem system) {
+    public Worker(SimulatedActor dispatcher, SimulatedActor messageStore, ISimulatedActorSystem system) {
         this.dispatcher = dispatcher;
         this.messageStore = messageStore;
-        this.ongoingCommunications = new HashMap<>();
+        this.ongoingCommunications = new SessionTable();
+        this.expiredCommunications = new SessionTable();
         this.system = system;
         this.stopping = false;
+
+        registerHandler(InitCommunication.class, this::processInitCommunication);
+        registerHandler(FinishCommunication.class, this::processFinishCommunication);
+        registerHandler(Stop.class, message -> processStop());
+        registerHandler(SessionTimeout.class, this::processSessionTimeout);
+        registerHandler(Retire.class, this::processRetire);
+        registerHandler(Publish.class, this::processPublish);
+        registerHandler(RetrieveMessages.class, this::processRetrieveMessages);
+        registerHandler(Like.class, this::processLike);
+        registerHandler(Dislike.class, this::processDislike);
+        registerHandler(RemoveLikeOrDislike.class, this::processDeleteLikeOrDislike);
+        registerHandler(Reaction.class, this::processReaction);
+        registerHandler(Report.class, this::processReport);
+        registerHandler(SearchMessages.class, this::processSearchMessages);
+        registerHandler(Edit.class, this::processEdit);
+        registerHandler(Delete.class, this::processDeleteMessage);
+        registerHandler(CacheInvalidation.class, this::processCacheInvalidation);
+        registerHandler(CacheFill.class, this::processCacheFill);
+    }
+
+    /**
+     * Sets the admission control applied to requests of clients.
+     *
+     * @param rateLimiter the rate limiter, null if requests are not limited
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Sets the number of ticks without any request of a client, after which its communication
+     * is finished by the worker, which sends a SessionExpired message to the client. Must be
+     * set before the first communication is initialized.
+     *
+     * @param timeout number of ticks, zero if communications never expire
+     */
+    public void setSessionTimeout(int timeout) {
+        ongoingCommunications.setTimeout(timeout);
+        expiredCommunications.setTimeout(timeout);
+    }
+
+    public int getSessionTimeout() {
+        return ongoingCommunications.getTimeout();
+    }
+
+    /**
+     * Lets the worker collect the operations for the message store and send them in batches,
+     * each batch as soon as it is full or its first operation has waited for the given number of ticks.
+     *
+     * @param maxBatchSize  maximum number of operations in a batch, 1 if operations are not batched
+     * @param maxBatchDelay maximum number of ticks an operation waits for further operations
+     */
+    public void setStoreBatching(int maxBatchSize, int maxBatchDelay) {
+        if (maxBatchSize < 1 || maxBatchDelay < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and delay must not be negative");
+        }
+        flushBatch();
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = maxBatchDelay;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getMaxBatchDelay() {
+        return maxBatchDelay;
+    }
+
+    /**
+     * @return Number of requests sent to the message store, where a batch of operations counts as one request.
+     */
+    public long getStoreRequests() {
+        return storeRequests;
+    }
+
+    /**
+     * Lets the worker cache the results of RetrieveMessages and SearchMessages requests, evicting the
+     * least recently used ones. The worker subscribes to the invalidations of the message store, which
+     * remove the results an added, edited or deleted user message might change. Reads missing the cache
+     * are not batched. Must be called before the worker is spawned.
+     *
+     * @param capacity maximum number of cached results for each of the two request types, zero if reads are not cached
+     */
+    public void setReadCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        if (getTimeSinceSystemStart() >= 0) {
+            throw new IllegalStateException("Worker has already been started");
+        }
+        authorCache = capacity == 0 ? null : new ReadCache(capacity);
+        searchCache = capacity == 0 ? null : new ReadCache(capacity);
+    }
+
+    /**
+     * @return Number of RetrieveMessages and SearchMessages requests answered from the read cache.
+     */
+    public long getReadCacheHits() {
+        return authorCache == null ? 0 : authorCache.getHits() + searchCache.getHits();
+    }
+
+    /**
+     * @return Number of RetrieveMessages and SearchMessages requests, which had to be read from the message store
+     * although reads are cached.
+     */
+    public long getReadCacheMisses() {
+        return authorCache == null ? 0 : authorCache.getMisses() + searchCache.getMisses();
+    }
+
+    /**
+     * Lets the worker reuse its helpers for operations, which are sent to the message store on their own:
+     * instead of stopping, a helper returns to the pool of the worker after forwarding the reply, as soon as
+     * the replies to all resends have arrived. A new helper is only spawned if no helper is idle. If the pool
+     * is full, the helper is not pooled and stops as usual. Must be called before the worker is spawned.
+     *
+     * @param maxSize maximum number of pooled helpers, zero if a helper is spawned for each operation
+     */
+    public void setHelperPool(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Pool size must not be negative");
+        }
+        if (getTimeSinceSystemStart() >= 0) {
+            throw new IllegalStateException("Worker has already been started");
+        }
+        helperPool = maxSize == 0 ? null : new HelperPool(maxSize);
+    }
+
+    /**
+     * @return Number of worker helpers spawned so far.
+     */
+    public long getSpawnedHelpers() {
+        return spawnedHelpers;
+    }
+
+    /**
+     * @return Number of operations passed to an idle pooled helper instead of spawning a new one.
+     */
+    public long getReusedHelpers() {
+        return helperPool == null ? 0 : helperPool.getReused();
+    }
+
+    /**
+     * Lets the worker send operations and batches to the message store with
+     * {@link SimulatedActor#ask(SimulatedActor, Message, int, int, AskCallback)} instead of spawning
+     * worker helpers. The worker keeps track of the outstanding operations itself and forwards the replies
+     * to the clients, resending and failing operations like worker helpers do. Replies to reads, which
+     * missed the read cache, are cached right away.
+     *
+     * @param storeAsks true to send operations with ask, false to spawn worker helpers
+     */
+    public void setStoreAsks(boolean storeAsks) {
+        this.storeAsks = storeAsks;
+    }
+
+    public boolean getStoreAsks() {
+        return storeAsks;
+    }
+
+    /**
+     * Lets the worker helpers schedule their resends with
+     * {@link SimulatedActorSystem#scheduleOnce(SimulatedActor, int, Message)}
+     * instead of counting ticks, so waiting helpers are not ticked with active scheduling. Has no effect
+     * if the actor system of the worker is not a SimulatedActorSystem.
+     *
+     * @param helperTimers true to schedule resends with timers, false to let helpers count ticks
+     */
+    public void setHelperTimers(boolean helperTimers) {
+        this.helperTimers = helperTimers;
+    }
+
+    public boolean getHelperTimers() {
+        return helperTimers;
+    }
+
+    /**
+     * Lets the worker schedule the expiry of idle communications with
+     * {@link SimulatedActorSystem#scheduleOnce(SimulatedActor, int, Message)} instead of reporting it from
+     * {@link Worker#ticksUntilNextEvent()} and checking it in every tick. Communications expire at the same
+     * ticks, but the SessionTimeout message passes through the mailbox. Has no effect if the actor system of
+     * the worker is not a SimulatedActorSystem.
+     *
+     * @param sessionTimers true to schedule the expiry with timers, false to check it when the worker is ticked
+     */
+    public void setSessionTimers(boolean sessionTimers) {
+        this.sessionTimers = sessionTimers;
+    }
+
+    public boolean getSessionTimers() {
+        return sessionTimers;
+    }
+
+    /**
+     * @return whether idle communications expire and their expiry is scheduled with timers
+     */
+    private boolean usesSessionTimers() {
+        return sessionTimers && system instanceof SimulatedActorSystem && ongoingCommunications.getTimeout() > 0;
+    }
+
+    /**
+     * Lets the worker helpers adapt their resend timeouts to the round-trip times of the message store
+     * and limit their resends with a retry budget. The policy should be shared by all workers of the
+     * message store. Operations sent with ask keep the fixed timeout of worker helpers.
+     *
+     * @param retryPolicy the policy, null to resend after a fixed timeout
+     */
+    public void setRetryPolicy(AdaptiveRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public AdaptiveRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Starts the request sequences of the worker and subscribes to the invalidations of the message store
+     * if reads are cached.
+     */
+    @Override
+    public void atStartUp() {
+        nextSequence = getId() << 32;
+        if (authorCache != null) {
+            messageStore.tell(new CacheSubscription(this, true));
+        }
+    }
+
+    /**
+     * @return Number of communications with clients, which have been initialized but not finished yet.
+     */
+    public int getOpenSessions() {
+        return ongoingCommunications.size();
+    }
+
+    /**
+     * @return Number of open sessions at the end of the last tick of the worker before the current tick,
+     * which the dispatcher reads, as it may be processed concurrently with the worker, see {@link LoadSnapshot}.
+     */
+    public int getOpenSessionsSnapshot() {
+        return loadSnapshot.sessions(system.getCurrentTime());
+    }
+
+    /**
+     * @return Number of messages waiting in the mailbox at the end of the last tick of the worker before
+     * the current tick, see {@link Worker#getOpenSessionsSnapshot()}.
+     */
+    public int getMailboxDepthSnapshot() {
+        return loadSnapshot.mailboxDepth(system.getCurrentTime());
+    }
+
+    /**
+     * @return Number of communications, which have been finished by their clients.
+     */
+    public long getFinishedSessions() {
+        return finishedSessions;
+    }
+
+    /**
+     * @return Number of communications, which have been finished because they expired.
+     */
+    public long getExpiredSessions() {
+        return expiredSessions;
     }
 
     /**
@@ -66,48 +466,123 @@ public class Worker extends SimulatedActor {
      * It does not accept any messages while stopping and responds with back
      * OperationFailed messages during stopping.
      * If an unknown communication ID is used for ClientMessage messages, an UnknownClientException-
-     * exception is thrown. Further documentation can be found above helper methods named processMessageType.
+     * exception is thrown. Requests exceeding the rate limit are answered with a Throttled message
+     * right away. If a session timeout is set, idle communications are expired when they are due,
+     * see {@link Worker#tick()}, and before handling the message. As clients cannot know when their communication expires, requests of an
+     * expired communication are then answered with a SessionExpired message for another timeout,
+     * and requests with a communication ID, which is unknown after that, are dropped. The helper
+     * method of each message type is registered as its handler in the constructor, so it is found
+     * with a single lookup. Further documentation can be found above helper methods named
+     * processMessageType.
      *
      * @param message Non-null message received
-     * @throws UnknownClientException thrown if communication id of message is unknown
+     * @throws UnknownClientException  thrown if communication id of message is unknown
+     * @throws UnknownMessageException thrown if there is no handler for the type of the message
      */
     @Override
     public void receive(Message message) throws UnknownClientException, UnknownMessageException {
+        if (ongoingCommunications.getTimeout() > 0) {
+            long now = getTimeSinceSystemStart();
+            expireSessions(now);
+            if (message instanceof ClientMessage && !(message instanceof InitCommunication)
+                    && !(message instanceof Reply)) {
+                long communicationId = ((ClientMessage) message).communicationId;
+                if (!ongoingCommunications.touch(communicationId, now)) {
+                    SimulatedActor client = expiredCommunications.get(communicationId);
+                    if (client != null)
+                        client.tell(new SessionExpired(communicationId));
+                    return;
+                }
+            }
+        }
         if (stopping && message instanceof ClientMessage) {
             // all operations while stopping fail
             ClientMessage clientMessage = (ClientMessage) message;
             if (!ongoingCommunications.containsKey(clientMessage.communicationId))
                 throw new UnknownClientException("Unknown communication ID");
             ongoingCommunications.get(clientMessage.communicationId).tell(new OperationFailed(clientMessage.communicationId));
-        } else if (message instanceof InitCommunication) {
-            processInitCommunication(message);
-        } else if (message instanceof FinishCommunication) {
-            processFinishCommunication(message);
-        } else if (message instanceof Stop) {
-            processStop();
-        } else if (message instanceof Publish)
-            processPublish(message);
-        else if (message instanceof RetrieveMessages) {
-            processRetrieveMessages(message);
-        } else if (message instanceof Like) {
-            processLike(message);
-        } else if (message instanceof Dislike) {
-            processDislike(message);
-        } else if (message instanceof RemoveLikeOrDislike) {
-            processDeleteLikeOrDislike(message);
-        } else if (message instanceof Reaction) {
-            processReaction(message);
-        } else if (message instanceof Report) {
-            processReport(message);
-        } else if (message instanceof SearchMessages) {
-            processSearchMessages(message);
-        } else if (message instanceof Edit) {
-            processEdit(message);
-        } else if (message instanceof Delete) {
-            processDeleteMessage(message);
-        } else if (message == null)
+        } else if (rateLimiter != null && message instanceof ClientMessage && throttle((ClientMessage) message)) {
+            // rejected without doing any work for the request
+        } else if (!dispatch(message))
             throw new UnknownMessageException("Worker received message of not existing type.");
+    }
+
+    /**
+     * Expires idle communications, if a session timeout is set. The time of the worker is used, so the
+     * ticks until the next expiry can be reported by {@link Worker#ticksUntilNextEvent()}.
+     *
+     * @param now the current time of the worker
+     */
+    private void expireSessions(long now) {
+        ongoingCommunications.expire(now, expiryListener);
+        expiredCommunications.expire(now, FORGET);
+    }
+
+    /**
+     * Schedules a SessionTimeout message for the earliest tick, at which a communication may expire, unless
+     * one is scheduled for this tick or before. The message is delivered a tick earlier, as the worker
+     * takes it from its mailbox in the tick it arrives and handles it in the next one.
+     */
+    private void scheduleSessionTimeout() {
+        if (!usesSessionTimers()) {
+            return;
+        }
+        long expiry = ongoingCommunications.nextExpiry();
+        if (expiry == Long.MAX_VALUE) {
+            cancelSessionTimeout();
+            return;
+        }
+        if (sessionTimer != null && sessionTimerExpiry <= expiry) {
+            return;
+        }
+        cancelSessionTimeout();
+        int delay = (int) Math.max(0, expiry - getTimeSinceSystemStart() - 2);
+        sessionTimer = ((SimulatedActorSystem) system).scheduleOnce(this, delay, new SessionTimeout());
+        sessionTimerExpiry = expiry;
+    }
+
+    private void cancelSessionTimeout() {
+        if (sessionTimer != null) {
+            ((SimulatedActorSystem) system).cancel(sessionTimer);
+            sessionTimer = null;
+            sessionTimerExpiry = Long.MAX_VALUE;
+        }
+    }
 
+    /**
+     * Schedules the next SessionTimeout message, after the communications, which are due, have been expired
+     * by {@link Worker#receive(Message)}. Messages of timers, which have been replaced, are ignored.
+     *
+     * @param message non-null message of type SessionTimeout
+     */
+    private void processSessionTimeout(Message message) {
+        if (sessionTimer != null && message == sessionTimer.getMessage()) {
+            sessionTimer = null;
+            sessionTimerExpiry = Long.MAX_VALUE;
+            scheduleSessionTimeout();
+        }
+    }
+
+    /**
+     * Charges a request to the rate limiter and answers it with a Throttled message if it is rejected.
+     *
+     * @param message non-null request of a client
+     * @return whether the request has been rejected
+     * @throws UnknownClientException thrown if communication id of message is unknown
+     */
+    private boolean throttle(ClientMessage message) throws UnknownClientException {
+        if (message instanceof InitCommunication || message instanceof Reply) {
+            return false;
+        }
+        SimulatedActor client = ongoingCommunications.get(message.communicationId);
+        if (client == null)
+            throw new UnknownClientException("Unknown communication ID");
+        int retryAfter = rateLimiter.tryAdmit(message, system.getCurrentTime());
+        if (retryAfter == 0) {
+            return false;
+        }
+        client.tell(new Throttled(message.communicationId, retryAfter));
+        return true;
     }
 
     /**
@@ -120,7 +595,10 @@ public class Worker extends SimulatedActor {
      */
     private void processInitCommunication(Message message) {
         InitCommunication initC = (InitCommunication) message;
-        ongoingCommunications.put(initC.communicationId, initC.client);
+        ongoingCommunications.put(initC.communicationId, initC.client, getTimeSinceSystemStart());
+        expiredCommunications.remove(initC.communicationId);
+        scheduleSessionTimeout();
+        initializedCommunications++;
         initC.client.tell(new InitAck(this, initC.communicationId));
     }
 
@@ -140,20 +618,381 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(finC.communicationId);
         ongoingCommunications.remove(finC.communicationId);
+        finishedSessions++;
+        if (rateLimiter != null)
+            rateLimiter.release(finC.communicationId);
         client.tell(new FinishAck(finC.communicationId));
+        checkRetired();
+    }
+
+    /**
+     * Finishes a communication, which has expired, and notifies the client with a SessionExpired message.
+     *
+     * @param communicationId ID of the expired communication
+     * @param client          client of the expired communication
+     */
+    private void expireCommunication(long communicationId, SimulatedActor client) {
+        expiredSessions++;
+        if (rateLimiter != null)
+            rateLimiter.release(communicationId);
+        expiredCommunications.put(communicationId, client, getTimeSinceSystemStart());
+        client.tell(new SessionExpired(communicationId));
+        checkRetired();
     }
 
     /**
      * Changes into stopping mode and acknowledges stopping to the dispatcher.
      */
     private void processStop() {
+        cancelSessionTimeout();
+        flushBatch();
+        unsubscribeCache();
+        closeHelperPool();
         dispatcher.tell(new StopAck(this));
         stopping = true;
     }
 
+    /**
+     * Starts retiring: the dispatcher does not forward new communications anymore and the worker
+     * acknowledges with a RetireAck message as soon as all communications forwarded before have been
+     * received and finished.
+     *
+     * @param message non-null message of type Retire
+     */
+    private void processRetire(Message message) {
+        retireAfter = ((Retire) message).forwardedCommunications;
+        checkRetired();
+    }
+
+    /**
+     * Acknowledges retiring to the dispatcher if the worker is retiring and has no communications left.
+     */
+    private void checkRetired() {
+        if (retireAfter >= 0 && !stopping && initializedCommunications >= retireAfter && ongoingCommunications.isEmpty()) {
+            flushBatch();
+            unsubscribeCache();
+            closeHelperPool();
+            dispatcher.tell(new RetireAck(this));
+            retireAfter = -1;
+        }
+    }
+
+    /**
+     * Unsubscribes from the invalidations of the message store if reads are cached.
+     */
+    private void unsubscribeCache() {
+        if (authorCache != null) {
+            messageStore.tell(new CacheSubscription(this, false));
+        }
+    }
+
+    /**
+     * Stops the idle pooled helpers, the busy ones stop as soon as they are done.
+     */
+    private void closeHelperPool() {
+        if (helperPool != null) {
+            for (WorkerHelper helper : helperPool.close()) {
+                system.stop(helper);
+            }
+        }
+    }
+
+    /**
+     * Removes the cached messages of the author of an added, edited or deleted user message
+     * and all cached search results, which might contain it.
+     *
+     * @param message non-null message of type CacheInvalidation
+     */
+    private void processCacheInvalidation(CacheInvalidation message) {
+        if (authorCache != null) {
+            authorCache.invalidate(message.author);
+            searchCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Caches the result of a read, which missed the cache, unless it has been invalidated since.
+     *
+     * @param message non-null message of type CacheFill
+     */
+    private void processCacheFill(CacheFill message) {
+        if (authorCache != null) {
+            (message.search ? searchCache : authorCache).fill(message.key, message.fillId, message.messages);
+        }
+    }
+
+    /**
+     * Answers a read from the cache or spawns a helper, which reads from the message store and
+     * sends the result back for caching.
+     *
+     * @param client    the client of the read
+     * @param operation the read sent to the message store on a cache miss
+     * @param search    true for a search, false for a retrieval of the messages of an author
+     * @param key       author or search text which is read
+     */
+    private void read(SimulatedActor client, MessageStoreMessage operation, boolean search, String key) {
+        if (authorCache == null) {
+            sendToStore(client, operation);
+            return;
+        }
+        ReadCache cache = search ? searchCache : authorCache;
+        List<UserMessage> cached = cache.get(key);
+        if (cached != null) {
+            client.tell(new FoundMessages(cached, operation.communicationId));
+            return;
+        }
+        storeRequests++;
+        long fillId = cache.startFill(key);
+        if (storeAsks) {
+            askStore(operation, new ReadThrough(client, operation.communicationId, cache, key, fillId));
+            return;
+        }
+        spawnHelper(new ReadThroughHelper(messageStore, client, operation, system, this, search, key, fillId));
+    }
+
+    /**
+     * Numbers an operation with the next request sequence and spawns a worker helper, which sends it to the
+     * message store and forwards the reply to the client, or adds the operation to the next batch if operations
+     * are batched.
+     *
+     * @param client    the client of the operation
+     * @param operation the operation
+     */
+    private void sendToStore(SimulatedActor client, MessageStoreMessage operation) {
+        operation.sequence = nextSequence++;
+        if (maxBatchSize == 1) {
+            storeRequests++;
+            startHelper(client, operation);
+            return;
+        }
+        if (pendingOperations.isEmpty()) {
+            batchAge = 0;
+        }
+        pendingOperations.add(operation);
+        pendingClients.add(client);
+        if (pendingOperations.size() == maxBatchSize) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Sends the operations collected for the next batch to the message store, a single operation
+     * is sent on its own.
+     */
+    private void flushBatch() {
+        if (pendingOperations.isEmpty()) {
+            return;
+        }
+        storeRequests++;
+        if (pendingOperations.size() == 1) {
+            startHelper(pendingClients.get(0), pendingOperations.get(0));
+        } else if (storeAsks) {
+            StoreBatch batch = new StoreBatch(pendingOperations);
+            askStore(batch, new BatchReplies(new ArrayList<>(pendingClients), batch));
+        } else {
+            spawnHelper(new StoreBatchHelper(messageStore, pendingClients, new StoreBatch(pendingOperations), system));
+        }
+        pendingOperations.clear();
+        pendingClients.clear();
+    }
+
+    /**
+     * Sends a single operation to the message store via an idle pooled helper or else a new helper.
+     *
+     * @param client    the client of the operation
+     * @param operation the operation
+     */
+    private void startHelper(SimulatedActor client, MessageStoreMessage operation) {
+        if (storeAsks) {
+            askStore(operation, new ForwardReply(client, operation.communicationId));
+            return;
+        }
+        if (helperPool != null) {
+            WorkerHelper helper = helperPool.acquire(system.getCurrentTime());
+            if (helper != null) {
+                // the helper receives the assignment before the reply, which is sent later via the same channel
+                operation.storeClient = helper;
+                helper.tell(new AssignOperation(client, operation, system.getCurrentTime()));
+                messageStore.tell(operation);
+                return;
+            }
+        }
+        if (helperPool != null && helperPool.reserve()) {
+            spawnHelper(new WorkerHelper(messageStore, client, operation, system, helperPool));
+        } else {
+            spawnHelper(new WorkerHelper(messageStore, client, operation, system));
+        }
+    }
+
+    /**
+     * Spawns a worker helper, which uses timers if resends are scheduled with timers
+     * and the retry policy of the worker if there is one.
+     *
+     * @param helper the new helper
+     */
+    private void spawnHelper(WorkerHelper helper) {
+        if (helperTimers && system instanceof SimulatedActorSystem) {
+            helper.useTimers((SimulatedActorSystem) system);
+        }
+        if (retryPolicy != null) {
+            helper.useRetryPolicy(retryPolicy);
+        }
+        spawnedHelpers++;
+        system.spawn(helper);
+    }
+
+    /**
+     * Sends an operation or batch to the message store with ask, using the timeout and retries of worker helpers.
+     *
+     * @param operation the operation or batch
+     * @param callback  completes the operation
+     */
+    private void askStore(MessageStoreMessage operation, AskCallback callback) {
+        ask(messageStore, operation, WorkerHelper.RESEND_TIMEOUT, WorkerHelper.MAX_RETRIES, callback);
+    }
+
+    /**
+     * Message the worker schedules for itself with the timer service of the actor system, which makes it
+     * expire the communications, which are due.
+     */
+    private static final class SessionTimeout implements Message {
+        @Override
+        public int getDuration() {
+            return 0;
+        }
+    }
+
+    /**
+     * Forwards the reply to an operation sent with ask to its client, which is notified if the operation fails.
+     */
+    private static class ForwardReply implements AskCallback {
+        final SimulatedActor client;
+        final long communicationId;
+
+        ForwardReply(SimulatedActor client, long communicationId) {
+            this.client = client;
+            this.communicationId = communicationId;
+        }
+
+        @Override
+        public void onReply(Message reply) {
+            client.tell(reply);
+        }
+
+        @Override
+        public void onTimeout() {
+            client.tell(new OperationFailed(communicationId));
+        }
+    }
+
+    /**
+     * Forwards the reply to a read sent with ask, which missed the read cache, and caches the result.
+     */
+    private static class ReadThrough extends ForwardReply {
+        final ReadCache cache;
+        final String key;
+        final long fillId;
+
+        ReadThrough(SimulatedActor client, long communicationId, ReadCache cache, String key, long fillId) {
+            super(client, communicationId);
+            this.cache = cache;
+            this.key = key;
+            this.fillId = fillId;
+        }
+
+        @Override
+        public void onReply(Message reply) {
+            super.onReply(reply);
+            cache.fill(key, fillId, reply instanceof FoundMessages ? ((FoundMessages) reply).messages : null);
+        }
+
+        @Override
+        public void onTimeout() {
+            super.onTimeout();
+            cache.fill(key, fillId, null);
+        }
+    }
+
+    /**
+     * Forwards each reply to a batch sent with ask to the client of its operation, which are all notified
+     * if the batch fails.
+     */
+    private static class BatchReplies implements AskCallback {
+        final List<SimulatedActor> clients;
+        final StoreBatch batch;
+
+        BatchReplies(List<SimulatedActor> clients, StoreBatch batch) {
+            this.clients = clients;
+            this.batch = batch;
+        }
+
+        @Override
+        public void onReply(Message reply) {
+            List<Message> replies = ((StoreBatchReply) reply).replies;
+            for (int i = 0; i < replies.size(); i++) {
+                clients.get(i).tell(replies.get(i));
+            }
+        }
+
+        @Override
+        public void onTimeout() {
+            for (int i = 0; i < batch.operations.size(); i++) {
+                clients.get(i).tell(new OperationFailed(batch.operations.get(i).communicationId));
+            }
+        }
+    }
+
+    /**
+     * Overridden tick()-method, which expires idle communications, if a session timeout is set and their
+     * expiry is not scheduled with timers, even if no message arrives, and sends the next batch to the
+     * message store once its first operation has waited long enough. At the end, the load of the worker
+     * is recorded for the dispatcher.
+     */
+    @Override
+    public void tick() throws UnknownClientException, UnknownMessageException {
+        super.tick();
+        if (ongoingCommunications.getTimeout() > 0 && !usesSessionTimers()) {
+            expireSessions(getTimeSinceSystemStart());
+        }
+        if (!pendingOperations.isEmpty()) {
+            if (batchAge >= maxBatchDelay) {
+                flushBatch();
+            } else {
+                batchAge++;
+            }
+        }
+        loadSnapshot.record(system.getCurrentTime(), getOpenSessions(), getMailboxDepth());
+    }
+
+    /**
+     * Sending the next batch and expiring a communication are events as well, so only the ticks before them
+     * can be skipped.
+     */
+    @Override
+    protected int ticksUntilNextEvent() {
+        int ticks = super.ticksUntilNextEvent();
+        long expiry = usesSessionTimers() ? Long.MAX_VALUE : ongoingCommunications.nextExpiry();
+        if (expiry != Long.MAX_VALUE) {
+            // the expiry happens in the tick, which advances the time of the worker to it
+            ticks = (int) Math.min(ticks, Math.max(0, expiry - getTimeSinceSystemStart() - 1));
+        }
+        if (!pendingOperations.isEmpty()) {
+            ticks = Math.min(ticks, maxBatchDelay - batchAge);
+        }
+        return ticks;
+    }
+
+    @Override
+    protected void skipTicks(int ticks) {
+        super.skipTicks(ticks);
+        if (!pendingOperations.isEmpty()) {
+            batchAge += ticks;
+        }
+    }
+
     /**
      * Spawns a worker helper which communicates with the message store to retrieve
-     * messages of the author given in the message passed as parameter.
+     * messages of the author given in the message passed as parameter, unless they are cached.
      *
      * @param message non-null message of type RetrieveMessages
      * @throws UnknownClientException thrown if communication id of message is unknown
@@ -165,8 +1004,7 @@ public class Worker extends SimulatedActor {
         SimulatedActor client = ongoingCommunications.get(retrMessages.communicationId);
 
         MessageStoreMessage retrievedMessages = new RetrieveFromStore(retrMessages.author, retrMessages.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        read(client, retrievedMessages, false, retrMessages.author);
     }
 
     /**
@@ -182,8 +1020,7 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(like.communicationId);
         MessageStoreMessage retrievedMessages = new AddLike(like.clientName, like.messageId, like.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
@@ -201,8 +1038,7 @@ public class Worker extends SimulatedActor {
         SimulatedActor client = ongoingCommunications.get(dislike.communicationId);
         MessageStoreMessage retrievedMessages =
                 new AddDislike(dislike.clientName, dislike.messageId, dislike.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
@@ -220,8 +1056,7 @@ public class Worker extends SimulatedActor {
         MessageStoreMessage retrievedMessages =
                 new DeleteLikeOrDislike(deleteLikeOrDislike.clientName, deleteLikeOrDislike.communicationId,
                         deleteLikeOrDislike.messageId, deleteLikeOrDislike.typeToDelete);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
@@ -238,8 +1073,7 @@ public class Worker extends SimulatedActor {
         SimulatedActor client = ongoingCommunications.get(reaction.communicationId);
         MessageStoreMessage retrievedMessages = new AddReaction(reaction.clientName, reaction.messageId,
                 reaction.communicationId, reaction.reaction);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, retrievedMessages, system);
-        system.spawn(helper);
+        sendToStore(client, retrievedMessages);
     }
 
     /**
@@ -263,8 +1097,7 @@ public class Worker extends SimulatedActor {
             client.tell(new OperationFailed(publish.communicationId));
         } else {
             MessageStoreMessage updatedMessages = new UpdateMessageStore(userMessage, publish.communicationId);
-            WorkerHelper helper = new WorkerHelper(messageStore, client, updatedMessages, system);
-            system.spawn(helper);
+            sendToStore(client, updatedMessages);
         }
     }
 
@@ -281,13 +1114,12 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(report.communicationId);
         MessageStoreMessage reportedMessage = new AddReport(report.clientName, report.communicationId, report.reportedClientName);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, reportedMessage, system);
-        system.spawn(helper);
+        sendToStore(client, reportedMessage);
     }
 
     /**
      * Spawns a worker helper which communicates with the message store to search
-     * messages of the given search query for author or text.
+     * messages of the given search query for author or text, unless the result is cached.
      *
      * @param message non-null message of type SearchMessages
      * @throws UnknownClientException thrown if communication id of message is unknown
@@ -299,8 +1131,7 @@ public class Worker extends SimulatedActor {
         SimulatedActor client = ongoingCommunications.get(searchMessage.communicationId);
 
         MessageStoreMessage searchResults = new SearchInStore(searchMessage.searchText, searchMessage.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, searchResults, system);
-        system.spawn(helper);
+        read(client, searchResults, true, searchMessage.searchText);
     }
 
     /**
@@ -317,8 +1148,7 @@ public class Worker extends SimulatedActor {
         SimulatedActor client = ongoingCommunications.get(edit.communicationId);
         MessageStoreMessage editedMessage =
                 new EditMessage(edit.messageId, edit.clientName, edit.newMessage, edit.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, editedMessage, system);
-        system.spawn(helper);
+        sendToStore(client, editedMessage);
     }
 
 
@@ -335,7 +1165,6 @@ public class Worker extends SimulatedActor {
             throw new UnknownClientException("Unknown communication ID");
         SimulatedActor client = ongoingCommunications.get(delete.communicationId);
         MessageStoreMessage deleteMessage = new DeleteMessage(delete.clientName, delete.messageId, delete.communicationId);
-        WorkerHelper helper = new WorkerHelper(messageStore, client, deleteMessage, system);
-        system.spawn(helper);
+        sendToStore(client, deleteMessage);
     }
 }
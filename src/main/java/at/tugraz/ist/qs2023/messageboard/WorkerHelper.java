@@ -3,9 +3,14 @@ package at.tugraz.ist.qs2023.messageboard;
 import at.tugraz.ist.qs2023.actorsystem.DeterministicChannel;
 import at.tugraz.ist.qs2023.actorsystem.Message;
 import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+import at.tugraz.ist.qs2023.actorsystem.ISimulatedActorSystem;
 import at.tugraz.ist.qs2023.actorsystem.SimulatedActorSystem;
+import at.tugraz.ist.qs2023.actorsystem.TimerHandle;
+import at.tugraz.ist.qs2023.messageboard.clientmessages.ClientMessage;
 import at.tugraz.ist.qs2023.messageboard.clientmessages.OperationFailed;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.AssignOperation;
 import at.tugraz.ist.qs2023.messageboard.messagestoremessages.MessageStoreMessage;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.ResendTimeout;
 
 /**
  * Helper which should only send one message to the message store
@@ -13,7 +18,8 @@ import at.tugraz.ist.qs2023.messageboard.messagestoremessages.MessageStoreMessag
  * one message store, messages could get dropped (this can be simulated
  * using different channel implementations for the message store), so
  * this actor will resend messages, if it does not receive a response
- * for a predefined amount of time.
+ * for a predefined amount of time, or for a time adapted to the round-trip
+ * times of the message store (see {@link AdaptiveRetryPolicy}).
  * <p>
  * Such simple actors are common in programs using the actor model.
  */
@@ -36,7 +42,7 @@ public class WorkerHelper extends SimulatedActor {
     /**
      * The actor system which is used for stopping after forwarding the response
      */
-    private final SimulatedActorSystem system;
+    private final ISimulatedActorSystem system;
 
     /**
      * Counts the number of ticks since the message was sent to the message store
@@ -49,14 +55,83 @@ public class WorkerHelper extends SimulatedActor {
     private boolean stopping;
 
     /**
-     * Count how often the message was resent
+     * Count how often the helper timed out waiting for a reply, which it resent each time
+     * unless the retry budget of its retry policy was empty
      */
     private int retries;
 
     /**
      * Maximum number of resends
      */
-    private final int MAX_RETRIES = 2;
+    static final int MAX_RETRIES = 2;
+
+    /**
+     * Number of ticks after sending, after which the message is resent
+     */
+    static final int RESEND_TIMEOUT = 3;
+
+    /**
+     * Pool to which the helper returns after finishing its operation, null if the helper stops instead
+     */
+    private final HelperPool pool;
+
+    /**
+     * Number of times the message was sent to the message store
+     */
+    private int sends;
+
+    /**
+     * Number of replies to the message received from the message store
+     */
+    private int replies;
+
+    /**
+     * Counts the number of ticks a pooled helper has been waiting for the replies to resends
+     * since it finished its operation
+     */
+    private int timeSinceFinished;
+
+    /**
+     * Maximum number of ticks a pooled helper waits for the replies to resends, after which it stops
+     * instead of returning to the pool, as some of the replies have probably been dropped
+     */
+    private static final int DRAIN_TIMEOUT = 10 * RESEND_TIMEOUT;
+
+    /**
+     * Set while a pooled helper is in its pool or after it has stopped
+     */
+    private boolean idle;
+
+    /**
+     * Timer service scheduling the resends and the drain timeout, null if the helper counts ticks itself
+     */
+    private SimulatedActorSystem timers = null;
+
+    /**
+     * The scheduled resend or drain timeout, null if there is none
+     */
+    private TimerHandle timeout = null;
+
+    /**
+     * Adaptive timeouts and retry budget shared with the other helpers of the store, null if the
+     * helper resends after RESEND_TIMEOUT ticks at most MAX_RETRIES times
+     */
+    private AdaptiveRetryPolicy retryPolicy = null;
+
+    /**
+     * Number of ticks after sending, after which the message is resent next
+     */
+    private int resendTimeout = RESEND_TIMEOUT;
+
+    /**
+     * Time at which the message was first sent, from which the RTT is measured
+     */
+    private int firstSent;
+
+    /**
+     * Set while the helper waits for the retry policy to decide on its requested resend in the next tick
+     */
+    private boolean retryRequested = false;
 
     /**
      * Constructs a new WorkerHelper object.
@@ -66,7 +141,26 @@ public class WorkerHelper extends SimulatedActor {
      * @param message      the message to be sent to the message store
      * @param system       actor system used to stop the helper
      */
-    public WorkerHelper(SimulatedActor messageStore, SimulatedActor client, MessageStoreMessage message, SimulatedActorSystem system) {
+    public WorkerHelper(SimulatedActor messageStore, SimulatedActor client, MessageStoreMessage message, ISimulatedActorSystem system) {
+        this(messageStore, client, message, system, null);
+    }
+
+    /**
+     * Constructs a new WorkerHelper object, which returns to a pool after finishing its operation.
+     * It is then reused with an AssignOperation message, which it must receive before the reply of
+     * the message store. Replies to earlier operations arriving later, e.g. replies duplicated by a channel,
+     * are ignored, as the store echoes the communication ID and request sequence of an operation on its reply.
+     * Assignments of earlier operations duplicated by a channel are ignored as well, as the worker numbers
+     * its operations in ascending order.
+     *
+     * @param messageStore message store which receives messages from helper
+     * @param client       client to which the message from the store gets forwarded
+     * @param message      the message to be sent to the message store
+     * @param system       actor system used to stop the helper
+     * @param pool         the pool of the helper, which has reserved a place for it, null if the helper is not pooled
+     */
+    WorkerHelper(SimulatedActor messageStore, SimulatedActor client, MessageStoreMessage message, ISimulatedActorSystem system,
+                 HelperPool pool) {
         this.message = message;
         this.message.storeClient = this;
         this.messageStore = messageStore;
@@ -75,11 +169,37 @@ public class WorkerHelper extends SimulatedActor {
         this.timeSinceLastSent = 0;
         this.stopping = false;
         this.retries = 0;
+        this.pool = pool;
+        this.sends = 0;
+        this.replies = 0;
+        this.idle = false;
 
         // good connection between WorkerHelper and MessageStore -> no delay
         this.channel = new DeterministicChannel(0);
     }
 
+    /**
+     * Lets the helper schedule ResendTimeout messages with the timer service of the actor system instead of
+     * counting the ticks since the message was sent, so it is not ticked while it waits for the reply.
+     * If no other messages are waiting for the helper, it resends at the same ticks. Must be called before
+     * the helper is spawned.
+     *
+     * @param timers the actor system spawning the helper
+     */
+    void useTimers(SimulatedActorSystem timers) {
+        this.timers = timers;
+    }
+
+    /**
+     * Lets the helper take its timeouts and retries from an adaptive retry policy, which it reports
+     * its sends and measured RTTs to. Must be called before the helper is spawned.
+     *
+     * @param retryPolicy the policy shared by the helpers sending to the same message store
+     */
+    void useRetryPolicy(AdaptiveRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
     /**
      * After spawning the message should be sent for the first time to the message store.
      */
@@ -87,39 +207,289 @@ public class WorkerHelper extends SimulatedActor {
     public void atStartUp() {
         messageStore.tell(message);
         timeSinceLastSent = 0;
+        sends = 1;
+        firstSent = system.getCurrentTime();
+        startTimeouts();
+        scheduleTimeout(resendTimeout - 1);
     }
 
     /**
      * We assume that the helper only receives reply messages from the message store,
-     * which it must forward to clients.
+     * which it must forward to clients, and AssignOperation messages if it is pooled.
      *
      * @param message Non-null message received
      */
     @Override
     public void receive(Message message) {
-        client.tell(message);
-        system.stop(this);
-        stopping = true; // mark as stopping,
+        if (message instanceof ResendTimeout) {
+            if (timeout != null && message == timeout.getMessage()) {
+                timeout = null;
+                expire();
+            }
+            return;
+        }
+        if (message instanceof AssignOperation) {
+            assign((AssignOperation) message);
+            return;
+        }
+        if (pool == null) {
+            measureRtt();
+            forward(message);
+            system.stop(this);
+            stopping = true; // mark as stopping,
+            cancelTimeout();
+            return;
+        }
+        if (idle || !(message instanceof ClientMessage) || !repliesTo((ClientMessage) message)) {
+            // reply to an earlier operation
+            return;
+        }
+        replies++;
+        if (!stopping) {
+            measureRtt();
+            forward(message);
+            finish();
+        } else {
+            releaseIfDrained();
+        }
+    }
+
+    /**
+     * @param reply a message from the message store
+     * @return whether the message is the reply to the current operation of the helper
+     */
+    private boolean repliesTo(ClientMessage reply) {
+        return reply.communicationId == message.communicationId && reply.sequence == message.sequence;
+    }
+
+    /**
+     * Starts waiting for the reply to an operation, which the worker has sent to the message store,
+     * unless the assignment is a duplicate of an earlier one.
+     *
+     * @param assignment the operation and its client
+     */
+    private void assign(AssignOperation assignment) {
+        if (assignment.operation.sequence <= message.sequence) {
+            return;
+        }
+        this.client = assignment.client;
+        this.message = assignment.operation;
+        this.retries = 0;
+        this.sends = 1;
+        this.replies = 0;
+        this.stopping = false;
+        this.idle = false;
+        this.retryRequested = false;
+        // as if the helper had been spawned when the operation was sent, see tick()
+        this.timeSinceLastSent = system.getCurrentTime() - assignment.sentAt - 1;
+        this.firstSent = assignment.sentAt;
+        startTimeouts();
+        // the timeout is received in the tick after it is delivered
+        scheduleTimeout(Math.max(0, resendTimeout - 2 - timeSinceLastSent));
+    }
+
+    /**
+     * Reports the first send of a new operation to the retry policy and takes the first timeout from it.
+     */
+    private void startTimeouts() {
+        if (retryPolicy != null) {
+            retryPolicy.recordSend(system.getCurrentTime());
+            resendTimeout = retryPolicy.timeout(system.getCurrentTime(), 0, jitterId());
+        }
+    }
+
+    /**
+     * Reports the RTT of the operation to the retry policy, unless the message was resent,
+     * as the reply could then belong to any of the sends.
+     */
+    private void measureRtt() {
+        if (retryPolicy != null && sends == 1) {
+            retryPolicy.recordRtt(system.getCurrentTime(), getId(), system.getCurrentTime() - firstSent);
+        }
+    }
+
+    private long jitterId() {
+        return getId() * 31 + message.communicationId;
+    }
+
+    /**
+     * Stops resending the message of a pooled helper after the first reply, the helper returns to its pool
+     * as soon as the replies to all resends have arrived.
+     */
+    private void finish() {
+        stopping = true;
+        timeSinceFinished = 0;
+        scheduleTimeout(DRAIN_TIMEOUT - 2);
+        releaseIfDrained();
+    }
+
+    /**
+     * Returns a pooled helper to its pool if it has received a reply to each time the message was sent.
+     */
+    private void releaseIfDrained() {
+        if (replies >= sends) {
+            idle = true;
+            cancelTimeout();
+            if (!pool.release(this, system.getCurrentTime())) {
+                system.stop(this);
+            }
+        }
+    }
+
+    /**
+     * Forwards the response of the message store to the client.
+     *
+     * @param response Non-null message received from the message store
+     */
+    protected void forward(Message response) {
+        client.tell(response);
+    }
+
+    /**
+     * Notifies the client that the operation failed, because the message store did not respond.
+     */
+    protected void fail() {
+        client.tell(new OperationFailed(message.communicationId));
     }
 
     /**
      * Overridden tick()-method, which counts the time units passed since
      * the message was sent the last time and the number of sending
-     * retries.
+     * retries. A pooled helper, which is still waiting for replies to resends
+     * after finishing its operation, stops if they take too long.
+     * Nothing is counted if the helper uses timers.
      */
     @Override
     public void tick() throws UnknownClientException, UnknownMessageException {
         super.tick();
+        if (timers != null) {
+            return;
+        }
         // as all workers share one MessageStore instance, it might happen that messages are dropped
-        if (!stopping && timeSinceLastSent++ >= 3) {
-            if (retries == MAX_RETRIES) {
-                client.tell(new OperationFailed(message.communicationId));
-                system.stop(this);
-            } else {
-                messageStore.tell(message);
-                timeSinceLastSent = 0;
-                retries++;
+        if (!stopping && retryRequested) {
+            resendIfGranted();
+        } else if (!stopping && timeSinceLastSent++ >= resendTimeout) {
+            resendOrFail();
+        } else if (pool != null && stopping && !idle && timeSinceFinished++ >= DRAIN_TIMEOUT) {
+            stopDraining();
+        }
+    }
+
+    /**
+     * Handles a ResendTimeout message like tick() handles the timeouts it counts.
+     */
+    private void expire() {
+        if (!stopping && retryRequested) {
+            resendIfGranted();
+        } else if (!stopping) {
+            resendOrFail();
+        } else if (pool != null && !idle) {
+            stopDraining();
+        }
+    }
+
+    /**
+     * Resends the message to the message store or gives up after the last retry.
+     * With a retry policy, the helper requests the resend, which it sends in the next tick
+     * if the retry budget grants it.
+     */
+    private void resendOrFail() {
+        if (retries == (retryPolicy == null ? MAX_RETRIES : retryPolicy.getMaxRetries())) {
+            fail();
+            if (pool != null) {
+                // the store is too slow to wait for the replies to all resends
+                idle = true;
+                pool.discard();
             }
+            system.stop(this);
+        } else if (retryPolicy != null) {
+            retryPolicy.requestRetry(system.getCurrentTime(), getId());
+            retryRequested = true;
+            scheduleTimeout(0);
+        } else {
+            messageStore.tell(message);
+            timeSinceLastSent = 0;
+            retries++;
+            sends++;
+            scheduleTimeout(RESEND_TIMEOUT - 1);
+        }
+    }
+
+    /**
+     * Resends the message if the retry policy has granted the requested resend, otherwise the helper keeps
+     * waiting for the reply to its earlier sends. Either way, it counts as a retry.
+     */
+    private void resendIfGranted() {
+        retryRequested = false;
+        if (retryPolicy.isRetryGranted(system.getCurrentTime(), getId())) {
+            messageStore.tell(message);
+            sends++;
+        }
+        timeSinceLastSent = 0;
+        retries++;
+        resendTimeout = retryPolicy.timeout(system.getCurrentTime(), retries, jitterId());
+        scheduleTimeout(resendTimeout - 1);
+    }
+
+    /**
+     * Stops a pooled helper, whose replies to resends take too long.
+     */
+    private void stopDraining() {
+        idle = true;
+        pool.discard();
+        system.stop(this);
+    }
+
+    /**
+     * Replaces the scheduled timeout if the helper uses timers.
+     *
+     * @param delay number of ticks before the ResendTimeout message is delivered
+     */
+    private void scheduleTimeout(int delay) {
+        if (timers != null) {
+            cancelTimeout();
+            timeout = timers.scheduleOnce(this, delay, new ResendTimeout());
+        }
+    }
+
+    private void cancelTimeout() {
+        if (timeout != null) {
+            timers.cancel(timeout);
+            timeout = null;
+        }
+    }
+
+    /**
+     * The next resend or failure is an event as well, so only the ticks
+     * before it can be skipped. With timers, the helper is idle until the
+     * ResendTimeout message arrives.
+     */
+    @Override
+    protected int ticksUntilNextEvent() {
+        int ticks = super.ticksUntilNextEvent();
+        if (timers != null) {
+            return ticks;
+        }
+        if (!stopping && retryRequested) {
+            ticks = 0;
+        } else if (!stopping) {
+            ticks = Math.min(ticks, Math.max(0, resendTimeout - timeSinceLastSent));
+        } else if (pool != null && !idle) {
+            ticks = Math.min(ticks, Math.max(0, DRAIN_TIMEOUT - timeSinceFinished));
+        }
+        return ticks;
+    }
+
+    @Override
+    protected void skipTicks(int ticks) {
+        super.skipTicks(ticks);
+        if (timers != null) {
+            return;
+        }
+        if (!stopping && !retryRequested) {
+            timeSinceLastSent += ticks;
+        } else if (pool != null && !idle) {
+            timeSinceFinished += ticks;
         }
     }
 }
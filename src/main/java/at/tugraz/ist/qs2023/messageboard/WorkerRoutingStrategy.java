@@ -0,0 +1,52 @@
+package at.tugraz.ist.qs2023.messageboard;
+
+import java.util.List;
+
+/**
+ * Strategy used by the {@link Dispatcher} to select the worker, which handles a new communication.
+ * Strategies may read the load of the workers at the end of the previous tick (see
+ * {@link Worker#getOpenSessionsSnapshot()} and {@link Worker#getMailboxDepthSnapshot()}), but not their
+ * current state, as the dispatcher may be processed concurrently with the workers. They must be
+ * deterministic, so simulations stay reproducible. A strategy instance belongs to a single dispatcher
+ * or shard, see {@link WorkerRoutingStrategy#forShard()}.
+ */
+public interface WorkerRoutingStrategy {
+
+    /**
+     * Called whenever the workers of the dispatcher change, before the next call of
+     * {@link WorkerRoutingStrategy#selectWorker(long, List)}.
+     *
+     * @param workers The current workers, must not be modified.
+     */
+    default void workersChanged(List<Worker> workers) {
+    }
+
+    /**
+     * Creates the strategy of another shard of the dispatcher, which is called once for each shard
+     * when the dispatcher starts up. Shards are processed concurrently, so the new strategy must not
+     * share mutable state with this one. Strategies without mutable state may return themselves.
+     *
+     * @return The strategy of the new shard.
+     */
+    default WorkerRoutingStrategy forShard() {
+        return this;
+    }
+
+    /**
+     * Selects the worker for a new communication.
+     *
+     * @param communicationId The ID of the communication.
+     * @param workers         The current workers, a non-empty list, which must not be modified.
+     * @return One of the workers.
+     */
+    Worker selectWorker(long communicationId, List<Worker> workers);
+
+    /**
+     * @param worker A worker.
+     * @return The load of the worker at the end of the previous tick, i.e. the number of its open
+     * sessions plus the number of messages waiting in its mailbox.
+     */
+    static int load(Worker worker) {
+        return worker.getOpenSessionsSnapshot() + worker.getMailboxDepthSnapshot();
+    }
+}
@@ -1,6 +1,7 @@
 package at.tugraz.ist.qs2023.messageboard.clientmessages;
 
 import at.tugraz.ist.qs2023.actorsystem.Message;
+import at.tugraz.ist.qs2023.messageboard.messagestoremessages.MessageStoreMessage;
 
 /**
  * The abstract base class for all messages sent between clients of
@@ -20,6 +21,12 @@ public abstract class ClientMessage implements Message {
      */
     public Long communicationId;
 
+    /**
+     * request sequence of the operation, to which the message store replies with this message,
+     * so a worker helper can tell the reply from replies to earlier operations of the same communication
+     */
+    public long sequence = MessageStoreMessage.NO_SEQUENCE;
+
     public ClientMessage(Long communicationId) {
         this.communicationId = communicationId;
     }
@@ -0,0 +1,12 @@
+package at.tugraz.ist.qs2023.messageboard.clientmessages;
+
+/**
+ * Message sent from worker to client if the communication has been finished by the worker,
+ * because the client has not sent any request for longer than the session timeout.
+ */
+public class SessionExpired extends FinishAck {
+
+    public SessionExpired(long communicationId) {
+        super(communicationId);
+    }
+}
@@ -0,0 +1,19 @@
+package at.tugraz.ist.qs2023.messageboard.clientmessages;
+
+/**
+ * Reply message sent from worker to client if a request exceeded the rate limit
+ * of the communication or of the client name. The request has not been forwarded
+ * to the message store.
+ */
+public class Throttled extends OperationFailed {
+    /**
+     * number of ticks after which the same request would be admitted,
+     * if no other request of the client is admitted in between
+     */
+    public final int retryAfter;
+
+    public Throttled(long communicationId, int retryAfter) {
+        super(communicationId);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,25 @@
+package at.tugraz.ist.qs2023.messageboard.dispatchermessages;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+
+/**
+ * Message sent from dispatcher to a worker, which is removed from the pool.
+ * The worker does not get new communications anymore, finishes its ongoing ones
+ * and then acknowledges with a RetireAck message.
+ */
+public class Retire implements Message {
+    /**
+     * Number of InitCommunication messages forwarded to the worker before this message,
+     * which the worker has to receive before it can retire.
+     */
+    public final long forwardedCommunications;
+
+    public Retire(long forwardedCommunications) {
+        this.forwardedCommunications = forwardedCommunications;
+    }
+
+    @Override
+    public int getDuration() {
+        return 2;
+    }
+}
@@ -0,0 +1,24 @@
+package at.tugraz.ist.qs2023.messageboard.dispatchermessages;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+
+/**
+ * Message sent from a retiring worker to the dispatcher, once all
+ * its communications have been finished.
+ */
+public class RetireAck implements Message {
+    /**
+     * The sender of this message
+     */
+    public final SimulatedActor sender;
+
+    public RetireAck(SimulatedActor sender) {
+        this.sender = sender;
+    }
+
+    @Override
+    public int getDuration() {
+        return 2;
+    }
+}
@@ -0,0 +1,36 @@
+package at.tugraz.ist.qs2023.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+
+/**
+ * Message sent by a worker to an idle pooled worker helper, which makes the helper wait for the
+ * reply to an operation the worker has just sent to the message store.
+ */
+public class AssignOperation implements Message {
+    /**
+     * The client to which the reply should be forwarded
+     */
+    public final SimulatedActor client;
+
+    /**
+     * The operation sent to the message store, whose store client is the helper
+     */
+    public final MessageStoreMessage operation;
+
+    /**
+     * Time at which the worker sent the operation
+     */
+    public final int sentAt;
+
+    public AssignOperation(SimulatedActor client, MessageStoreMessage operation, int sentAt) {
+        this.client = client;
+        this.operation = operation;
+        this.sentAt = sentAt;
+    }
+
+    @Override
+    public int getDuration() {
+        return 1;
+    }
+}
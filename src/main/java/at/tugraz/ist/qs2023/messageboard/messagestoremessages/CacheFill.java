@@ -0,0 +1,44 @@
+package at.tugraz.ist.qs2023.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+import at.tugraz.ist.qs2023.messageboard.UserMessage;
+
+import java.util.List;
+
+/**
+ * Message sent by a worker helper to its worker with the result of a read from the store,
+ * which the worker may add to its read cache.
+ */
+public class CacheFill implements Message {
+    /**
+     * true for the result of a search, false for the messages of an author
+     */
+    public final boolean search;
+
+    /**
+     * author or search text which was read
+     */
+    public final String key;
+
+    /**
+     * id of the read assigned by the worker
+     */
+    public final long fillId;
+
+    /**
+     * the user messages found, null if the read failed
+     */
+    public final List<UserMessage> messages;
+
+    public CacheFill(boolean search, String key, long fillId, List<UserMessage> messages) {
+        this.search = search;
+        this.key = key;
+        this.fillId = fillId;
+        this.messages = messages;
+    }
+
+    @Override
+    public int getDuration() {
+        return 1;
+    }
+}
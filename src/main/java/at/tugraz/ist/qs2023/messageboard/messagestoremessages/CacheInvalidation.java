@@ -0,0 +1,24 @@
+package at.tugraz.ist.qs2023.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+
+/**
+ * Message sent by the store to all subscribers if a user message of an author has been
+ * added, edited or deleted, so the messages found for the author and all search results
+ * read from the store before might be stale.
+ */
+public class CacheInvalidation implements Message {
+    /**
+     * author of the changed user message
+     */
+    public final String author;
+
+    public CacheInvalidation(String author) {
+        this.author = author;
+    }
+
+    @Override
+    public int getDuration() {
+        return 1;
+    }
+}
@@ -0,0 +1,19 @@
+package at.tugraz.ist.qs2023.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
+
+/**
+ * Message used to subscribe to or unsubscribe from the {@link CacheInvalidation} messages of the store.
+ * It is not answered.
+ */
+public class CacheSubscription extends MessageStoreMessage {
+    /**
+     * true to subscribe the store client, false to unsubscribe it
+     */
+    public final boolean subscribe;
+
+    public CacheSubscription(SimulatedActor subscriber, boolean subscribe) {
+        this.storeClient = subscriber;
+        this.subscribe = subscribe;
+    }
+}
@@ -7,6 +7,11 @@ import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
  * Base class for all messages sent to the message store.
  */
 public abstract class MessageStoreMessage implements Message {
+    /**
+     * Value of <c>sequence</c> of an operation, which the message store does not deduplicate.
+     */
+    public static final long NO_SEQUENCE = -1;
+
     /**
      * The actor to which the message store sends its replies.
      */
@@ -18,6 +23,12 @@ public abstract class MessageStoreMessage implements Message {
      */
     public long communicationId;
 
+    /**
+     * Sequence number of the request, which together with the communication id identifies the
+     * operation, so the message store can answer a resend with its reply to the first run
+     */
+    public long sequence = NO_SEQUENCE;
+
     public int getDuration() {
         return 1; // store is supposed to be fast
     }
@@ -0,0 +1,15 @@
+package at.tugraz.ist.qs2023.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+
+/**
+ * Message a worker helper schedules for itself with the timer service of the actor system, which
+ * makes it resend its message to the message store or give up if no reply has arrived in time.
+ * A pooled helper, which has finished its operation, schedules it to stop waiting for the replies to resends.
+ */
+public class ResendTimeout implements Message {
+    @Override
+    public int getDuration() {
+        return 0;
+    }
+}
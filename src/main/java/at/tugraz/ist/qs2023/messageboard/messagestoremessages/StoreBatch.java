@@ -0,0 +1,30 @@
+package at.tugraz.ist.qs2023.messageboard.messagestoremessages;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message carrying several operations, which the message store performs one after another
+ * while processing the batch. The replies to the operations are not sent to their store
+ * clients, but collected in a {@link StoreBatchReply} sent to the store client of the batch.
+ * <p>
+ * A batch is processed in the time of a single operation, as the processing time of the store
+ * mostly goes into receiving a message and not into the operation itself.
+ * The communication ID of a batch is not used, each operation carries its own.
+ */
+public class StoreBatch extends MessageStoreMessage {
+    /**
+     * The operations in the order they are performed, not containing batches
+     */
+    public final List<MessageStoreMessage> operations;
+
+    public StoreBatch(List<MessageStoreMessage> operations) {
+        for (MessageStoreMessage operation : operations) {
+            if (operation instanceof StoreBatch) {
+                throw new IllegalArgumentException("Batches must not be nested");
+            }
+        }
+        this.operations = Collections.unmodifiableList(new ArrayList<>(operations));
+    }
+}
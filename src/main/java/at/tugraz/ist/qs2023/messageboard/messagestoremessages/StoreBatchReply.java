@@ -0,0 +1,25 @@
+package at.tugraz.ist.qs2023.messageboard.messagestoremessages;
+
+import at.tugraz.ist.qs2023.actorsystem.Message;
+
+import java.util.List;
+
+/**
+ * The response of the message store to a {@link StoreBatch} message
+ * containing the reply to each of its operations.
+ */
+public class StoreBatchReply implements Message {
+    /**
+     * Replies in the order of the operations of the batch
+     */
+    public final List<Message> replies;
+
+    public StoreBatchReply(List<Message> replies) {
+        this.replies = replies;
+    }
+
+    @Override
+    public int getDuration() {
+        return 1;
+    }
+}
@@ -1,10 +1,27 @@
 package at.tugraz.ist.qs2023;
 
+import at.tugraz.ist.qs2023.actorsystem.AskCallback;
+import at.tugraz.ist.qs2023.actorsystem.AskRequest;
+import at.tugraz.ist.qs2023.actorsystem.CommunicationChannel;
+import at.tugraz.ist.qs2023.actorsystem.DelayDistribution;
+import at.tugraz.ist.qs2023.actorsystem.DeterministicChannel;
+import at.tugraz.ist.qs2023.actorsystem.ICommunicationChannel;
+import at.tugraz.ist.qs2023.actorsystem.ISimulatedActorSystem;
+import at.tugraz.ist.qs2023.actorsystem.LossModel;
 import at.tugraz.ist.qs2023.actorsystem.Message;
+import at.tugraz.ist.qs2023.actorsystem.MessageInDelivery;
+import at.tugraz.ist.qs2023.actorsystem.MessageLogPolicy;
+import at.tugraz.ist.qs2023.actorsystem.PerSenderChannel;
+import at.tugraz.ist.qs2023.actorsystem.SeededChannel;
+import at.tugraz.ist.qs2023.actorsystem.RealTimeActorSystem;
 import at.tugraz.ist.qs2023.actorsystem.SimulatedActor;
 import at.tugraz.ist.qs2023.actorsystem.SimulatedActorSystem;
+import at.tugraz.ist.qs2023.actorsystem.TimerHandle;
+import at.tugraz.ist.qs2023.actorsystem.TimingWheelChannel;
 import at.tugraz.ist.qs2023.messageboard.*;
 import at.tugraz.ist.qs2023.messageboard.clientmessages.*;
+import at.tugraz.ist.qs2023.messageboard.dispatchermessages.Retire;
+import at.tugraz.ist.qs2023.messageboard.dispatchermessages.RetireAck;
 import at.tugraz.ist.qs2023.messageboard.dispatchermessages.Stop;
 import at.tugraz.ist.qs2023.messageboard.dispatchermessages.StopAck;
 import at.tugraz.ist.qs2023.messageboard.messagestoremessages.*;
@@ -12,6 +29,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static org.junit.Assert.*;
 
@@ -1394,8 +1413,2227 @@ public class MessageBoardTests {
         workerHelper.tick();
     }
 
+    /**
+     * Client which publishes a message, likes it and finishes the communication,
+     * logging the system time, its own time and the type of every reply.
+     */
+    static class ScriptedClient extends SimulatedActor {
+        final List<String> log = new ArrayList<>();
+        private final ISimulatedActorSystem system;
+        private final long communicationId;
+        private SimulatedActor worker;
+        private int step = 0;
 
+        ScriptedClient(ISimulatedActorSystem system, long communicationId) {
+            this.system = system;
+            this.communicationId = communicationId;
+        }
+
+        @Override
+        public void receive(Message message) {
+            log.add(system.getCurrentTime() + " " + getTimeSinceSystemStart() + " " + message.getClass().getSimpleName());
+            if (message instanceof InitAck)
+                worker = ((InitAck) message).worker;
+            if (step == 0)
+                worker.tell(new Publish(new UserMessage("client" + communicationId, "hello"), communicationId));
+            else if (step == 1)
+                worker.tell(new Like("client" + communicationId, communicationId, 0));
+            else if (step == 2)
+                worker.tell(new FinishCommunication(communicationId));
+            step++;
+        }
+    }
+
+    private static List<String> runScriptedClients(SimulatedActorSystem system) throws UnknownClientException, UnknownMessageException {
+        Dispatcher dispatcher = new Dispatcher(system, 2);
+        system.spawn(dispatcher);
+        List<ScriptedClient> clients = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ScriptedClient client = new ScriptedClient(system, i);
+            system.spawn(client);
+            clients.add(client);
+            dispatcher.tell(new InitCommunication(client, i));
+            system.runFor(5 * i + 1);
+        }
+        system.runFor(200);
+
+        List<String> log = new ArrayList<>();
+        for (ScriptedClient client : clients) {
+            log.addAll(client.log);
+            log.add("time " + client.getTimeSinceSystemStart());
+        }
+        log.add("end " + system.getCurrentTime());
+        return log;
+    }
+
+    @Test
+    public void testTimeSkippingMatchesTickByTick() throws UnknownClientException, UnknownMessageException {
+        List<String> tickByTick = runScriptedClients(new SimulatedActorSystem());
+
+        SimulatedActorSystem skippingSystem = new SimulatedActorSystem();
+        skippingSystem.setTimeSkipping(true);
+        List<String> skipping = runScriptedClients(skippingSystem);
+
+        assertEquals(21, tickByTick.size());
+        assertEquals(tickByTick, skipping);
+    }
+
+    @Test
+    public void testTimeSkippingIdleSystem() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setTimeSkipping(true);
+        TestClient client = new TestClient();
+        system.spawn(client);
+        system.runUntil(1000);
+        assertEquals(1001, system.getCurrentTime());
+        assertEquals(1001, client.getTimeSinceSystemStart());
+
+        client.tell(new InitCommunication(client, 1));
+        system.runFor(4);
+        assertEquals(0, client.receivedMessages.size());
+        system.runFor(1);
+        assertEquals(1, client.receivedMessages.size());
+        assertEquals(1006, client.getTimeSinceSystemStart());
+    }
+
+    @Test
+    public void testTimeSkippingTicksChannelsWithoutNextDelivery() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setTimeSkipping(true);
+        class CustomChannelActor extends CountingActor {
+            CustomChannelActor(ICommunicationChannel channel) {
+                this.channel = channel;
+            }
+        }
+        // a channel implementing only the abstract methods, which delivers at its fifth tick
+        CountingActor actor = new CustomChannelActor(new ICommunicationChannel() {
+            private final List<Message> inTransit = new ArrayList<>();
+            private int ticks = 0;
+
+            @Override
+            public void send(Message message) {
+                inTransit.add(message);
+                ticks = 0;
+            }
+
+            @Override
+            public List<Message> tick() {
+                if (inTransit.isEmpty() || ++ticks < 5) {
+                    return Collections.emptyList();
+                }
+                List<Message> delivered = new ArrayList<>(inTransit);
+                inTransit.clear();
+                return delivered;
+            }
+        });
+        system.spawn(actor);
+        system.runFor(10);
+        actor.tell(new InitCommunication(null, 1));
+        system.runFor(4);
+        assertEquals(0, actor.receivedMessages.size());
+        system.runFor(10);
+        assertEquals(1, actor.receivedMessages.size());
+        // never skipped, as the channel does not know its next delivery
+        assertEquals(24, actor.ticks);
+    }
+
+    static class CountingActor extends SimulatedActor {
+        int ticks = 0;
+        final Queue<Message> receivedMessages = new LinkedList<>();
+
+        @Override
+        public void tick() throws UnknownClientException, UnknownMessageException {
+            ticks++;
+            super.tick();
+        }
+
+        @Override
+        public void receive(Message message) {
+            receivedMessages.add(message);
+        }
+    }
+
+    @Test
+    public void testActiveSchedulingMatchesTickingAllActors() throws UnknownClientException, UnknownMessageException {
+        List<String> allActors = runScriptedClients(new SimulatedActorSystem());
+
+        SimulatedActorSystem activeSystem = new SimulatedActorSystem();
+        activeSystem.setActiveScheduling(true);
+        List<String> active = runScriptedClients(activeSystem);
+
+        assertEquals(allActors, active);
+    }
+
+    @Test
+    public void testActiveSchedulingParksIdleActors() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setActiveScheduling(true);
+        List<CountingActor> actors = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CountingActor actor = new CountingActor();
+            system.spawn(actor);
+            actors.add(actor);
+        }
+        system.runFor(50);
+        for (CountingActor actor : actors) {
+            assertEquals(1, actor.ticks);
+            assertEquals(50, actor.getTimeSinceSystemStart());
+        }
+
+        CountingActor woken = actors.get(42);
+        woken.tell(new Stop());
+        system.runFor(5);
+        assertEquals(1, woken.receivedMessages.size());
+        assertEquals(55, woken.getTimeSinceSystemStart());
+        assertEquals(6, woken.ticks);
+        assertEquals(1, actors.get(41).ticks);
+        assertEquals(55, actors.get(41).getTimeSinceSystemStart());
+    }
+
+    @Test
+    public void testParallelTickMatchesPhasedSequentialTick() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem sequentialSystem = new SimulatedActorSystem();
+        sequentialSystem.setParallelism(1);
+        List<String> sequential = runScriptedClients(sequentialSystem);
+
+        SimulatedActorSystem parallelSystem = new SimulatedActorSystem();
+        parallelSystem.setParallelism(4);
+        List<String> parallel = runScriptedClients(parallelSystem);
+        parallelSystem.setParallelism(0);
+
+        assertEquals(21, sequential.size());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testRealTimeSystemRunsScriptedClients() throws UnknownClientException, UnknownMessageException, InterruptedException {
+        // ticks of 5 ms, so the resend timeouts of the worker helpers, which are ticked, outlast pauses of the JVM
+        RealTimeActorSystem system = new RealTimeActorSystem(TimeUnit.MILLISECONDS.toNanos(5), true);
+        try {
+            Dispatcher dispatcher = new Dispatcher(system, 2);
+            system.spawn(dispatcher);
+            List<ScriptedClient> clients = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                ScriptedClient client = new ScriptedClient(system, i);
+                system.spawn(client);
+                clients.add(client);
+                dispatcher.tell(new InitCommunication(client, i));
+            }
+            assertTrue(system.awaitQuiescence(10, TimeUnit.SECONDS));
+            system.runFor(1);
+
+            for (ScriptedClient client : clients) {
+                List<String> types = new ArrayList<>();
+                for (String entry : client.log) {
+                    types.add(entry.substring(entry.lastIndexOf(' ') + 1));
+                }
+                assertEquals(Arrays.asList("InitAck", "OperationAck", "OperationAck", "FinishAck"), types);
+            }
+            // dispatcher, workers, message store and clients, all helpers have stopped
+            assertEquals(8, system.getActors().size());
+        } finally {
+            system.shutdown();
+        }
+    }
+
+    static class StoppingActor extends CountingActor {
+        private final SimulatedActorSystem system;
+        SimulatedActor victim;
+
+        StoppingActor(SimulatedActorSystem system) {
+            this.system = system;
+        }
+
+        @Override
+        public void tick() throws UnknownClientException, UnknownMessageException {
+            super.tick();
+            if (victim != null) {
+                system.stop(victim);
+                system.spawn(new CountingActor());
+                victim = null;
+            }
+        }
+    }
+
+    @Test
+    public void testActorsStoppedDuringTickAreTickedUntilItsEnd() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        StoppingActor stopper = new StoppingActor(system);
+        system.spawn(stopper);
+        List<CountingActor> actors = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            CountingActor actor = new CountingActor();
+            system.spawn(actor);
+            actors.add(actor);
+        }
+        for (int i = 0; i < 100; i += 2) {
+            system.stop(actors.get(i));
+        }
+        assertEquals(51, system.getActors().size());
+        assertEquals(actors.get(1), system.getActors().get(1));
+        assertFalse(system.getActors().contains(actors.get(0)));
+
+        stopper.victim = actors.get(99);
+        system.tick();
+        assertEquals(1, actors.get(99).ticks);
+        assertFalse(system.getActors().contains(actors.get(99)));
+        assertEquals(51, system.getActors().size());
+        CountingActor spawned = (CountingActor) system.getActors().get(50);
+        assertEquals(0, spawned.ticks);
+
+        system.tick();
+        assertEquals(1, actors.get(99).ticks);
+        assertEquals(2, actors.get(97).ticks);
+        assertEquals(1, spawned.ticks);
+        assertEquals(0, actors.get(0).ticks);
+    }
+
+    static class SilentActor extends SimulatedActor {
+        int received = 0;
+
+        @Override
+        public void receive(Message message) {
+            received++;
+        }
+    }
+
+    /**
+     * Allocation benchmark for the tick path: measures the bytes allocated per tick and actor
+     * while messages are delivered from the channels through the mailboxes to the actors.
+     */
+    @Test
+    public void testTickDoesNotAllocateInSteadyState() throws UnknownClientException, UnknownMessageException {
+        java.lang.management.ThreadMXBean threads = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().getId();
+
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        List<SilentActor> actors = new ArrayList<>();
+        Message message = new Stop();
+        for (int i = 0; i < 100; i++) {
+            SilentActor actor = new SilentActor();
+            system.spawn(actor);
+            actors.add(actor);
+            for (int j = 0; j < 1000; j++) {
+                actor.tell(message);
+            }
+        }
+        // warm up, so the mailboxes have grown and the tick path is compiled
+        system.runFor(500);
+
+        int ticks = 1000;
+        allocations.getThreadAllocatedBytes(threadId);
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        system.runFor(ticks);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // messages have been delivered and processed during the whole measurement
+        assertTrue(actors.get(99).received > 300);
+        assertTrue(actors.get(99).received < 1000);
+        double bytesPerTickAndActor = (double) allocated / ticks / actors.size();
+        assertTrue("allocated " + bytesPerTickAndActor + " bytes per tick and actor", bytesPerTickAndActor < 1);
+    }
+
+    @Test
+    public void testMessageLogPolicies() throws UnknownClientException, UnknownMessageException, java.io.IOException {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(new InitCommunication(null, i));
+        }
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setMessageLogPolicy(MessageLogPolicy.lastN(3));
+        SilentActor lastN = new SilentActor();
+        system.spawn(lastN);
+        system.setMessageLogPolicy(MessageLogPolicy.sampled(4));
+        SilentActor sampled = new SilentActor();
+        system.spawn(sampled);
+        system.setMessageLogPolicy(MessageLogPolicy.off());
+        SilentActor off = new SilentActor();
+        system.spawn(off);
+        for (Message message : messages) {
+            lastN.tell(message);
+            sampled.tell(message);
+            off.tell(message);
+        }
+        system.runFor(50);
+
+        assertEquals(messages.subList(7, 10), lastN.getMessageLog());
+        assertEquals(Arrays.asList(messages.get(0), messages.get(4), messages.get(8)), sampled.getMessageLog());
+        assertTrue(off.getMessageLog().isEmpty());
+        assertEquals(10, off.received);
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("messages", ".log");
+        try {
+            MessageLogPolicy spill = MessageLogPolicy.spillTo(file);
+            system.setMessageLogPolicy(spill);
+            SilentActor spilled = new SilentActor();
+            system.spawn(spilled);
+            spilled.tell(messages.get(0));
+            system.tick();
+            spilled.tell(new Stop());
+            spill.close();
+
+            assertTrue(spilled.getMessageLog().isEmpty());
+            assertEquals(Arrays.asList("50 3 " + InitCommunication.class.getName(), "51 3 " + Stop.class.getName()),
+                    java.nio.file.Files.readAllLines(file));
+        } finally {
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    static class VariableDelayWheel extends TimingWheelChannel {
+        VariableDelayWheel() {
+            super(0);
+        }
+
+        void sendDelayed(Message message, int delay) {
+            send(message, delay);
+        }
+    }
+
+    static class VariableDelayChannel extends CommunicationChannel {
+        @Override
+        public void send(Message message) {
+            sendDelayed(message, 0);
+        }
+
+        void sendDelayed(Message message, int delay) {
+            addMessageInDelivery(new MessageInDelivery(delay, message));
+        }
+    }
+
+    @Test
+    public void testTimingWheelChannelMatchesDeterministicChannel() {
+        Random random = new Random(42);
+        for (int delay : new int[]{0, 1, 2, 5, 16}) {
+            DeterministicChannel reference = new DeterministicChannel(delay);
+            TimingWheelChannel wheel = new TimingWheelChannel(delay);
+            for (int tick = 0; tick < 500; tick++) {
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    Message message = new InitCommunication(null, tick);
+                    reference.send(message);
+                    wheel.send(message);
+                }
+                assertEquals(reference.ticksUntilNextDelivery(), wheel.ticksUntilNextDelivery());
+                int idle = Math.min(wheel.ticksUntilNextDelivery(), random.nextInt(3));
+                reference.skip(idle);
+                wheel.skip(idle);
+                assertEquals(reference.tick(), wheel.tick());
+            }
+        }
+    }
+
+    @Test
+    public void testTimingWheelChannelGrowsForLongerDelays() {
+        Random random = new Random(7);
+        VariableDelayChannel reference = new VariableDelayChannel();
+        VariableDelayWheel wheel = new VariableDelayWheel();
+        for (int tick = 0; tick < 1000; tick++) {
+            for (int i = random.nextInt(3); i > 0; i--) {
+                Message message = new InitCommunication(null, tick);
+                int delay = random.nextInt(1 + tick / 10);
+                reference.sendDelayed(message, delay);
+                wheel.sendDelayed(message, delay);
+            }
+            assertEquals(reference.ticksUntilNextDelivery(), wheel.ticksUntilNextDelivery());
+            assertEquals(reference.tick(), wheel.tick());
+        }
+    }
+
+    @Test
+    public void testTimingWheelChannelKeepsHeavyTailedDelaysOutsideTheWheel() {
+        Random random = new Random(13);
+        VariableDelayChannel reference = new VariableDelayChannel();
+        VariableDelayWheel wheel = new VariableDelayWheel();
+        for (int step = 0; step < 3000; step++) {
+            for (int i = random.nextInt(3); i > 0; i--) {
+                Message message = new InitCommunication(null, step);
+                // mostly short delays, some beyond the span of the wheel, arriving together with short ones
+                int delay = random.nextInt(10) == 0 ? 1000 + random.nextInt(5000) : random.nextInt(20);
+                reference.sendDelayed(message, delay);
+                wheel.sendDelayed(message, delay);
+            }
+            assertEquals(reference.ticksUntilNextDelivery(), wheel.ticksUntilNextDelivery());
+            int idle = Math.min(wheel.ticksUntilNextDelivery(), random.nextInt(50));
+            reference.skip(idle);
+            wheel.skip(idle);
+            assertEquals(reference.tick(), wheel.tick());
+        }
+        while (reference.ticksUntilNextDelivery() != Integer.MAX_VALUE) {
+            int idle = wheel.ticksUntilNextDelivery();
+            assertEquals(reference.ticksUntilNextDelivery(), idle);
+            reference.skip(idle);
+            wheel.skip(idle);
+            assertEquals(reference.tick(), wheel.tick());
+        }
+        assertEquals(Integer.MAX_VALUE, wheel.ticksUntilNextDelivery());
+
+        TimingWheelChannel slow = new TimingWheelChannel(1 << 30);
+        Message message = new InitCommunication(null, 1);
+        slow.send(message);
+        assertEquals(1 << 30, slow.ticksUntilNextDelivery());
+        slow.skip(1 << 30);
+        assertEquals(Collections.singletonList(message), slow.tick());
+    }
+
+    @Test
+    public void testPerSenderChannelKeepsFifoPerSenderAndMergesFairly() {
+        SilentActor near = new SilentActor();
+        SilentActor far = new SilentActor();
+        PerSenderChannel channel = new PerSenderChannel(sender -> sender == far ? 3 : sender == near ? 0 : 1);
+        List<Message> fromNear = new ArrayList<>();
+        List<Message> fromFar = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            fromNear.add(new InitCommunication(near, i));
+            fromFar.add(new InitCommunication(far, i));
+        }
+
+        channel.send(fromFar.get(0), far);
+        channel.send(fromFar.get(1), far);
+        assertEquals(3, channel.ticksUntilNextDelivery());
+        channel.skip(3);
+        channel.send(fromNear.get(0), near);
+        channel.send(fromNear.get(1), near);
+        channel.send(fromNear.get(2), near);
+        assertEquals(2, channel.getActiveLinks());
+        assertEquals(0, channel.ticksUntilNextDelivery());
+        assertEquals(Arrays.asList(fromFar.get(0), fromNear.get(0), fromFar.get(1), fromNear.get(1), fromNear.get(2)),
+                channel.tick());
+        assertEquals(0, channel.getActiveLinks());
+        assertEquals(Integer.MAX_VALUE, channel.ticksUntilNextDelivery());
+
+        // a message with a shorter delay does not overtake earlier messages of its link
+        channel.send(fromFar.get(2), far);
+        channel.send(fromNear.get(0), null);
+        assertEquals(Arrays.asList(), channel.tick());
+        assertEquals(Arrays.asList(fromNear.get(0)), channel.tick());
+        assertEquals(Arrays.asList(), channel.tick());
+        assertEquals(Arrays.asList(fromFar.get(2)), channel.tick());
+    }
+
+    static class ForwardingActor extends SimulatedActor {
+        SimulatedActor target;
+
+        @Override
+        public void receive(Message message) {
+            target.tell(message);
+        }
+    }
+
+    static class PerSenderActor extends SilentActor {
+        final List<SimulatedActor> senders = new ArrayList<>();
+
+        PerSenderActor() {
+            channel = new PerSenderChannel(sender -> {
+                senders.add(sender);
+                return 0;
+            });
+        }
+    }
+
+    @Test
+    public void testTellPassesActiveActorAsSender() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        PerSenderActor receiver = new PerSenderActor();
+        ForwardingActor forwarder = new ForwardingActor();
+        forwarder.target = receiver;
+        system.spawn(receiver);
+        system.spawn(forwarder);
+
+        receiver.tell(new Stop());
+        forwarder.tell(new Stop());
+        system.runFor(10);
+
+        assertEquals(Arrays.asList(null, forwarder), receiver.senders);
+        assertEquals(2, receiver.received);
+    }
+
+    private static List<String> runScriptedClientsWithLossyStore(long seed) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setChannelFactory(actor -> actor instanceof MessageStore
+                ? new SeededChannel(seed, DelayDistribution.uniform(0, 2), LossModel.bernoulli(0.5), 0.1)
+                : new DeterministicChannel(1));
+        return runScriptedClients(system);
+    }
+
+    @Test
+    public void testSeededChannelMakesLossReproducible() throws UnknownClientException, UnknownMessageException {
+        List<String> first = runScriptedClientsWithLossyStore(1);
+        assertEquals(first, runScriptedClientsWithLossyStore(1));
+        assertEquals(21, first.size());
+        assertTrue(first.stream().anyMatch(entry -> entry.endsWith(" OperationFailed")));
+        assertNotEquals(first, runScriptedClientsWithLossyStore(2));
+    }
+
+    @Test
+    public void testSeededChannelStatistics() {
+        SeededChannel lossless = new SeededChannel(5, DelayDistribution.fixed(2), LossModel.none(), 0);
+        DeterministicChannel reference = new DeterministicChannel(2);
+        for (int i = 0; i < 10; i++) {
+            Message message = new Stop();
+            lossless.send(message);
+            reference.send(message);
+            assertEquals(reference.tick(), lossless.tick());
+        }
+
+        SeededChannel bursty = new SeededChannel(5, DelayDistribution.pareto(1, 1.5, 100),
+                LossModel.gilbertElliott(0.05, 0.3, 0.0, 0.9), 0.2);
+        int delivered = 0;
+        for (int i = 0; i < 10000; i++) {
+            bursty.send(new Stop());
+            delivered += bursty.tick().size();
+        }
+        while (bursty.ticksUntilNextDelivery() != Integer.MAX_VALUE) {
+            delivered += bursty.tick().size();
+        }
+        assertEquals(10000, bursty.getSent());
+        assertTrue(bursty.getLost() > 500 && bursty.getLost() < 3000);
+        assertEquals(bursty.getSent() - bursty.getLost() + bursty.getDuplicated(), delivered);
+    }
+
+    @Test
+    public void testCalendarDeliveryMatchesChannelDelivery() throws UnknownClientException, UnknownMessageException {
+        List<String> channels = runScriptedClients(new SimulatedActorSystem());
+
+        SimulatedActorSystem calendarSystem = new SimulatedActorSystem();
+        calendarSystem.setCalendarDelivery(true);
+        assertEquals(channels, runScriptedClients(calendarSystem));
+
+        SimulatedActorSystem activeCalendarSystem = new SimulatedActorSystem();
+        activeCalendarSystem.setCalendarDelivery(true);
+        activeCalendarSystem.setActiveScheduling(true);
+        activeCalendarSystem.setTimeSkipping(true);
+        assertEquals(channels, runScriptedClients(activeCalendarSystem));
+    }
+
+    static class SlowLinkActor extends CountingActor {
+        SlowLinkActor() {
+            channel = new DeterministicChannel(20);
+        }
+    }
+
+    private static SlowLinkActor runSlowLink(boolean calendarDelivery) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setActiveScheduling(true);
+        system.setCalendarDelivery(calendarDelivery);
+        SlowLinkActor actor = new SlowLinkActor();
+        system.spawn(actor);
+        actor.tell(new Stop());
+        while (actor.receivedMessages.isEmpty()) {
+            system.tick();
+        }
+        return actor;
+    }
+
+    @Test
+    public void testCalendarDeliveryParksActorsWithMessagesInTransit() throws UnknownClientException, UnknownMessageException {
+        SlowLinkActor viaChannel = runSlowLink(false);
+        SlowLinkActor viaCalendar = runSlowLink(true);
+
+        assertEquals(viaChannel.getTimeSinceSystemStart(), viaCalendar.getTimeSinceSystemStart());
+        assertEquals(viaChannel.ticks, viaChannel.getTimeSinceSystemStart());
+        // the first tick after spawning and the ticks taking, processing and receiving the message
+        assertEquals(3 + new Stop().getDuration(), viaCalendar.ticks);
+        assertTrue(viaChannel.ticks > 20);
+    }
+
+
+    private static List<Worker> unspawnedWorkers(int count) {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Worker worker = new Worker(null, null, null);
+            worker.setId(i + 1);
+            workers.add(worker);
+        }
+        return workers;
+    }
+
+    @Test
+    public void testRandomHashRoutingMatchesOriginalScheme() {
+        RandomHashRoutingStrategy strategy = new RandomHashRoutingStrategy();
+        Random ids = new Random(3);
+        for (int count = 1; count <= 7; count++) {
+            List<Worker> workers = unspawnedWorkers(count);
+            strategy.workersChanged(workers);
+            for (int i = 0; i < 1000; i++) {
+                long communicationId = i < 10 ? i - 5 : ids.nextLong();
+                int rnd = new Random(communicationId).nextInt();
+                int index = (((rnd % count) + count) % count);
+                assertSame(workers.get(index), strategy.selectWorker(communicationId, workers));
+            }
+        }
+    }
+
+    @Test
+    public void testConsistentHashRoutingOnlyMovesSessionsOfRemovedWorker() {
+        ConsistentHashRoutingStrategy strategy = new ConsistentHashRoutingStrategy(64);
+        List<Worker> workers = unspawnedWorkers(5);
+        strategy.workersChanged(workers);
+        Map<Long, Worker> before = new HashMap<>();
+        int[] perWorker = new int[workers.size()];
+        for (long id = 0; id < 5000; id++) {
+            Worker worker = strategy.selectWorker(id, workers);
+            before.put(id, worker);
+            perWorker[workers.indexOf(worker)]++;
+        }
+        for (int count : perWorker) {
+            assertTrue(count > 500 && count < 1500);
+        }
+
+        Worker removed = workers.remove(2);
+        strategy.workersChanged(workers);
+        for (long id = 0; id < 5000; id++) {
+            if (before.get(id) != removed) {
+                assertSame(before.get(id), strategy.selectWorker(id, workers));
+            } else {
+                assertNotSame(removed, strategy.selectWorker(id, workers));
+            }
+        }
+    }
+
+    /**
+     * Client doing a number of publish operations one after another, recording the latency of each.
+     */
+    static class SessionClient extends SimulatedActor {
+        private final List<Integer> latencies;
+        private final long communicationId;
+        private final int operations;
+        private int done = 0;
+        private int sentAt;
+        private SimulatedActor worker;
+
+        SessionClient(List<Integer> latencies, long communicationId, int operations) {
+            this.latencies = latencies;
+            this.communicationId = communicationId;
+            this.operations = operations;
+        }
+
+        @Override
+        public void receive(Message message) {
+            if (message instanceof FinishAck)
+                return;
+            if (message instanceof InitAck) {
+                worker = ((InitAck) message).worker;
+            } else {
+                latencies.add(getTimeSinceSystemStart() - sentAt);
+                done++;
+            }
+            if (done < operations) {
+                sentAt = getTimeSinceSystemStart();
+                worker.tell(new Publish(new UserMessage("c" + communicationId, "m" + done), communicationId));
+            } else {
+                worker.tell(new FinishCommunication(communicationId));
+            }
+        }
+    }
+
+    /**
+     * Runs a skewed mix of sessions, where every tenth session does many more operations than the others.
+     *
+     * @return The sorted latencies of all operations.
+     */
+    private static List<Integer> runSkewedSessions(WorkerRoutingStrategy strategy) throws UnknownClientException, UnknownMessageException {
+        return runSkewedSessions(strategy, 0, new ArrayList<>());
+    }
+
+    /**
+     * Runs the skewed mix of sessions in phased ticks with the given parallelism.
+     *
+     * @param routes Receives the ID of the worker of each session in the order the sessions were started.
+     * @return The sorted latencies of all operations.
+     */
+    private static List<Integer> runSkewedSessions(WorkerRoutingStrategy strategy, int parallelism, List<Long> routes)
+            throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setParallelism(parallelism);
+        Dispatcher dispatcher = new Dispatcher(system, 4, strategy);
+        system.spawn(dispatcher);
+        List<Integer> latencies = Collections.synchronizedList(new ArrayList<>());
+        List<SessionClient> clients = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 400; i++) {
+            SessionClient client = new SessionClient(latencies, random.nextLong(), random.nextInt(10) == 0 ? 60 : 3);
+            system.spawn(client);
+            clients.add(client);
+            dispatcher.tell(new InitCommunication(client, client.communicationId));
+            system.runFor(14);
+        }
+        system.runFor(5000);
+        system.setParallelism(0);
+        for (SessionClient client : clients) {
+            routes.add(client.worker.getId());
+        }
+        List<Integer> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    @Test
+    public void testLoadAwareRoutingLowersTailLatencyOfSkewedSessions() throws UnknownClientException, UnknownMessageException {
+        List<Integer> randomHash = runSkewedSessions(new RandomHashRoutingStrategy());
+        List<Integer> leastSessions = runSkewedSessions(new LeastOutstandingSessionsRoutingStrategy());
+        List<Integer> powerOfTwo = runSkewedSessions(new PowerOfTwoChoicesRoutingStrategy(7));
+        List<Integer> boundedHash = runSkewedSessions(new ConsistentHashRoutingStrategy(64, 1.25));
+
+        assertEquals(randomHash.size(), leastSessions.size());
+        assertEquals(randomHash.size(), powerOfTwo.size());
+        assertEquals(randomHash.size(), boundedHash.size());
+        assertEquals(powerOfTwo, runSkewedSessions(new PowerOfTwoChoicesRoutingStrategy(7)));
+        int p99 = randomHash.size() * 99 / 100;
+        assertTrue(leastSessions.get(p99) < randomHash.get(p99));
+        assertTrue(powerOfTwo.get(p99) < randomHash.get(p99));
+        assertTrue(boundedHash.get(p99) < randomHash.get(p99));
+    }
+
+    @Test
+    public void testLoadAwareRoutingDoesNotDependOnParallelism() throws UnknownClientException, UnknownMessageException {
+        List<Supplier<WorkerRoutingStrategy>> strategies = Arrays.asList(
+                LeastOutstandingSessionsRoutingStrategy::new,
+                () -> new PowerOfTwoChoicesRoutingStrategy(7),
+                () -> new ConsistentHashRoutingStrategy(64, 1.25));
+        for (Supplier<WorkerRoutingStrategy> strategy : strategies) {
+            List<Long> sequentialRoutes = new ArrayList<>();
+            List<Integer> sequential = runSkewedSessions(strategy.get(), 1, sequentialRoutes);
+            List<Long> parallelRoutes = new ArrayList<>();
+            List<Integer> parallel = runSkewedSessions(strategy.get(), 4, parallelRoutes);
+
+            assertEquals(400, sequentialRoutes.size());
+            assertEquals(sequentialRoutes, parallelRoutes);
+            assertEquals(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void testLeastOutstandingSessionsRoutingSpreadsSessions() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        Dispatcher dispatcher = new Dispatcher(system, 3, new LeastOutstandingSessionsRoutingStrategy());
+        system.spawn(dispatcher);
+        TestClient client = new TestClient();
+        system.spawn(client);
+        for (int i = 0; i < 9; i++) {
+            dispatcher.tell(new InitCommunication(client, i));
+            system.runFor(5);
+        }
+        system.runFor(10);
+
+        assertEquals(9, client.receivedMessages.size());
+        for (SimulatedActor actor : system.getActors()) {
+            if (actor instanceof Worker) {
+                assertEquals(3, ((Worker) actor).getOpenSessions());
+                assertEquals(0, actor.getMailboxDepth());
+            }
+        }
+    }
+
+    /**
+     * Runs sessions of five operations arriving at a rate, which ramps up and down again.
+     *
+     * @return The dispatcher after all sessions have finished.
+     */
+    private static Dispatcher runLoadRamp(SimulatedActorSystem system, Dispatcher dispatcher, List<Integer> peakLatencies)
+            throws UnknownClientException, UnknownMessageException {
+        system.spawn(dispatcher);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int gap : new int[]{60, 30, 10, 30, 60}) {
+            List<Integer> latencies = gap == 10 ? peakLatencies : new ArrayList<>();
+            for (int i = 0; i < 60; i++) {
+                SessionClient client = new SessionClient(latencies, random.nextLong(), 5);
+                system.spawn(client);
+                dispatcher.tell(new InitCommunication(client, client.communicationId));
+                system.runFor(gap);
+            }
+        }
+        system.runFor(1000);
+        Collections.sort(peakLatencies);
+        return dispatcher;
+    }
+
+    @Test
+    public void testAutoscalingHoldsLatencyUnderLoadRamp() throws UnknownClientException, UnknownMessageException {
+        List<Integer> fixedLatencies = new ArrayList<>();
+        SimulatedActorSystem fixedSystem = new SimulatedActorSystem();
+        runLoadRamp(fixedSystem, new Dispatcher(fixedSystem, 1), fixedLatencies);
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        Dispatcher dispatcher = new Dispatcher(system, 1);
+        dispatcher.setAutoscalingPolicy(new AutoscalingPolicy(1, 6));
+        List<Integer> scaledLatencies = new ArrayList<>();
+        runLoadRamp(system, dispatcher, scaledLatencies);
+
+        assertEquals(300, fixedLatencies.size());
+        assertEquals(300, scaledLatencies.size());
+        assertTrue(scaledLatencies.get(297) * 5 < fixedLatencies.get(297));
+        assertTrue(dispatcher.getScaleUps() >= 3);
+        assertTrue(dispatcher.getScaleDowns() >= 2);
+        assertEquals(dispatcher.getScaleDowns(), dispatcher.getRetiredWorkers());
+        assertEquals(0, dispatcher.getRetiringWorkers());
+        assertEquals(1 + dispatcher.getScaleUps() - dispatcher.getScaleDowns(), dispatcher.getActiveWorkers());
+        int workers = 0;
+        for (SimulatedActor actor : system.getActors()) {
+            if (actor instanceof Worker) {
+                workers++;
+            }
+        }
+        assertEquals(dispatcher.getActiveWorkers(), workers);
+
+        dispatcher.tell(new Stop());
+        system.runFor(50);
+        assertFalse(system.getActors().contains(dispatcher));
+    }
+
+    @Test
+    public void testAutoscalingRetiresWorkersAfterSessionsStopArriving() throws UnknownClientException, UnknownMessageException {
+        for (int mode = 0; mode < 3; mode++) {
+            SimulatedActorSystem system = new SimulatedActorSystem();
+            system.setTimeSkipping(mode > 0);
+            system.setActiveScheduling(mode > 1);
+            Dispatcher dispatcher = new Dispatcher(system, 1);
+            dispatcher.setAutoscalingPolicy(new AutoscalingPolicy(1, 4));
+            system.spawn(dispatcher);
+            List<Integer> latencies = new ArrayList<>();
+            SplittableRandom random = new SplittableRandom(42);
+            for (int i = 0; i < 40; i++) {
+                SessionClient client = new SessionClient(latencies, random.nextLong(), 20);
+                system.spawn(client);
+                dispatcher.tell(new InitCommunication(client, client.communicationId));
+                system.runFor(2);
+            }
+            int peak = dispatcher.getActiveWorkers();
+            assertTrue(peak > 1);
+
+            // no communication arrives at the dispatcher after the last one has been set up
+            system.runFor(2000);
+            assertEquals(800, latencies.size());
+            assertEquals(1, dispatcher.getActiveWorkers());
+            assertEquals(dispatcher.getScaleUps(), dispatcher.getScaleDowns());
+            assertEquals(dispatcher.getScaleDowns(), dispatcher.getRetiredWorkers());
+            assertEquals(0, dispatcher.getRetiringWorkers());
+        }
+    }
+
+    @Test
+    public void testRetiringWorkerFinishesOngoingCommunications() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        TestClient client = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(client);
+        Worker worker = new Worker(dispatcher, new TestClient(), system);
+        system.spawn(worker);
+
+        worker.tell(new InitCommunication(client, 1));
+        // the second communication has been forwarded before retiring but arrives afterwards
+        worker.tell(new Retire(2));
+        system.runFor(20);
+        assertTrue(dispatcher.receivedMessages.isEmpty());
+
+        worker.tell(new InitCommunication(client, 2));
+        worker.tell(new FinishCommunication(1));
+        system.runFor(20);
+        assertTrue(dispatcher.receivedMessages.isEmpty());
+        assertEquals(1, worker.getOpenSessions());
+
+        worker.tell(new FinishCommunication(2));
+        system.runFor(20);
+        assertEquals(1, dispatcher.receivedMessages.size());
+        assertSame(worker, ((RetireAck) dispatcher.receivedMessages.remove()).sender);
+        assertEquals(4, client.receivedMessages.size());
+    }
+
+    /**
+     * Sets up one communication per client at the same time.
+     *
+     * @return Number of ticks until all clients have received their InitAck.
+     */
+    private static int runInitCommunicationStorm(int numberOfShards) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        Dispatcher dispatcher = new Dispatcher(system, 16, numberOfShards);
+        system.spawn(dispatcher);
+        List<TestClient> clients = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            TestClient client = new TestClient();
+            system.spawn(client);
+            clients.add(client);
+            dispatcher.shardFor(i).tell(new InitCommunication(client, i));
+        }
+        int start = system.getCurrentTime();
+        for (TestClient client : clients) {
+            while (client.receivedMessages.isEmpty()) {
+                system.tick();
+            }
+            assertTrue(client.receivedMessages.remove() instanceof InitAck);
+        }
+        return system.getCurrentTime() - start;
+    }
+
+    @Test
+    public void testShardsRouteIndependentlyOfParallelism() throws UnknownClientException, UnknownMessageException {
+        List<Supplier<WorkerRoutingStrategy>> strategies = Arrays.asList(
+                () -> new PowerOfTwoChoicesRoutingStrategy(7),
+                () -> new ConsistentHashRoutingStrategy(64, 1.25));
+        for (Supplier<WorkerRoutingStrategy> strategy : strategies) {
+            List<Long> sequential = runShardedRouting(strategy.get(), 1);
+            assertEquals(200, sequential.size());
+            assertEquals(sequential, runShardedRouting(strategy.get(), 4));
+        }
+    }
+
+    /**
+     * Sets up 200 communications via four shards sharing eight workers, ten at a time.
+     *
+     * @param strategy The strategy of the dispatcher, from which the other shards take theirs.
+     * @return The IDs of the workers of the communications.
+     */
+    private static List<Long> runShardedRouting(WorkerRoutingStrategy strategy, int parallelism) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setParallelism(parallelism);
+        Dispatcher dispatcher = new Dispatcher(system, 8, strategy, 4);
+        system.spawn(dispatcher);
+        List<TestClient> clients = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            TestClient client = new TestClient();
+            system.spawn(client);
+            clients.add(client);
+            dispatcher.shardFor(i).tell(new InitCommunication(client, i));
+            if (i % 10 == 9) {
+                system.runFor(3);
+            }
+        }
+        system.runFor(500);
+        system.setParallelism(0);
+        List<Long> routes = new ArrayList<>();
+        for (TestClient client : clients) {
+            routes.add(((InitAck) client.receivedMessages.remove()).worker.getId());
+        }
+        return routes;
+    }
+
+    @Test
+    public void testShardedDispatcherScalesSessionSetup() throws UnknownClientException, UnknownMessageException {
+        int oneShard = runInitCommunicationStorm(1);
+        int twoShards = runInitCommunicationStorm(2);
+        int fourShards = runInitCommunicationStorm(4);
+
+        // apart from the constant latency of a single setup, the throughput grows linearly
+        assertTrue(2 * twoShards < oneShard * 21 / 20);
+        assertTrue(4 * fourShards < oneShard * 11 / 10);
+    }
+
+    @Test
+    public void testShardedDispatcherStopsAllShards() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        Dispatcher dispatcher = new Dispatcher(system, 2, 3);
+        try {
+            dispatcher.shardFor(0);
+            fail("Shard of a dispatcher, which has not been spawned");
+        } catch (IllegalStateException expected) {
+        }
+        system.spawn(dispatcher);
+        // dispatcher, two other shards, two workers and the message store
+        assertEquals(6, system.getActors().size());
+        assertSame(dispatcher, dispatcher.shardFor(3));
+        Dispatcher shard = dispatcher.shardFor(-1);
+        assertNotSame(dispatcher, shard);
+        assertSame(shard, shard.shardFor(2));
+        assertEquals(3, shard.getNumberOfShards());
+
+        TestClient client = new TestClient();
+        system.spawn(client);
+        shard.tell(new InitCommunication(client, 2));
+        system.runFor(20);
+        InitAck initAck = (InitAck) client.receivedMessages.remove();
+
+        dispatcher.tell(new Stop());
+        // the shard has switched to stopping mode, but the workers have not been stopped yet
+        system.runFor(8);
+        assertTrue(system.getActors().contains(initAck.worker));
+        shard.tell(new InitCommunication(client, 5));
+        system.runFor(50);
+        assertTrue(client.receivedMessages.remove() instanceof OperationFailed);
+        assertEquals(Collections.singletonList(client), system.getActors());
+        assertFalse(system.getActors().contains(initAck.worker));
+    }
+
+    @Test
+    public void testTokenBucket() {
+        TokenBucket bucket = new TokenBucket(3, 0.5, 10);
+        assertTrue(bucket.tryAcquire(2, 10));
+        assertTrue(bucket.tryAcquire(1, 10));
+        assertFalse(bucket.tryAcquire(1, 10));
+        assertEquals(2, bucket.ticksUntilAvailable(1, 10));
+        assertEquals(1, bucket.ticksUntilAvailable(1, 11));
+        assertTrue(bucket.tryAcquire(1, 12));
+        assertFalse(bucket.isFull(12));
+        // refilling stops at the capacity
+        assertTrue(bucket.isFull(100));
+        assertTrue(bucket.tryAcquire(3, 100));
+        assertFalse(bucket.tryAcquire(0.5, 100));
+    }
+
+    /**
+     * @return Number of different messages sent to the actor, not counting resent ones.
+     */
+    private static int distinctMessages(SimulatedActor actor) {
+        Set<Message> messages = Collections.newSetFromMap(new IdentityHashMap<>());
+        messages.addAll(actor.getMessageLog());
+        return messages.size();
+    }
+
+    @Test
+    public void testRateLimitedWorkerThrottlesWithoutStoreRoundTrip() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        MessageStore store = new MessageStore();
+        TestClient client = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(store);
+        system.spawn(client);
+        RateLimiter rateLimiter = new RateLimiter(3, 0.01).cost(SearchMessages.class, 3);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setRateLimiter(rateLimiter);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(client, 1));
+        system.runFor(10);
+        client.receivedMessages.clear();
+
+        for (int i = 0; i < 10; i++) {
+            worker.tell(new Like("alice", 1, 0));
+        }
+        system.runFor(60);
+        assertEquals(3, distinctMessages(store));
+        int throttled = 0;
+        for (Message reply : client.receivedMessages) {
+            if (reply instanceof Throttled) {
+                throttled++;
+                assertTrue(((Throttled) reply).retryAfter > 0);
+            }
+        }
+        assertEquals(7, throttled);
+        assertEquals(3, rateLimiter.getAdmitted());
+        assertEquals(7, rateLimiter.getThrottled());
+
+        // a search costs the whole burst, which has been refilled after 300 ticks
+        client.receivedMessages.clear();
+        system.runFor(300);
+        worker.tell(new SearchMessages("x", 1));
+        worker.tell(new SearchMessages("x", 1));
+        system.runFor(30);
+        assertEquals(4, distinctMessages(store));
+        assertEquals(1, client.receivedMessages.stream().filter(m -> m instanceof Throttled).count());
+
+        // finishing is never limited
+        worker.tell(new FinishCommunication(1));
+        system.runFor(10);
+        assertTrue(client.receivedMessages.stream().anyMatch(m -> m instanceof FinishAck));
+    }
+
+    @Test
+    public void testRateLimiterLimitsClientNameAcrossCommunications() {
+        RateLimiter rateLimiter = new RateLimiter(10, 1).perClientName(4, 0.5);
+        int admitted = 0;
+        for (long communicationId = 0; communicationId < 4; communicationId++) {
+            for (int i = 0; i < 3; i++) {
+                if (rateLimiter.tryAdmit(new Like("bob", communicationId, 0), 0) == 0) {
+                    admitted++;
+                }
+            }
+        }
+        assertEquals(4, admitted);
+        assertEquals(2, rateLimiter.tryAdmit(new Dislike("bob", 5, 0), 0));
+        assertEquals(0, rateLimiter.tryAdmit(new Dislike("carol", 5, 0), 0));
+        // requests without client name only use the bucket of their communication
+        assertEquals(0, rateLimiter.tryAdmit(new SearchMessages("bob", 6), 0));
+        assertEquals(0, rateLimiter.tryAdmit(new Dislike("bob", 7, 0), 2));
+    }
+
+    @Test
+    public void testWorkerExpiresIdleSessions() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        TestClient active = new TestClient();
+        TestClient vanished = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(active);
+        system.spawn(vanished);
+        Worker worker = new Worker(dispatcher, new MessageStore(), system);
+        worker.setSessionTimeout(30);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(active, 1));
+        worker.tell(new InitCommunication(vanished, 2));
+        for (int i = 0; i < 10; i++) {
+            system.runFor(10);
+            worker.tell(new RetrieveMessages("alice", 1));
+        }
+        system.runFor(10);
+
+        assertEquals(1, worker.getOpenSessions());
+        assertEquals(1, worker.getExpiredSessions());
+        assertEquals(0, worker.getFinishedSessions());
+        assertTrue(vanished.receivedMessages.stream().anyMatch(m -> m instanceof SessionExpired));
+        assertFalse(active.receivedMessages.stream().anyMatch(m -> m instanceof SessionExpired));
+
+        worker.tell(new FinishCommunication(1));
+        system.runFor(10);
+        assertEquals(0, worker.getOpenSessions());
+        assertEquals(1, worker.getFinishedSessions());
+    }
+
+    @Test
+    public void testWorkerExpiresSessionsWithoutFurtherTraffic() throws UnknownClientException, UnknownMessageException {
+        for (int mode = 0; mode < 3; mode++) {
+            SimulatedActorSystem system = new SimulatedActorSystem();
+            system.setTimeSkipping(mode > 0);
+            system.setActiveScheduling(mode > 1);
+            TestClient dispatcher = new TestClient();
+            TestClient client = new TestClient();
+            system.spawn(dispatcher);
+            system.spawn(client);
+            Worker worker = new Worker(dispatcher, new MessageStore(), system);
+            worker.setSessionTimeout(10);
+            system.spawn(worker);
+            worker.tell(new InitCommunication(client, 1));
+            worker.tell(new Retire(1));
+            system.runFor(10);
+            assertEquals(1, worker.getOpenSessions());
+
+            // no message arrives at the worker after the session has been opened
+            system.runFor(10);
+            assertEquals(0, worker.getOpenSessions());
+            assertEquals(1, worker.getExpiredSessions());
+            assertTrue(client.receivedMessages.stream().anyMatch(m -> m instanceof SessionExpired));
+            assertTrue(dispatcher.receivedMessages.stream().anyMatch(m -> m instanceof RetireAck));
+        }
+    }
+
+    @Test
+    public void testSessionTimersExpireSessionsAtTheSameTicks() throws UnknownClientException, UnknownMessageException {
+        List<String> ticking = runExpiringSessions(false, false);
+        assertEquals(3, ticking.size());
+        assertEquals(ticking, runExpiringSessions(true, false));
+        assertEquals(ticking, runExpiringSessions(false, true));
+        assertEquals(ticking, runExpiringSessions(true, true));
+    }
+
+    /**
+     * Opens three sessions, of which one is used once more, and records when each client learns that its
+     * session expired, as no further message arrives.
+     */
+    private List<String> runExpiringSessions(boolean sessionTimers, boolean activeScheduling) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setTimeSkipping(activeScheduling);
+        system.setActiveScheduling(activeScheduling);
+        List<String> expiries = new ArrayList<>();
+        TestClient dispatcher = new TestClient();
+        system.spawn(dispatcher);
+        MessageStore store = new MessageStore();
+        system.spawn(store);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setSessionTimeout(20);
+        worker.setSessionTimers(sessionTimers);
+        system.spawn(worker);
+        for (int i = 0; i < 3; i++) {
+            long communicationId = i;
+            SimulatedActor client = new SimulatedActor() {
+                @Override
+                public void receive(Message message) {
+                    if (message instanceof SessionExpired) {
+                        expiries.add(system.getCurrentTime() + " " + communicationId);
+                    }
+                }
+            };
+            system.spawn(client);
+            worker.tell(new InitCommunication(client, i));
+            system.runFor(7);
+            if (i == 1) {
+                worker.tell(new RetrieveMessages("alice", 0));
+            }
+        }
+        system.runFor(200);
+        assertEquals(0, worker.getOpenSessions());
+        assertEquals(0, system.getPendingTimers());
+        return expiries;
+    }
+
+    @Test
+    public void testWorkerExpiresSessionsAfterLongIdlePeriod() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setTimeSkipping(true);
+        TestClient dispatcher = new TestClient();
+        TestClient client = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(client);
+        Worker worker = new Worker(dispatcher, new MessageStore(), system);
+        worker.setSessionTimeout(5);
+        system.spawn(worker);
+        for (int i = 0; i < 100; i++) {
+            worker.tell(new InitCommunication(client, i));
+        }
+        // the sessions are expired when they are due, although most of the idle period is skipped
+        system.runFor(10000);
+        assertEquals(0, worker.getOpenSessions());
+        assertEquals(100, worker.getExpiredSessions());
+        worker.tell(new InitCommunication(client, 100));
+        system.runFor(6);
+        assertEquals(1, worker.getOpenSessions());
+        system.runFor(10);
+        assertEquals(0, worker.getOpenSessions());
+        assertEquals(101, worker.getExpiredSessions());
+    }
+
+    @Test
+    public void testWorkerSessionTableManyCommunications() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        TestClient client = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(client);
+        Worker worker = new Worker(dispatcher, new MessageStore(), system);
+        system.spawn(worker);
+        Random random = new Random(17);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long id = random.nextInt(4) == 0 ? -i : random.nextLong();
+            ids.add(id);
+            worker.tell(new InitCommunication(client, id));
+        }
+        system.runFor(10000);
+        assertEquals(2000, worker.getOpenSessions());
+
+        Collections.shuffle(ids, random);
+        for (int i = 0; i < 1900; i++) {
+            worker.tell(new FinishCommunication(ids.get(i)));
+        }
+        system.runFor(10000);
+        assertEquals(100, worker.getOpenSessions());
+        for (int i = 1900; i < 2000; i++) {
+            worker.tell(new FinishCommunication(ids.get(i)));
+        }
+        system.runFor(1000);
+        assertEquals(0, worker.getOpenSessions());
+        assertEquals(2000, worker.getFinishedSessions());
+    }
+
+    private static class HandlerClient extends SimulatedActor {
+        final List<String> handled = new ArrayList<>();
+
+        HandlerClient() {
+            registerHandler(ClientMessage.class, message -> handled.add("client"));
+            registerHandler(Message.class, message -> handled.add("message"));
+        }
+
+        void registerLikeHandler() {
+            registerHandler(Like.class, message -> handled.add("like " + message.messageId));
+        }
+
+        @Override
+        public void receive(Message message) throws UnknownClientException, UnknownMessageException {
+            if (!dispatch(message)) {
+                handled.add("none");
+            }
+        }
+    }
+
+    @Test
+    public void testDispatchUsesHandlerOfClosestType() throws UnknownClientException, UnknownMessageException {
+        HandlerClient client = new HandlerClient();
+        client.receive(new Like("a", 1, 7));
+        client.receive(new StopAck(null));
+        client.registerLikeHandler();
+        client.receive(new Like("a", 1, 7));
+        client.receive(new Dislike("a", 1, 7));
+        client.receive(null);
+        assertEquals(Arrays.asList("client", "message", "like 7", "client", "none"), client.handled);
+    }
+
+    @Test
+    public void testWorkerRejectsUnknownMessageType() {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        system.spawn(dispatcher);
+        Worker worker = new Worker(dispatcher, new MessageStore(), system);
+        system.spawn(worker);
+        try {
+            worker.receive(new StopAck(dispatcher));
+            fail("Expected UnknownMessageException");
+        } catch (UnknownMessageException e) {
+            // expected
+        } catch (UnknownClientException e) {
+            fail("Expected UnknownMessageException");
+        }
+    }
+
+    @Test
+    public void testStoreBatchRepliesReachClientsOfOperations() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        MessageStore store = new MessageStore();
+        TestClient alice = new TestClient();
+        TestClient bob = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(store);
+        system.spawn(alice);
+        system.spawn(bob);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setStoreBatching(3, 20);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(alice, 1));
+        worker.tell(new InitCommunication(bob, 2));
+        system.runFor(20);
+        alice.receivedMessages.clear();
+        bob.receivedMessages.clear();
+
+        worker.tell(new Publish(new UserMessage("alice", "hello"), 1));
+        worker.tell(new Like("bob", 2, 42));
+        system.runFor(10);
+        // the batch waits for a third operation
+        assertEquals(0, distinctMessages(store));
+        worker.tell(new Report("alice", 1, "bob"));
+        system.runFor(20);
+        assertEquals(1, distinctMessages(store));
+        assertEquals(1, worker.getStoreRequests());
+
+        assertEquals(2, alice.receivedMessages.size());
+        for (Message reply : alice.receivedMessages) {
+            assertTrue(reply instanceof OperationAck);
+            assertEquals(Long.valueOf(1), ((OperationAck) reply).communicationId);
+        }
+        assertEquals(1, bob.receivedMessages.size());
+        OperationFailed failed = (OperationFailed) bob.receivedMessages.poll();
+        assertEquals(Long.valueOf(2), failed.communicationId);
+    }
+
+    @Test
+    public void testStoreBatchingRaisesStoreThroughput() throws UnknownClientException, UnknownMessageException {
+        int unbatched = runLikeFlood(1, 0);
+        int batched = runLikeFlood(16, 48);
+        assertEquals(800, batched);
+        assertTrue(batched >= 3 * unbatched);
+    }
+
+    /**
+     * Floods four workers sharing one message store with likes and returns the number of likes
+     * stored within 700 ticks, i.e. the number of OperationAck replies received by the clients.
+     */
+    private int runLikeFlood(int maxBatchSize, int maxBatchDelay) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        MessageStore store = new MessageStore();
+        TestClient publisher = new TestClient();
+        system.spawn(store);
+        system.spawn(publisher);
+        UpdateMessageStore publish = new UpdateMessageStore(new UserMessage("author", "message"), 0);
+        publish.storeClient = publisher;
+        store.tell(publish);
+        system.runFor(5);
+        List<TestClient> clients = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            TestClient client = new TestClient();
+            system.spawn(client);
+            clients.add(client);
+            Worker worker = new Worker(client, store, system);
+            worker.setStoreBatching(maxBatchSize, maxBatchDelay);
+            system.spawn(worker);
+            worker.tell(new InitCommunication(client, w));
+            system.runFor(1);
+            for (int i = 0; i < 200; i++) {
+                worker.tell(new Like("client" + w + "_" + i, w, 0));
+            }
+        }
+        system.runFor(700);
+        int acks = 0;
+        for (int w = 0; w < 4; w++) {
+            for (Message reply : clients.get(w).receivedMessages) {
+                if (reply instanceof OperationAck) {
+                    assertEquals(Long.valueOf(w), ((OperationAck) reply).communicationId);
+                    acks++;
+                }
+            }
+        }
+        return acks;
+    }
+
+    @Test
+    public void testReadCacheAnswersRepeatedReadsUntilInvalidated() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        MessageStore store = new MessageStore();
+        TestClient client = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(store);
+        system.spawn(client);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setReadCache(4);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(client, 1));
+        worker.tell(new Publish(new UserMessage("alice", "hello"), 1));
+        system.runFor(30);
+        client.receivedMessages.clear();
+
+        worker.tell(new RetrieveMessages("alice", 1));
+        system.runFor(20);
+        worker.tell(new RetrieveMessages("alice", 1));
+        worker.tell(new SearchMessages("hell", 1));
+        system.runFor(20);
+        worker.tell(new SearchMessages("hell", 1));
+        system.runFor(20);
+        assertEquals(2, worker.getReadCacheHits());
+        assertEquals(2, worker.getReadCacheMisses());
+        assertEquals(4, distinctMessages(store));
+        assertEquals(4, client.receivedMessages.size());
+        for (Message reply : client.receivedMessages) {
+            assertEquals(1, ((FoundMessages) reply).messages.size());
+        }
+        client.receivedMessages.clear();
+
+        // publishing invalidates the messages of the author and all search results
+        worker.tell(new Publish(new UserMessage("alice", "hello2"), 1));
+        system.runFor(30);
+        worker.tell(new RetrieveMessages("alice", 1));
+        worker.tell(new SearchMessages("hell", 1));
+        system.runFor(30);
+        assertEquals(2, worker.getReadCacheHits());
+        assertEquals(4, worker.getReadCacheMisses());
+        assertTrue(client.receivedMessages.poll() instanceof OperationAck);
+        assertEquals(2, ((FoundMessages) client.receivedMessages.poll()).messages.size());
+        assertEquals(2, ((FoundMessages) client.receivedMessages.poll()).messages.size());
+    }
+
+    @Test
+    public void testReadCacheRemovesStoreLoadOfPopularAuthors() throws UnknownClientException, UnknownMessageException {
+        int[] uncached = runPopularAuthorReads(0);
+        int[] cached = runPopularAuthorReads(32);
+        // each run sends 400 requests, 10 percent of them publish
+        assertTrue(cached[1] * 2 > cached[0]);
+        assertTrue(cached[2] * 2 < uncached[2]);
+    }
+
+    /**
+     * Lets four workers retrieve the messages of 20 authors with Zipf-distributed popularity,
+     * while every tenth request publishes a message of a random author.
+     *
+     * @return read cache hits, read cache misses and the number of distinct messages received by the store
+     */
+    private int[] runPopularAuthorReads(int cacheCapacity) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        MessageStore store = new MessageStore();
+        TestClient publisher = new TestClient();
+        system.spawn(store);
+        system.spawn(publisher);
+        for (int author = 0; author < 20; author++) {
+            UpdateMessageStore publish = new UpdateMessageStore(new UserMessage("author" + author, "message"), 0);
+            publish.storeClient = publisher;
+            store.tell(publish);
+        }
+        system.runFor(100);
+        int before = distinctMessages(store);
+        List<Worker> workers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            TestClient client = new TestClient();
+            system.spawn(client);
+            Worker worker = new Worker(client, store, system);
+            worker.setReadCache(cacheCapacity);
+            system.spawn(worker);
+            workers.add(worker);
+            worker.tell(new InitCommunication(client, w));
+        }
+        system.runFor(10);
+        Random random = new Random(5);
+        double[] popularity = new double[20];
+        double total = 0;
+        for (int author = 0; author < 20; author++) {
+            total += 1.0 / (author + 1);
+            popularity[author] = total;
+        }
+        int requests = 0;
+        for (int round = 0; round < 100; round++) {
+            for (int w = 0; w < 4; w++) {
+                requests++;
+                double x = random.nextDouble() * total;
+                int author = 0;
+                while (popularity[author] < x) {
+                    author++;
+                }
+                if (requests % 10 == 0) {
+                    workers.get(w).tell(new Publish(new UserMessage("author" + random.nextInt(20), "m" + requests), w));
+                } else {
+                    workers.get(w).tell(new RetrieveMessages("author" + author, w));
+                }
+            }
+            system.runFor(48);
+        }
+        system.runFor(100);
+        int hits = 0;
+        int misses = 0;
+        for (Worker worker : workers) {
+            hits += worker.getReadCacheHits();
+            misses += worker.getReadCacheMisses();
+        }
+        return new int[]{hits, misses, distinctMessages(store) - before};
+    }
+
+    @Test
+    public void testPooledHelpersAreReusedWithoutChangingReplies() throws UnknownClientException, UnknownMessageException {
+        List<String> unpooledReplies = new ArrayList<>();
+        Worker unpooled = runSequentialOperations(0, unpooledReplies);
+        List<String> pooledReplies = new ArrayList<>();
+        Worker pooled = runSequentialOperations(2, pooledReplies);
+
+        assertEquals(40, unpooledReplies.size());
+        assertEquals(unpooledReplies, pooledReplies);
+        assertEquals(40, unpooled.getSpawnedHelpers());
+        assertEquals(0, unpooled.getReusedHelpers());
+        assertTrue(pooled.getSpawnedHelpers() <= 2);
+        assertEquals(40, pooled.getSpawnedHelpers() + pooled.getReusedHelpers());
+    }
+
+    /**
+     * Lets a client of a worker send 40 operations to the store, one every 30 ticks,
+     * and records the time, type and communication ID of the replies.
+     */
+    private Worker runSequentialOperations(int helperPoolSize, List<String> replies) throws UnknownClientException, UnknownMessageException {
+        return runSequentialOperations(helperPoolSize, false, replies);
+    }
+
+    private Worker runSequentialOperations(int helperPoolSize, boolean storeAsks, List<String> replies) throws UnknownClientException, UnknownMessageException {
+        return runSequentialOperations(new SimulatedActorSystem(), helperPoolSize, storeAsks, replies);
+    }
+
+    @Test
+    public void testPooledHelpersIgnoreDuplicatedMessages() throws UnknownClientException, UnknownMessageException {
+        List<String> expectedReplies = new ArrayList<>();
+        runSequentialOperationsWithHelperDuplicates(0, expectedReplies);
+        List<String> replies = new ArrayList<>();
+        Worker worker = runSequentialOperationsWithHelperDuplicates(1, replies);
+
+        assertEquals(40, replies.size());
+        assertEquals(expectedReplies, replies);
+        assertEquals(1, worker.getSpawnedHelpers());
+        assertEquals(39, worker.getReusedHelpers());
+    }
+
+    /**
+     * Runs the sequential operations with a single pooled helper, to which each message arrives once without
+     * delay and with the given probability once more after 45 ticks, when the helper already waits for the
+     * reply to the next operation of the communication.
+     */
+    private Worker runSequentialOperationsWithHelperDuplicates(double duplicationProbability, List<String> replies) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setChannelFactory(actor -> {
+            if (!(actor instanceof WorkerHelper)) {
+                return new DeterministicChannel(1);
+            }
+            int[] draws = {0};
+            return new SeededChannel(0, random -> draws[0]++ % 2 == 0 ? 0 : 45, LossModel.none(), duplicationProbability);
+        });
+        return runSequentialOperations(system, 1, false, replies);
+    }
+
+    private Worker runSequentialOperations(SimulatedActorSystem system, int helperPoolSize, boolean storeAsks, List<String> replies) throws UnknownClientException, UnknownMessageException {
+        TestClient dispatcher = new TestClient();
+        MessageStore store = new MessageStore();
+        SimulatedActor client = new SimulatedActor() {
+            @Override
+            public void receive(Message message) {
+                if (!(message instanceof InitAck)) {
+                    replies.add(system.getCurrentTime() + " " + message.getClass().getSimpleName() + " " + ((ClientMessage) message).communicationId);
+                }
+            }
+        };
+        system.spawn(dispatcher);
+        system.spawn(store);
+        system.spawn(client);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setHelperPool(helperPoolSize);
+        worker.setStoreAsks(storeAsks);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(client, 3));
+        system.runFor(10);
+        for (int i = 0; i < 40; i++) {
+            if (i % 4 == 0) {
+                worker.tell(new Publish(new UserMessage("author", "m" + i), 3));
+            } else if (i % 4 == 1) {
+                worker.tell(new Like("client" + i, 3, i / 4));
+            } else {
+                worker.tell(new RetrieveMessages("author", 3));
+            }
+            system.runFor(30);
+        }
+        return worker;
+    }
+
+    @Test
+    public void testStoppingWorkerStopsPooledHelpers() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        MessageStore store = new MessageStore();
+        TestClient client = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(store);
+        system.spawn(client);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setHelperPool(4);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(client, 1));
+        system.runFor(10);
+        for (int i = 0; i < 3; i++) {
+            worker.tell(new RetrieveMessages("author", 1));
+        }
+        system.runFor(40);
+        assertEquals(3, worker.getSpawnedHelpers() + worker.getReusedHelpers());
+        assertEquals(worker.getSpawnedHelpers(), system.getActors().stream().filter(actor -> actor instanceof WorkerHelper).count());
+
+        worker.tell(new Stop());
+        system.runFor(10);
+        assertEquals(0, system.getActors().stream().filter(actor -> actor instanceof WorkerHelper).count());
+    }
+
+    @Test
+    public void testAskCompletesWithFirstReplyOrAfterLastResend() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        List<String> completions = new ArrayList<>();
+        class Asker extends SimulatedActor {
+            @Override
+            public void receive(Message message) {
+                completions.add("received " + message.getClass().getSimpleName());
+            }
+
+            void request(SimulatedActor target, long communicationId, int timeoutTicks) {
+                ask(target, new RetrieveMessages("author", communicationId), timeoutTicks, 1, new AskCallback() {
+                    @Override
+                    public void onReply(Message reply) {
+                        completions.add(system.getCurrentTime() + " reply " + ((ClientMessage) reply).communicationId);
+                    }
+
+                    @Override
+                    public void onTimeout() {
+                        completions.add(getTimeSinceSystemStart() + " timeout " + communicationId);
+                    }
+                });
+            }
+        }
+        Asker asker = new Asker();
+        SimulatedActor echo = new SimulatedActor() {
+            @Override
+            public void receive(Message message) {
+                assertTrue(answer(new OperationAck(((ClientMessage) message).communicationId)));
+            }
+        };
+        TestClient silent = new TestClient();
+        system.spawn(asker);
+        system.spawn(echo);
+        system.spawn(silent);
+
+        asker.request(echo, 1, 10);
+        system.runFor(20);
+        assertEquals(1, completions.size());
+        assertTrue(completions.get(0).endsWith(" reply 1"));
+        assertEquals(0, asker.getOutstandingAsks());
+        assertEquals(0, asker.getAskResends());
+
+        int sentAt = asker.getTimeSinceSystemStart();
+        asker.request(silent, 2, 2);
+        assertEquals(1, asker.getOutstandingAsks());
+        system.runFor(20);
+        // resent in the third tick after sending and timed out in the sixth
+        assertEquals(Arrays.asList(completions.get(0), (sentAt + 6) + " timeout 2"), completions);
+        assertEquals(0, asker.getOutstandingAsks());
+        assertEquals(1, asker.getAskResends());
+        assertEquals(1, asker.getAskTimeouts());
+        // the target receives the message itself, while its log shows the same request sent twice
+        assertEquals(2, silent.receivedMessages.size());
+        assertTrue(silent.receivedMessages.peek() instanceof RetrieveMessages);
+        assertSame(silent.receivedMessages.poll(), silent.receivedMessages.poll());
+        assertTrue(silent.getMessageLog().get(0) instanceof AskRequest);
+        assertSame(silent.getMessageLog().get(0), silent.getMessageLog().get(1));
+    }
+
+    @Test
+    public void testStoreAsksReplaceWorkerHelpersWithoutChangingReplies() throws UnknownClientException, UnknownMessageException {
+        List<String> helperReplies = new ArrayList<>();
+        runSequentialOperations(0, false, helperReplies);
+        List<String> askReplies = new ArrayList<>();
+        Worker asking = runSequentialOperations(0, true, askReplies);
+
+        assertEquals(40, askReplies.size());
+        for (int i = 0; i < 40; i++) {
+            // replies pass through the worker, so only their time differs
+            assertEquals(helperReplies.get(i).split(" ", 2)[1], askReplies.get(i).split(" ", 2)[1]);
+        }
+        assertEquals(0, asking.getSpawnedHelpers());
+        assertEquals(0, asking.getOutstandingAsks());
+        assertEquals(0, asking.getAskTimeouts());
+    }
+
+    @Test
+    public void testScheduledMessagesArriveAfterTheirDelayUnlessCancelled() throws UnknownClientException, UnknownMessageException {
+        List<String> sequential = runTimers(false);
+        assertEquals(Arrays.asList("1 m0", "6 m5", "101 m100", "5001 m5000"), sequential);
+        // skipped ticks and parked actors are woken up by the timers
+        assertEquals(sequential, runTimers(true));
+    }
+
+    /**
+     * Schedules messages with delays on all levels of the timing wheel, cancels one of them
+     * and records the time at which the receiver takes each message.
+     */
+    private List<String> runTimers(boolean skipping) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setTimeSkipping(skipping);
+        system.setActiveScheduling(skipping);
+        List<String> log = new ArrayList<>();
+        SimulatedActor receiver = new SimulatedActor() {
+            @Override
+            public void receive(Message message) {
+                log.add(system.getCurrentTime() + " " + ((Publish) message).message.getMessage());
+            }
+        };
+        system.spawn(receiver);
+        for (int delay : new int[]{5000, 100, 0, 5}) {
+            system.scheduleOnce(receiver, delay, new Publish(new UserMessage("author", "m" + delay), delay) {
+                @Override
+                public int getDuration() {
+                    return 0;
+                }
+            });
+        }
+        TimerHandle cancelled = system.scheduleOnce(receiver, 50, new Publish(new UserMessage("author", "m50"), 50));
+        assertEquals(5, system.getPendingTimers());
+        system.runFor(10);
+        assertTrue(system.cancel(cancelled));
+        assertFalse(system.cancel(cancelled));
+        assertFalse(cancelled.isPending());
+        assertEquals(2, system.getPendingTimers());
+        system.runFor(6000);
+        assertEquals(0, system.getPendingTimers());
+        return log;
+    }
+
+    @Test
+    public void testHelperTimersResendAtTheSameTicksAsCounting() throws UnknownClientException, UnknownMessageException {
+        List<String> counting = runUnansweredOperation(false);
+        assertEquals(Arrays.asList("13 store", "17 store", "21 store", "25 OperationFailed"), counting);
+        assertEquals(counting, runUnansweredOperation(true));
+    }
+
+    /**
+     * Lets a worker send an operation to a store, which never replies, and records when the store
+     * receives it and when the client is notified of the failure.
+     */
+    private List<String> runUnansweredOperation(boolean helperTimers) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setActiveScheduling(helperTimers);
+        List<String> log = new ArrayList<>();
+        SimulatedActor store = new SimulatedActor() {
+            @Override
+            public void receive(Message message) {
+                log.add(system.getCurrentTime() + " store");
+            }
+        };
+        SimulatedActor client = new SimulatedActor() {
+            @Override
+            public void receive(Message message) {
+                if (!(message instanceof InitAck)) {
+                    log.add(system.getCurrentTime() + " " + message.getClass().getSimpleName());
+                }
+            }
+        };
+        TestClient dispatcher = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(store);
+        system.spawn(client);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setHelperTimers(helperTimers);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(client, 1));
+        system.runFor(4);
+        worker.tell(new RetrieveMessages("author", 1));
+        system.runFor(8);
+        // the helper waits for a resend timeout
+        assertEquals(helperTimers ? 1 : 0, system.getPendingTimers());
+        system.runFor(20);
+        assertEquals(0, system.getPendingTimers());
+        return log;
+    }
+
+    @Test
+    public void testAdaptiveRetriesKeepAnOverloadedStoreAnswering() throws UnknownClientException, UnknownMessageException {
+        // with fixed timeouts every operation is resent, which doubles the load, so the store falls further behind
+        int[] fixed = runOverloadedStore(null);
+        assertTrue(fixed[1] > fixed[0]);
+
+        AdaptiveRetryPolicy policy = new AdaptiveRetryPolicy();
+        int[] adaptive = runOverloadedStore(policy);
+        assertEquals(400, adaptive[0]);
+        assertEquals(0, adaptive[1]);
+        assertEquals(400, policy.getSentOperations());
+        // the first operations time out before the first reply, which arrives before their resends are granted
+        assertEquals(0, policy.getRetries());
+        assertEquals(400, policy.getRttSamples());
+        assertEquals(0, policy.getRetryRate(), 0);
+        assertTrue(policy.getSmoothedRtt() > 3);
+        assertTrue(policy.getTimeout() > policy.getSmoothedRtt());
+    }
+
+    /**
+     * Lets four workers send a retrieval to a message store every 16 ticks each, which are answered
+     * within 5 ticks, and counts the replies and failures their clients receive.
+     */
+    private int[] runOverloadedStore(AdaptiveRetryPolicy policy) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        MessageStore store = new MessageStore();
+        system.spawn(store);
+        List<TestClient> clients = new ArrayList<>();
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            TestClient client = new TestClient();
+            system.spawn(client);
+            Worker worker = new Worker(client, store, system);
+            worker.setRetryPolicy(policy);
+            system.spawn(worker);
+            worker.tell(new InitCommunication(client, i));
+            clients.add(client);
+            workers.add(worker);
+        }
+        system.runFor(10);
+        for (int t = 0; t < 1600; t++) {
+            for (int i = 0; i < 4; i++) {
+                if (t % 16 == i * 4) {
+                    workers.get(i).tell(new RetrieveMessages("author", i));
+                }
+            }
+            system.runFor(1);
+        }
+        system.runFor(100);
+        int[] counts = new int[2];
+        for (TestClient client : clients) {
+            for (Message message : client.receivedMessages) {
+                if (message instanceof FoundMessages) {
+                    counts[0]++;
+                } else if (message instanceof OperationFailed) {
+                    counts[1]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    public void testRetryBudgetLimitsResendsToAnUnresponsiveStore() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        List<Long> received = new ArrayList<>();
+        SimulatedActor store = new SimulatedActor() {
+            @Override
+            public void receive(Message message) {
+                received.add(((MessageStoreMessage) message).communicationId);
+            }
+        };
+        TestClient client = new TestClient();
+        system.spawn(store);
+        system.spawn(client);
+        // a single resend in the budget, which never grows
+        AdaptiveRetryPolicy policy = new AdaptiveRetryPolicy().retryBudget(0, 1);
+        Worker worker = new Worker(client, store, system);
+        worker.setRetryPolicy(policy);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(client, 1));
+        worker.tell(new InitCommunication(client, 2));
+        system.runFor(4);
+        worker.tell(new RetrieveMessages("author", 1));
+        system.runFor(10);
+        worker.tell(new RetrieveMessages("author", 2));
+        system.runFor(400);
+
+        // the first operation is resent once, the second waits longer without being resent
+        assertEquals(Arrays.asList(1L, 1L, 2L), received);
+        assertEquals(2, client.receivedMessages.stream().filter(m -> m instanceof OperationFailed).count());
+        assertEquals(1, policy.getRetries());
+        assertEquals(3, policy.getRefusedRetries());
+        assertEquals(0.5, policy.getRetryRate(), 0);
+        assertEquals(0, policy.getRttSamples());
+        // each tick with a timeout doubles the timeout of new operations
+        assertTrue(policy.getTimeout() > 6);
+    }
+
+    @Test
+    public void testRetryBudgetBoundsResendsOfSimultaneousTimeouts() throws UnknownClientException, UnknownMessageException {
+        AdaptiveRetryPolicy policy = new AdaptiveRetryPolicy().retryBudget(0, 2);
+        List<Long> received = runSimultaneousTimeouts(policy, 0);
+        // five operations time out in the same tick, only the two helpers with the lowest IDs resend
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 1L, 2L), received);
+        assertEquals(2, policy.getRetries());
+        assertEquals(8, policy.getRefusedRetries());
+        // the decisions do not depend on the order in which parallel helpers time out
+        assertEquals(received, runSimultaneousTimeouts(new AdaptiveRetryPolicy().retryBudget(0, 2), 4));
+    }
+
+    /**
+     * Lets five workers send an operation each in the same tick to a store, which never replies, and records
+     * the communication IDs of the operations the store receives.
+     */
+    private List<Long> runSimultaneousTimeouts(AdaptiveRetryPolicy policy, int parallelism) throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        system.setParallelism(parallelism);
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        SimulatedActor store = new SimulatedActor() {
+            @Override
+            public void receive(Message message) {
+                received.add(((MessageStoreMessage) message).communicationId);
+            }
+        };
+        TestClient client = new TestClient();
+        system.spawn(store);
+        system.spawn(client);
+        List<Worker> workers = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            Worker worker = new Worker(client, store, system);
+            worker.setRetryPolicy(policy);
+            system.spawn(worker);
+            worker.tell(new InitCommunication(client, id));
+            workers.add(worker);
+        }
+        system.runFor(4);
+        for (int i = 0; i < 5; i++) {
+            workers.get(i).tell(new RetrieveMessages("author", i + 1));
+        }
+        system.runFor(1000);
+        assertEquals(5, client.receivedMessages.stream().filter(m -> m instanceof OperationFailed).count());
+        return received;
+    }
+
+    @Test
+    public void testResentWritesAreAnsweredWithTheReplyToTheirFirstRun() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        MessageStore store = new MessageStore();
+        TestClient client = new TestClient();
+        system.spawn(store);
+        system.spawn(client);
+
+        UpdateMessageStore publish = new UpdateMessageStore(new UserMessage("author", "text"), 1);
+        publish.storeClient = client;
+        publish.sequence = 7;
+        store.tell(publish);
+        store.tell(publish);
+        AddLike like = new AddLike("liker", 0, 1);
+        like.storeClient = client;
+        like.sequence = 8;
+        store.tell(like);
+        store.tell(like);
+        // without a request sequence the resend runs again and fails, as the message has already been liked
+        AddLike unnumberedLike = new AddLike("other liker", 0, 1);
+        unnumberedLike.storeClient = client;
+        store.tell(unnumberedLike);
+        store.tell(unnumberedLike);
+        system.runFor(30);
+
+        List<String> replies = new ArrayList<>();
+        for (Message message : client.receivedMessages) {
+            replies.add(message.getClass().getSimpleName());
+        }
+        assertEquals(Arrays.asList("OperationAck", "OperationAck", "OperationAck", "OperationAck", "OperationAck",
+                "OperationFailed"), replies);
+        assertEquals(2, store.getReplayedOperations());
+
+        // operations of a batch are answered from the table as well
+        client.receivedMessages.clear();
+        AddLike anotherLike = new AddLike("third liker", 0, 1);
+        anotherLike.sequence = 9;
+        StoreBatch batch = new StoreBatch(Arrays.asList(like, anotherLike));
+        batch.storeClient = client;
+        store.tell(batch);
+        system.runFor(10);
+        StoreBatchReply batchReply = (StoreBatchReply) client.receivedMessages.poll();
+        assertEquals(2, batchReply.replies.size());
+        assertTrue(batchReply.replies.get(0) instanceof OperationAck);
+        assertTrue(batchReply.replies.get(1) instanceof OperationAck);
+        assertEquals(3, store.getReplayedOperations());
+    }
+
+    @Test
+    public void testIdempotencyTableDropsRepliesAfterTheWindowOrWhenFull() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        MessageStore store = new MessageStore();
+        store.setIdempotencyWindow(30, 2);
+        TestClient client = new TestClient();
+        system.spawn(store);
+        system.spawn(client);
+        UpdateMessageStore publish = new UpdateMessageStore(new UserMessage("author", "text"), 1);
+        publish.storeClient = client;
+        store.tell(publish);
+        List<AddLike> likes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            AddLike like = new AddLike("liker " + i, 0, 1);
+            like.storeClient = client;
+            like.sequence = i;
+            likes.add(like);
+        }
+        store.tell(likes.get(0));
+        system.runFor(40);
+        // the reply has been dropped after the window
+        store.tell(likes.get(0));
+        store.tell(likes.get(1));
+        store.tell(likes.get(2));
+        store.tell(likes.get(3));
+        system.runFor(20);
+        // only the replies to the last two likes are kept
+        store.tell(likes.get(1));
+        store.tell(likes.get(3));
+        system.runFor(10);
+
+        List<String> replies = new ArrayList<>();
+        for (Message message : client.receivedMessages) {
+            replies.add(message.getClass().getSimpleName());
+        }
+        assertEquals(Arrays.asList("OperationAck", "OperationAck", "OperationFailed", "OperationAck", "OperationAck",
+                "OperationAck", "OperationFailed", "OperationAck"), replies);
+        assertEquals(1, store.getReplayedOperations());
+    }
 
+    @Test
+    public void testWorkerAnswersRequestsOfExpiredSessions() throws UnknownClientException, UnknownMessageException {
+        SimulatedActorSystem system = new SimulatedActorSystem();
+        TestClient dispatcher = new TestClient();
+        TestClient client = new TestClient();
+        system.spawn(dispatcher);
+        system.spawn(client);
+        MessageStore store = new MessageStore();
+        system.spawn(store);
+        Worker worker = new Worker(dispatcher, store, system);
+        worker.setSessionTimeout(30);
+        system.spawn(worker);
+        worker.tell(new InitCommunication(client, 1));
+        system.runFor(40);
+        assertEquals(1, worker.getExpiredSessions());
+
+        // the requests of the expired session are answered instead of throwing
+        worker.tell(new RetrieveMessages("alice", 1));
+        system.runFor(10);
+        worker.tell(new FinishCommunication(1));
+        system.runFor(10);
+
+        assertEquals(0, worker.getOpenSessions());
+        assertEquals(1, worker.getExpiredSessions());
+        assertEquals(0, worker.getFinishedSessions());
+        assertEquals(3, client.receivedMessages.stream().filter(m -> m instanceof SessionExpired).count());
+
+        // a timeout after the expiry, the communication is unknown and its requests are dropped
+        system.runFor(50);
+        worker.tell(new RetrieveMessages("alice", 1));
+        system.runFor(10);
+        assertEquals(3, client.receivedMessages.stream().filter(m -> m instanceof SessionExpired).count());
+
+        worker.tell(new InitCommunication(client, 1));
+        worker.tell(new RetrieveMessages("alice", 1));
+        system.runFor(30);
+        assertEquals(1, worker.getOpenSessions());
+        assertTrue(client.receivedMessages.stream().anyMatch(m -> m instanceof FoundMessages));
+    }
+
+    @Test
+    public void testRealTimeSystemCompletesAsksAndTicksForTheirTimeouts() throws InterruptedException {
+        RealTimeActorSystem system = new RealTimeActorSystem();
+        try {
+            List<String> completions = Collections.synchronizedList(new ArrayList<>());
+            SimulatedActor echo = new SimulatedActor() {
+                @Override
+                public void receive(Message message) {
+                    answer(new OperationAck(((ClientMessage) message).communicationId));
+                }
+            };
+            TestClient silent = new TestClient();
+            SimulatedActor asker = new SimulatedActor() {
+                @Override
+                public void receive(Message message) {
+                    for (SimulatedActor target : Arrays.asList(echo, silent)) {
+                        int timeoutTicks = target == echo ? 1000 : 2;
+                        ask(target, new RetrieveMessages("author", target.getId()), timeoutTicks, 1, new AskCallback() {
+                            @Override
+                            public void onReply(Message reply) {
+                                completions.add("reply " + ((ClientMessage) reply).communicationId);
+                            }
+
+                            @Override
+                            public void onTimeout() {
+                                completions.add("timeout " + target.getId());
+                            }
+                        });
+                    }
+                }
+            };
+            system.spawn(echo);
+            system.spawn(silent);
+            system.spawn(asker);
+            asker.tell(new Stop());
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (completions.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            // the order of the completions depends on the scheduling of the threads
+            assertEquals(new HashSet<>(Arrays.asList("reply " + echo.getId(), "timeout " + silent.getId())),
+                    new HashSet<>(completions));
+            assertEquals(0, asker.getOutstandingAsks());
+            assertEquals(1, asker.getAskResends());
+            assertEquals(1, asker.getAskTimeouts());
+        } finally {
+            system.shutdown();
+        }
+    }
 
+    @Test
+    public void testCommunicationChannelRingWrapsGrowsAndKeepsSendOrder() {
+        VariableDelayChannel channel = new VariableDelayChannel();
+        for (int id = 0; id < 3; id++) {
+            channel.sendDelayed(new InitCommunication(null, id), 0);
+        }
+        assertEquals(Arrays.asList(0L, 1L, 2L), communicationIds(channel.tick()));
+
+        // the ring of four messages starts at its last slot, so the messages wrap around
+        channel.sendDelayed(new InitCommunication(null, 3), 2);
+        channel.sendDelayed(new InitCommunication(null, 4), 0);
+        channel.sendDelayed(new InitCommunication(null, 5), 1);
+        channel.sendDelayed(new InitCommunication(null, 6), 2);
+        // grows while all four are in transit and not ordered by arrival
+        channel.sendDelayed(new InitCommunication(null, 7), 0);
+        assertEquals(0, channel.ticksUntilNextDelivery());
+        assertEquals(Arrays.asList(4L, 7L), communicationIds(channel.tick()));
+
+        channel.sendDelayed(new InitCommunication(null, 8), 1);
+        assertEquals(0, channel.ticksUntilNextDelivery());
+        assertEquals(Collections.singletonList(5L), communicationIds(channel.tick()));
+        // sent in different ticks with different delays, but arriving together in the order they were sent
+        assertEquals(0, channel.ticksUntilNextDelivery());
+        assertEquals(Arrays.asList(3L, 6L, 8L), communicationIds(channel.tick()));
+        assertEquals(Integer.MAX_VALUE, channel.ticksUntilNextDelivery());
+        assertTrue(channel.tick().isEmpty());
+
+        // many more messages against a reference, which delivers by arrival tick and then by sending order
+        Random random = new Random(11);
+        List<long[]> inTransit = new ArrayList<>();
+        long id = 100;
+        for (int tick = 0; tick < 300; tick++) {
+            for (int i = random.nextInt(tick < 150 ? 4 : 2); i > 0; i--, id++) {
+                int delay = random.nextInt(6);
+                channel.sendDelayed(new InitCommunication(null, id), delay);
+                inTransit.add(new long[]{tick + delay + 1, id});
+            }
+            List<Long> expected = new ArrayList<>();
+            for (Iterator<long[]> it = inTransit.iterator(); it.hasNext(); ) {
+                long[] message = it.next();
+                if (message[0] <= tick + 1) {
+                    expected.add(message[1]);
+                    it.remove();
+                }
+            }
+            assertEquals(expected, communicationIds(channel.tick()));
+        }
+    }
 
-}
\ No newline at end of file
+    private static List<Long> communicationIds(List<Message> messages) {
+        List<Long> ids = new ArrayList<>();
+        for (Message message : messages) {
+            ids.add(((ClientMessage) message).communicationId);
+        }
+        return ids;
+    }
+}